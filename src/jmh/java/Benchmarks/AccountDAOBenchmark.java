@@ -0,0 +1,64 @@
+package Benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import Model.Account;
+
+/**
+ * Measures AccountDAO.validateLogin, the query behind POST /login, for existing accounts with the right password and
+ * for usernames that do not exist. The account table holds one account per 100 messages of the dataset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountDAOBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int messages;
+
+    private AccountDAO accountDAO;
+    private Account[] logins;
+    private Account[] unknownLogins;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.open(messages);
+        accountDAO = new AccountDAO();
+        // Prebuilt so the benchmark does not measure string concatenation
+        int accounts = BenchmarkDatabase.accountsFor(messages);
+        logins = new Account[Math.min(accounts - 1, 4096)];
+        unknownLogins = new Account[logins.length];
+        for (int i = 0; i < logins.length; i++) {
+            int id = 2 + ThreadLocalRandom.current().nextInt(accounts - 1);
+            logins[i] = new Account("user" + id, "password" + id);
+            unknownLogins[i] = new Account("nobody" + id, "password" + id);
+        }
+    }
+
+    @Benchmark
+    public Account validateLogin() {
+        return accountDAO.validateLogin(logins[ThreadLocalRandom.current().nextInt(logins.length)]);
+    }
+
+    @Benchmark
+    public Account validateLoginUnknownUser() {
+        return accountDAO.validateLogin(unknownLogins[ThreadLocalRandom.current().nextInt(unknownLogins.length)]);
+    }
+}
@@ -0,0 +1,92 @@
+package Benchmarks;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import Util.ConnectionUtil;
+import Util.DatasetGenerator;
+
+/**
+ * The BenchmarkDatabase class points ConnectionUtil at an H2 database of its own for each dataset size and seeds it
+ * the first time that size is used. Every size keeps its file under target/jmh, so later runs reuse the data instead
+ * of inserting millions of rows again.
+ *
+ * The seeded data is loaded by DatasetGenerator with one account per 100 messages (at least 10), named user2,
+ * user3, ... with passwords password2, password3, ... after the script's testuser1, and messages spread evenly over
+ * the accounts, so message ids run from 1 to the dataset size.
+ *
+ * ConnectionUtil reads its url once, so open must be called before anything else touches the database, and each
+ * dataset size needs its own JVM. JMH forks one for every parameter combination, so do not run with -f 0.
+ */
+final class BenchmarkDatabase {
+    static final long FIRST_EPOCH = 1669947792L;
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * @param messages The number of messages in the dataset.
+     * @return The number of accounts the dataset's messages are posted by.
+     */
+    static int accountsFor(int messages) {
+        return Math.max(10, messages / 100);
+    }
+
+    /**
+     * Opens the database of the given dataset size, seeding it if it holds fewer rows than the dataset needs. Rows
+     * added by the insert benchmarks are left in place, since they do not move the ids the reads pick from.
+     * @param messages The number of messages in the dataset.
+     */
+    static void open(int messages) {
+        File directory = new File("target/jmh/db-" + messages);
+        System.setProperty("socialmedia.db.url", "jdbc:h2:" + directory.getAbsolutePath() + "/db;");
+        // Seeding batches are slow by design; keep them out of the slow query log unless asked
+        if (System.getProperty("socialmedia.db.slowQueryMillis") == null) {
+            System.setProperty("socialmedia.db.slowQueryMillis", "-1");
+        }
+
+        int accounts = accountsFor(messages);
+        if (count("account") >= accounts && count("message") >= messages) {
+            return;
+        }
+        System.out.println("Seeding " + messages + " messages from " + accounts + " accounts into " + directory);
+        long start = System.nanoTime();
+        ConnectionUtil.resetTestDatabase();
+        try {
+            // The sql script already created account 1 and message 1
+            new DatasetGenerator(42, 0).generate(accounts - 1, messages - 1);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to seed the benchmark database", e);
+        }
+        System.out.println("Seeded in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * @return The number of rows in the table, or -1 if it does not exist yet.
+     */
+    private static long count(String table) {
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM " + table);
+                ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : -1;
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return A message text of 20 to 200 characters that varies with the message number.
+     */
+    static String messageText(int i) {
+        StringBuilder text = new StringBuilder("benchmark message ").append(i);
+        int length = 20 + (i * 31) % 181;
+        while (text.length() < length) {
+            text.append(" lorem ipsum");
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package Benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.JacksonJsonMapper;
+import Model.Account;
+import Model.Message;
+
+/**
+ * Measures the Jackson reading and writing done by the controller through JacksonJsonMapper: request bodies of
+ * Account and Message, single responses, and a listing of 100 messages as returned for one account's timeline.
+ * Output goes to a reused in-memory stream, so only the serialization itself is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    private JacksonJsonMapper jsonMapper;
+    private Account account;
+    private Message message;
+    private List<Message> timeline;
+    private byte[] accountJson;
+    private byte[] messageJson;
+    private ByteArrayOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        jsonMapper = new JacksonJsonMapper();
+        account = new Account(42, "user42", "password42");
+        message = new Message(42, 7, BenchmarkDatabase.messageText(42), BenchmarkDatabase.FIRST_EPOCH);
+        timeline = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            timeline.add(new Message(i + 1, 7, BenchmarkDatabase.messageText(i), BenchmarkDatabase.FIRST_EPOCH + i));
+        }
+        out = new ByteArrayOutputStream(64 * 1024);
+        accountJson = jsonMapper.toJsonString(new Account("user42", "password42"), Account.class).getBytes();
+        messageJson = jsonMapper.toJsonString(new Message(7, message.getMessage_text(), message.getTime_posted_epoch()),
+                Message.class).getBytes();
+    }
+
+    @Benchmark
+    public Account readAccount() throws IOException {
+        return jsonMapper.readAccount(new ByteArrayInputStream(accountJson));
+    }
+
+    @Benchmark
+    public Message readMessage() throws IOException {
+        return jsonMapper.readMessage(new ByteArrayInputStream(messageJson));
+    }
+
+    @Benchmark
+    public int writeAccount() throws IOException {
+        out.reset();
+        jsonMapper.writeTo(out, account);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeMessage() throws IOException {
+        out.reset();
+        jsonMapper.writeTo(out, message);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeTimeline() throws IOException {
+        out.reset();
+        jsonMapper.writeTo(out, timeline);
+        return out.size();
+    }
+}
@@ -0,0 +1,64 @@
+package Benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+/**
+ * Measures the MessageDAO statements behind POST /messages, GET /messages/{message_id} and
+ * GET /accounts/{account_id}/messages against seeded tables of 1k to 10M messages. Reads pick random ids, so at the
+ * larger sizes most of them miss H2's page cache the way they would on a busy server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageDAOBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int messages;
+
+    private MessageDAO messageDAO;
+    private int accounts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.open(messages);
+        messageDAO = new MessageDAO();
+        accounts = BenchmarkDatabase.accountsFor(messages);
+    }
+
+    @Benchmark
+    public Message insert() {
+        int i = ThreadLocalRandom.current().nextInt(messages);
+        return messageDAO.insert(new Message(1 + i % accounts, BenchmarkDatabase.messageText(i),
+                BenchmarkDatabase.FIRST_EPOCH + i));
+    }
+
+    @Benchmark
+    public Message getMessageByID() {
+        return messageDAO.getMessageByID(1 + ThreadLocalRandom.current().nextInt(messages));
+    }
+
+    @Benchmark
+    public List<Message> getAllMessagesByAccountID() {
+        return messageDAO.getAllMessagesByAccountID(1 + ThreadLocalRandom.current().nextInt(accounts));
+    }
+}
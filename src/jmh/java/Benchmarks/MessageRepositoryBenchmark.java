@@ -0,0 +1,108 @@
+package Benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.LogMessageRepository;
+import DAO.MessageDAO;
+import DAO.MessageRepository;
+import Model.Message;
+
+/**
+ * Compares inserts and point reads of the JDBC message storage with the memory mapped message log. The jdbc engine
+ * runs against the seeded database of the given size; the log is written to a temporary directory, seeded with the
+ * same number of messages and deleted after the trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageRepositoryBenchmark {
+    private static final int SEED_BATCH = 1000;
+
+    @Param({"jdbc", "log"})
+    public String engine;
+
+    @Param({"100000"})
+    public int messages;
+
+    private MessageRepository repository;
+    private Path directory;
+    private int accounts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        accounts = BenchmarkDatabase.accountsFor(messages);
+        if (engine.equals("jdbc")) {
+            BenchmarkDatabase.open(messages);
+            repository = new MessageDAO();
+            return;
+        }
+        directory = Files.createTempDirectory("message-log-benchmark");
+        repository = new LogMessageRepository(directory, 64 * 1024 * 1024, false, 0, 0.5);
+        List<Message> batch = new ArrayList<>(SEED_BATCH);
+        for (int i = 0; i < messages; i++) {
+            batch.add(new Message(1 + i % accounts, BenchmarkDatabase.messageText(i),
+                    BenchmarkDatabase.FIRST_EPOCH + i));
+            if (batch.size() == SEED_BATCH || i == messages - 1) {
+                if (repository.insertAll(batch) == null) {
+                    throw new IllegalStateException("Failed to seed the message log");
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        ((LogMessageRepository) repository).close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Message insert() {
+        int i = ThreadLocalRandom.current().nextInt(messages);
+        return repository.insert(new Message(1 + i % accounts, BenchmarkDatabase.messageText(i),
+                BenchmarkDatabase.FIRST_EPOCH + i));
+    }
+
+    @Benchmark
+    public Message getMessageByID() {
+        return repository.getMessageByID(1 + ThreadLocalRandom.current().nextInt(messages));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Message getMessageByIDConcurrently() {
+        return repository.getMessageByID(1 + ThreadLocalRandom.current().nextInt(messages));
+    }
+}
@@ -0,0 +1,76 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.InMemoryMessageRepository;
+import Model.Account;
+import Model.Message;
+import Model.ValidationResult;
+import Service.MessageService;
+
+/**
+ * Measures MessageService.validateNewMessage, which runs on every POST /messages before the database is touched, for
+ * a valid message and for each way a message is refused. The service runs over an empty in-memory repository, so no
+ * database is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageValidationBenchmark {
+    private MessageService messageService;
+    private Account account;
+    private Message valid;
+    private Message blank;
+    private Message tooLong;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("socialmedia.write.groupCommit", "false");
+        messageService = new MessageService(new InMemoryMessageRepository());
+        account = new Account(1, "testuser1", "password");
+        valid = new Message(1, BenchmarkDatabase.messageText(100), BenchmarkDatabase.FIRST_EPOCH);
+        blank = new Message(1, "     ", BenchmarkDatabase.FIRST_EPOCH);
+        tooLong = new Message(1, "x".repeat(300), BenchmarkDatabase.FIRST_EPOCH);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        messageService.close();
+    }
+
+    @Benchmark
+    public ValidationResult<Message> validMessage() {
+        return messageService.validateNewMessage(valid, account);
+    }
+
+    @Benchmark
+    public ValidationResult<Message> blankMessage() {
+        return messageService.validateNewMessage(blank, account);
+    }
+
+    @Benchmark
+    public ValidationResult<Message> tooLongMessage() {
+        return messageService.validateNewMessage(tooLong, account);
+    }
+
+    @Benchmark
+    public ValidationResult<Message> unknownAccount() {
+        return messageService.validateNewMessage(valid, null);
+    }
+}
@@ -0,0 +1,346 @@
+package LoadTest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import io.javalin.Javalin;
+
+/**
+ * Drives a mix of requests against the API and reports latency percentiles and throughput. This is not part of the
+ * test suite and is only built with the load profile; run it with
+ *
+ *     mvn -P load test-compile exec:java -Dexec.args="rate=500"
+ *
+ * The server is started in the same JVM on an ephemeral port, after the test database has been reset and seeded
+ * through the API with accounts and messages. Requests then arrive in an open model: their start times are fixed by
+ * the arrival rate up front and do not wait for earlier responses, so a slow server builds a backlog the way it would
+ * with real clients. Latency is measured from the intended start time rather than from the moment the request was
+ * sent, which corrects for coordinated omission; the plain service time is reported next to it.
+ *
+ * Arguments are name=value pairs:
+ *  profile      A named mix, see PROFILES (default mixed: 70% timeline reads, 20% creates, 5% logins, 5% patches).
+ *  mix          An explicit mix overriding the profile, e.g. read=70,create=20,login=5,patch=5.
+ *  rate         Requests started per second (default 200).
+ *  arrivals     poisson (default) or uniform spacing of the start times.
+ *  concurrency  The most requests outstanding at once (default 256). Once reached, requests wait to be sent, and that
+ *               wait counts towards their latency.
+ *  duration     Seconds measured (default 30), after warmup seconds (default 5) that are not.
+ *  accounts     Accounts seeded (default 100), each with messagesPerAccount messages (default 10).
+ *  seed         Seed of the arrivals and request choices (default 42).
+ */
+public class LoadGenerator {
+    private static final Map<String, String> PROFILES = new LinkedHashMap<>();
+    static {
+        PROFILES.put("mixed", "read=70,create=20,login=5,patch=5");
+        PROFILES.put("read-heavy", "read=95,create=3,login=2");
+        PROFILES.put("write-heavy", "read=40,create=45,patch=15");
+        PROFILES.put("login-storm", "login=80,read=20");
+    }
+    private static final Pattern MESSAGE_ID = Pattern.compile("\"message_id\":(\\d+)");
+    private static final Pattern ACCOUNT_ID = Pattern.compile("\"account_id\":(\\d+)");
+    private static final long EPOCH = 1669947792L;
+
+    enum Scenario {
+        READ("GET /accounts/{account_id}/messages"),
+        CREATE("POST /messages"),
+        LOGIN("POST /login"),
+        PATCH("PATCH /messages/{message_id}");
+
+        private final String route;
+
+        Scenario(String route) {
+            this.route = route;
+        }
+    }
+
+    /**
+     * Latencies and outcomes of one scenario during the measured part of the run.
+     */
+    static class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        void record(long latencyNanos, long serviceNanos, boolean failed) {
+            latency.record(latencyNanos);
+            serviceTime.record(serviceNanos);
+            if (failed) {
+                errors.increment();
+            }
+        }
+    }
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final String baseUrl;
+    private final int[] accountIds;
+    private final int[] messageIds;
+
+    private LoadGenerator(String baseUrl, int[] accountIds, int[] messageIds) {
+        this.baseUrl = baseUrl;
+        this.accountIds = accountIds;
+        this.messageIds = messageIds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String profile = options.getOrDefault("profile", "mixed");
+        if (!options.containsKey("mix") && !PROFILES.containsKey(profile)) {
+            throw new IllegalArgumentException("Unknown profile " + profile + ", expected one of " + PROFILES.keySet());
+        }
+        Map<Scenario, Integer> mix = parseMix(options.getOrDefault("mix", PROFILES.get(profile)));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        boolean poisson = !"uniform".equals(options.getOrDefault("arrivals", "poisson"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "256"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "5"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+        int accounts = Integer.parseInt(options.getOrDefault("accounts", "100"));
+        int messagesPerAccount = Integer.parseInt(options.getOrDefault("messagesPerAccount", "10"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI().start(0);
+        try {
+            String baseUrl = "http://localhost:" + app.port();
+            System.out.printf("Server on %s, seeding %d accounts with %d messages each%n", baseUrl, accounts,
+                    messagesPerAccount);
+            HttpClient seedClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            int[] accountIds = seedAccounts(seedClient, baseUrl, accounts);
+            int[] messageIds = seedMessages(seedClient, baseUrl, accountIds, messagesPerAccount);
+
+            System.out.printf("Offering %.1f requests/s (%s arrivals, at most %d outstanding) of %s for %d s after "
+                    + "%d s of warmup%n", rate, poisson ? "poisson" : "uniform", concurrency, mix, durationSeconds,
+                    warmupSeconds);
+            LoadGenerator generator = new LoadGenerator(baseUrl, accountIds, messageIds);
+            generator.run(mix, rate, poisson, concurrency, warmupSeconds, durationSeconds, seed);
+        } finally {
+            app.stop();
+        }
+    }
+
+    /**
+     * Sends requests at their intended start times until the run is over, then waits for the outstanding ones and
+     * prints the report.
+     */
+    private void run(Map<Scenario, Integer> mix, double rate, boolean poisson, int concurrency, long warmupSeconds,
+            long durationSeconds, long seed) throws InterruptedException {
+        Map<Scenario, Stats> stats = new EnumMap<>(Scenario.class);
+        for (Scenario scenario : mix.keySet()) {
+            stats.put(scenario, new Stats());
+        }
+        Stats all = new Stats();
+        Scenario[] wheel = wheel(mix);
+        Random random = new Random(seed);
+        Semaphore outstanding = new Semaphore(concurrency);
+        AtomicLong maxSendDelay = new AtomicLong();
+        long meanGapNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long intended = start;
+        long offered = 0;
+        while (intended < end) {
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            Scenario scenario = wheel[random.nextInt(wheel.length)];
+            HttpRequest request = request(scenario, random, offered);
+            outstanding.acquire();
+            long sent = System.nanoTime();
+            boolean measured = intended >= measureFrom;
+            if (measured) {
+                offered++;
+                maxSendDelay.accumulateAndGet(sent - intended, Math::max);
+            }
+            long intendedStart = intended;
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                long done = System.nanoTime();
+                outstanding.release();
+                if (measured) {
+                    boolean failed = error != null || response.statusCode() != 200;
+                    stats.get(scenario).record(done - intendedStart, done - sent, failed);
+                    all.record(done - intendedStart, done - sent, failed);
+                }
+            });
+            intended += poisson ? (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos) : meanGapNanos;
+        }
+        if (!outstanding.tryAcquire(concurrency, 30, TimeUnit.SECONDS)) {
+            System.out.println("Gave up waiting for " + (concurrency - outstanding.availablePermits())
+                    + " outstanding requests");
+        }
+        report(stats, all, offered, TimeUnit.SECONDS.toNanos(durationSeconds), maxSendDelay.get());
+    }
+
+    private HttpRequest request(Scenario scenario, Random random, long sequence) {
+        int account = accountIds[random.nextInt(accountIds.length)];
+        switch (scenario) {
+            case READ:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/accounts/" + account + "/messages")).build();
+            case CREATE:
+                return post("/messages", "{\"posted_by\":" + account + ",\"message_text\":\"load message " + sequence
+                        + "\",\"time_posted_epoch\":" + (EPOCH + sequence) + "}");
+            case LOGIN:
+                int user = random.nextInt(accountIds.length) + 1;
+                return post("/login", "{\"username\":\"loaduser" + user + "\",\"password\":\"password" + user
+                        + "\"}");
+            case PATCH:
+                int message = messageIds[random.nextInt(messageIds.length)];
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + message))
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                                "{\"message_text\":\"edited " + sequence + "\"}"))
+                        .header("Content-Type", "application/json")
+                        .build();
+            default:
+                throw new IllegalStateException("Unknown scenario " + scenario);
+        }
+    }
+
+    private HttpRequest post(String path, String body) {
+        return post(baseUrl, path, body);
+    }
+
+    private static HttpRequest post(String baseUrl, String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    /**
+     * Registers loaduser1 to loaduserN, 64 at a time.
+     * @return The account ids, where index i holds the id of loaduser(i+1).
+     */
+    private static int[] seedAccounts(HttpClient client, String baseUrl, int accounts) {
+        int[] ids = new int[accounts];
+        for (int from = 0; from < accounts; from += 64) {
+            List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+            for (int i = from; i < Math.min(from + 64, accounts); i++) {
+                responses.add(client.sendAsync(post(baseUrl, "/register", "{\"username\":\"loaduser" + (i + 1)
+                        + "\",\"password\":\"password" + (i + 1) + "\"}"), HttpResponse.BodyHandlers.ofString()));
+            }
+            for (int i = 0; i < responses.size(); i++) {
+                HttpResponse<String> response = responses.get(i).join();
+                Matcher id = ACCOUNT_ID.matcher(response.body());
+                if (response.statusCode() != 200 || !id.find()) {
+                    throw new IllegalStateException("Failed to register an account: " + response.body());
+                }
+                ids[from + i] = Integer.parseInt(id.group(1));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Creates the messages of every account through POST /messages/batch, 1000 per request.
+     * @return The ids of the created messages.
+     */
+    private static int[] seedMessages(HttpClient client, String baseUrl, int[] accountIds, int messagesPerAccount)
+            throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        StringBuilder batch = new StringBuilder();
+        int total = accountIds.length * messagesPerAccount;
+        for (int i = 0; i < total; i++) {
+            batch.append(batch.length() == 0 ? "[" : ",")
+                    .append("{\"posted_by\":").append(accountIds[i % accountIds.length])
+                    .append(",\"message_text\":\"seed message ").append(i)
+                    .append("\",\"time_posted_epoch\":").append(EPOCH + i).append('}');
+            if ((i + 1) % 1000 == 0 || i == total - 1) {
+                HttpResponse<String> response = client.send(post(baseUrl, "/messages/batch", batch.append(']')
+                        .toString()), HttpResponse.BodyHandlers.ofString());
+                Matcher id = MESSAGE_ID.matcher(response.body());
+                while (id.find()) {
+                    ids.add(Integer.parseInt(id.group(1)));
+                }
+                batch.setLength(0);
+            }
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("No messages were seeded");
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void report(Map<Scenario, Stats> stats, Stats all, long offered, long measuredNanos, long maxSendDelay) {
+        double seconds = measuredNanos / 1e9;
+        System.out.printf("%nLatency from intended start in ms (coordinated omission corrected); service time p99 is "
+                + "measured from the actual send%n");
+        System.out.printf("%-36s %9s %7s %9s %8s %8s %8s %8s %8s %12s%n", "scenario", "requests", "errors", "req/s",
+                "p50", "p90", "p99", "p99.9", "max", "service p99");
+        for (Map.Entry<Scenario, Stats> entry : stats.entrySet()) {
+            printRow(entry.getKey().route, entry.getValue(), seconds);
+        }
+        printRow("all", all, seconds);
+        System.out.printf("%nOffered %.1f requests/s, completed %.1f/s; requests were sent up to %.1f ms after their "
+                + "intended start%n", offered / seconds, all.latency.getCount() / seconds, maxSendDelay / 1e6);
+    }
+
+    private static void printRow(String name, Stats stats, double seconds) {
+        LatencyHistogram latency = stats.latency;
+        System.out.printf("%-36s %9d %7d %9.1f %8.2f %8.2f %8.2f %8.2f %8.2f %12.2f%n", name, latency.getCount(),
+                stats.errors.sum(), latency.getCount() / seconds, millis(latency.getValueAtQuantile(0.5)),
+                millis(latency.getValueAtQuantile(0.9)), millis(latency.getValueAtQuantile(0.99)),
+                millis(latency.getValueAtQuantile(0.999)), millis(latency.getMaxNanos()),
+                millis(stats.serviceTime.getValueAtQuantile(0.99)));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Scenario[] wheel(Map<Scenario, Integer> mix) {
+        List<Scenario> wheel = new ArrayList<>();
+        mix.forEach((scenario, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                wheel.add(scenario);
+            }
+        });
+        if (wheel.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no weight");
+        }
+        return wheel.toArray(new Scenario[0]);
+    }
+
+    private static Map<Scenario, Integer> parseMix(String mix) {
+        Map<Scenario, Integer> weights = new EnumMap<>(Scenario.class);
+        for (String part : mix.split(",")) {
+            String[] weight = part.split("=");
+            if (weight.length != 2) {
+                throw new IllegalArgumentException("Expected scenario=weight in the mix, got " + part);
+            }
+            weights.put(Scenario.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+        }
+        return weights;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+}
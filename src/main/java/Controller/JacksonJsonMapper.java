@@ -0,0 +1,180 @@
+package Controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import Model.Account;
+import Model.Message;
+import Model.MessageBatchResult;
+import io.javalin.json.JsonMapper;
+
+/**
+ * The JacksonJsonMapper class is the single JSON mapper used by the controller, registered with Javalin so that
+ * ctx.json and ctx.bodyAsClass go through the same ObjectMapper as the handlers. Readers and writers for the model
+ * classes are built once up front, which skips Jackson's per-call serializer lookup, and handlers use writeTo to
+ * serialize a response exactly once, straight into the response output stream.
+ */
+public class JacksonJsonMapper implements JsonMapper {
+    private final ObjectMapper mapper;
+    private final ObjectReader accountReader;
+    private final ObjectReader messageReader;
+    private final ObjectReader messageListReader;
+    private final ObjectWriter accountWriter;
+    private final ObjectWriter messageWriter;
+    private final ObjectWriter messageListWriter;
+    private final ObjectWriter batchResultListWriter;
+    private final ObjectWriter messageStreamWriter;
+
+    public JacksonJsonMapper() {
+        this.mapper = new ObjectMapper();
+        // Handlers write to Javalin's output stream, which Javalin closes itself once the handler returns
+        mapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        this.accountReader = mapper.readerFor(Account.class);
+        this.messageReader = mapper.readerFor(Message.class);
+        this.messageListReader = mapper.readerFor(new TypeReference<List<Message>>(){});
+        this.accountWriter = mapper.writerFor(Account.class);
+        this.messageWriter = mapper.writerFor(Message.class);
+        this.messageListWriter = mapper.writerFor(new TypeReference<List<Message>>(){});
+        this.batchResultListWriter = mapper.writerFor(new TypeReference<List<MessageBatchResult>>(){});
+        // Streamed messages are written one at a time; flushing after each would defeat response buffering
+        this.messageStreamWriter = messageWriter.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * @param in The request body.
+     * @return The Account in the body.
+     * @throws IOException if the body is not a valid Account.
+     */
+    public Account readAccount(InputStream in) throws IOException {
+        return accountReader.readValue(in);
+    }
+
+    /**
+     * @param in The request body.
+     * @return The Message in the body.
+     * @throws IOException if the body is not a valid Message.
+     */
+    public Message readMessage(InputStream in) throws IOException {
+        return messageReader.readValue(in);
+    }
+
+    /**
+     * @param in The request body.
+     * @return The array of messages in the body, or null if the body is a JSON null.
+     * @throws IOException if the body is not a valid array of messages.
+     */
+    public List<Message> readMessageList(InputStream in) throws IOException {
+        return messageListReader.readValue(in);
+    }
+
+    /**
+     * Serializes a response body directly into the given stream using the pre-built writer for its type.
+     * @param out The response output stream.
+     * @param obj The object to serialize.
+     * @throws IOException if writing to the stream fails.
+     */
+    public void writeTo(OutputStream out, Object obj) throws IOException {
+        writerFor(obj).writeValue(out, obj);
+    }
+
+    /**
+     * @param out The response output stream.
+     * @return A generator for writing a JSON document piece by piece.
+     * @throws IOException if the generator could not be created.
+     */
+    public JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return mapper.getFactory().createGenerator(out);
+    }
+
+    /**
+     * Writes one message of a streamed array without flushing the generator.
+     * @param generator The generator the array is being written to.
+     * @param msg The message to write.
+     * @throws IOException if writing fails.
+     */
+    public void writeStreamedMessage(JsonGenerator generator, Message msg) throws IOException {
+        messageStreamWriter.writeValue(generator, msg);
+    }
+
+    private ObjectWriter writerFor(Object obj) {
+        if (obj instanceof Message) {
+            return messageWriter;
+        }
+        if (obj instanceof Account) {
+            return accountWriter;
+        }
+        if (obj instanceof List) {
+            List<?> list = (List<?>) obj;
+            if (!list.isEmpty() && list.get(0) instanceof MessageBatchResult) {
+                return batchResultListWriter;
+            }
+            if (list.isEmpty() || list.get(0) instanceof Message) {
+                return messageListWriter;
+            }
+        }
+        return mapper.writer();
+    }
+
+    private ObjectReader readerFor(Type type) {
+        if (type == Message.class) {
+            return messageReader;
+        }
+        if (type == Account.class) {
+            return accountReader;
+        }
+        return mapper.readerFor(mapper.constructType(type));
+    }
+
+    @Override
+    public String toJsonString(Object obj, Type type) {
+        // Already serialized JSON is passed through untouched, matching Javalin's own Jackson mapper
+        if (obj instanceof String) {
+            return (String) obj;
+        }
+        try {
+            return writerFor(obj).writeValueAsString(obj);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public InputStream toJsonStream(Object obj, Type type) {
+        try {
+            return new ByteArrayInputStream(writerFor(obj).writeValueAsBytes(obj));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonString(String json, Type targetType) {
+        try {
+            return readerFor(targetType).readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonStream(InputStream json, Type targetType) {
+        try {
+            return readerFor(targetType).readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
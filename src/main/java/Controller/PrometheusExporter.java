@@ -0,0 +1,373 @@
+package Controller;
+
+import java.util.List;
+import java.util.Locale;
+
+import Service.AccountService;
+import Service.MessageService;
+import Util.AdmissionController;
+import Util.BloomFilter;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.DatabaseExecutor;
+import Util.GroupCommitQueue;
+import Util.LatencyHistogram;
+import Util.LruCache;
+import Util.QueryMetrics;
+import Util.RouteMetrics;
+
+/**
+ * The PrometheusExporter class renders the server's measurements in the Prometheus text exposition format for the
+ * /metrics endpoint: request latency, requests in flight and handler exceptions for every route, plus the counters
+ * kept by the connection pool, the caches, the username filter, the message write queue, the database executor and
+ * the admission controller. The database time of
+ * each route's requests, and the timing of each SQL statement shape, are exported as well.
+ *
+ * Latency is exported as a summary per route and status with the 0.5, 0.99 and 0.999 quantiles, together with a
+ * separate gauge for the maximum. The quantiles cover every request since the server started.
+ */
+public class PrometheusExporter {
+    /**
+     * Content type of the text exposition format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double MILLIS_PER_SECOND = 1e3;
+
+    private final List<RouteMetrics> routes;
+    private final AccountService accountService;
+    private final MessageService messageService;
+    private final DatabaseExecutor databaseExecutor;
+    private final AdmissionController admissionController;
+
+    /**
+     * @param routes The metrics of every instrumented route; read on each scrape, so routes added later are included.
+     * @param accountService The account service whose cache and username filter are reported.
+     * @param messageService The message service whose cache and write queue are reported.
+     * @param databaseExecutor The executor running the handlers that block on the database.
+     * @param admissionController The controller shedding requests over their route's limit, or null if there is none.
+     */
+    public PrometheusExporter(List<RouteMetrics> routes, AccountService accountService,
+            MessageService messageService, DatabaseExecutor databaseExecutor,
+            AdmissionController admissionController) {
+        this.routes = routes;
+        this.accountService = accountService;
+        this.messageService = messageService;
+        this.databaseExecutor = databaseExecutor;
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * @return Every metric in the Prometheus text exposition format.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        writeRoutes(out);
+        writePool(out, ConnectionUtil.getPool());
+        writeQueries(out, ConnectionUtil.getPool() != null ? ConnectionUtil.getPool().getQueryMetrics() : null);
+        writeCaches(out);
+        writeUsernameFilter(out);
+        writeWriteQueue(out, messageService.getWriteQueue());
+        writeDatabaseExecutor(out, databaseExecutor);
+        writeAdmission(out, admissionController);
+        return out.toString();
+    }
+
+    private void writeRoutes(StringBuilder out) {
+        header(out, "socialmedia_http_request_duration_seconds", "summary",
+                "Time to handle a request, by route and response status.");
+        for (RouteMetrics route : routes) {
+            route.forEachStatus((histogram, status) -> summary(out, "socialmedia_http_request_duration_seconds",
+                    routeLabels(route) + ",status=\"" + status + '"', histogram));
+        }
+
+        header(out, "socialmedia_http_request_duration_seconds_max", "gauge",
+                "Longest time taken to handle a request, by route and response status.");
+        for (RouteMetrics route : routes) {
+            route.forEachStatus((histogram, status) ->
+                    sample(out, "socialmedia_http_request_duration_seconds_max",
+                            routeLabels(route) + ",status=\"" + status + '"',
+                            histogram.getMaxNanos() / NANOS_PER_SECOND));
+        }
+
+        header(out, "socialmedia_http_requests_in_flight", "gauge", "Requests being handled, by route.");
+        for (RouteMetrics route : routes) {
+            sample(out, "socialmedia_http_requests_in_flight", routeLabels(route), route.getInFlight());
+        }
+
+        header(out, "socialmedia_http_request_exceptions_total", "counter",
+                "Requests whose handler threw an exception, by route.");
+        for (RouteMetrics route : routes) {
+            sample(out, "socialmedia_http_request_exceptions_total", routeLabels(route), route.getExceptionCount());
+        }
+
+        header(out, "socialmedia_http_request_db_seconds", "summary",
+                "Time a request spent running SQL statements and reading their results, by route.");
+        for (RouteMetrics route : routes) {
+            summary(out, "socialmedia_http_request_db_seconds", routeLabels(route), route.getDatabaseTime());
+        }
+        header(out, "socialmedia_http_request_db_statements_total", "counter", "SQL statements run, by route.");
+        for (RouteMetrics route : routes) {
+            sample(out, "socialmedia_http_request_db_statements_total", routeLabels(route),
+                    route.getStatementCount());
+        }
+        header(out, "socialmedia_http_request_db_rows_total", "counter", "Rows read or changed, by route.");
+        for (RouteMetrics route : routes) {
+            sample(out, "socialmedia_http_request_db_rows_total", routeLabels(route), route.getRowCount());
+        }
+        header(out, "socialmedia_http_request_db_acquire_seconds_total", "counter",
+                "Time spent waiting for pooled connections, by route.");
+        for (RouteMetrics route : routes) {
+            sample(out, "socialmedia_http_request_db_acquire_seconds_total", routeLabels(route),
+                    route.getAcquireNanos() / NANOS_PER_SECOND);
+        }
+    }
+
+    private void writeQueries(StringBuilder out, QueryMetrics queries) {
+        if (queries == null) {
+            return;
+        }
+        header(out, "socialmedia_db_query_duration_seconds", "summary",
+                "Time to run a SQL statement and read its results, by statement shape.");
+        for (QueryMetrics.Shape shape : queries.getShapes()) {
+            summary(out, "socialmedia_db_query_duration_seconds", sqlLabel(shape), shape.getLatency());
+        }
+        header(out, "socialmedia_db_query_duration_seconds_max", "gauge",
+                "Longest run of a SQL statement, by statement shape.");
+        for (QueryMetrics.Shape shape : queries.getShapes()) {
+            sample(out, "socialmedia_db_query_duration_seconds_max", sqlLabel(shape),
+                    shape.getLatency().getMaxNanos() / NANOS_PER_SECOND);
+        }
+        header(out, "socialmedia_db_query_rows_total", "counter", "Rows read or changed, by statement shape.");
+        for (QueryMetrics.Shape shape : queries.getShapes()) {
+            sample(out, "socialmedia_db_query_rows_total", sqlLabel(shape), shape.getRowCount());
+        }
+        header(out, "socialmedia_db_query_errors_total", "counter", "Statement runs that failed, by statement shape.");
+        for (QueryMetrics.Shape shape : queries.getShapes()) {
+            sample(out, "socialmedia_db_query_errors_total", sqlLabel(shape), shape.getErrorCount());
+        }
+        header(out, "socialmedia_db_pool_acquire_wait_seconds", "summary", "Time spent waiting for a connection.");
+        summary(out, "socialmedia_db_pool_acquire_wait_seconds", null, queries.getAcquireWait());
+        counter(out, "socialmedia_db_slow_queries_total", "Statements written to the slow query log.",
+                queries.getSlowQueryCount());
+    }
+
+    private void writePool(StringBuilder out, ConnectionPool pool) {
+        if (pool == null) {
+            return;
+        }
+        header(out, "socialmedia_db_pool_connections", "gauge", "Pooled database connections, by state.");
+        sample(out, "socialmedia_db_pool_connections", "state=\"active\"", pool.getActiveCount());
+        sample(out, "socialmedia_db_pool_connections", "state=\"idle\"", pool.getIdleCount());
+        gauge(out, "socialmedia_db_pool_max_connections", "Largest number of pooled connections.",
+                pool.getMaxSize());
+        gauge(out, "socialmedia_db_pool_waiters", "Threads waiting for a connection.", pool.getWaiterCount());
+        counter(out, "socialmedia_db_pool_acquires_total", "Connections handed out.", pool.getAcquireCount());
+        counter(out, "socialmedia_db_pool_acquire_wait_seconds_total", "Time spent waiting for connections.",
+                pool.getTotalAcquireWaitMillis() / MILLIS_PER_SECOND);
+        gauge(out, "socialmedia_db_pool_acquire_wait_seconds_max", "Longest wait for a connection.",
+                pool.getMaxAcquireWaitMillis() / MILLIS_PER_SECOND);
+        counter(out, "socialmedia_db_pool_timeouts_total", "Connection requests that timed out.",
+                pool.getTimeoutCount());
+        counter(out, "socialmedia_db_pool_leaks_total", "Connections held longer than the leak threshold.",
+                pool.getLeakCount());
+        counter(out, "socialmedia_db_pool_evictions_total", "Idle or broken connections closed by the pool.",
+                pool.getEvictionCount());
+        counter(out, "socialmedia_db_statement_cache_hits_total", "Prepared statements reused from the cache.",
+                pool.getStatementCacheHitCount());
+        counter(out, "socialmedia_db_statement_cache_misses_total", "Prepared statements created.",
+                pool.getStatementCacheMissCount());
+        counter(out, "socialmedia_db_statement_cache_evictions_total", "Prepared statements evicted and closed.",
+                pool.getStatementCacheEvictionCount());
+    }
+
+    private void writeCaches(StringBuilder out) {
+        LruCache<?, ?> messages = messageService.getMessageCache();
+        LruCache<?, ?> accounts = accountService.getAccountCache();
+
+        header(out, "socialmedia_cache_size", "gauge", "Entries in the cache.");
+        sample(out, "socialmedia_cache_size", "cache=\"message\"", messages.size());
+        sample(out, "socialmedia_cache_size", "cache=\"account\"", accounts.size());
+        header(out, "socialmedia_cache_hits_total", "counter", "Lookups answered from the cache.");
+        sample(out, "socialmedia_cache_hits_total", "cache=\"message\"", messages.getHitCount());
+        sample(out, "socialmedia_cache_hits_total", "cache=\"account\"", accounts.getHitCount());
+        header(out, "socialmedia_cache_misses_total", "counter", "Lookups that had to load the value.");
+        sample(out, "socialmedia_cache_misses_total", "cache=\"message\"", messages.getMissCount());
+        sample(out, "socialmedia_cache_misses_total", "cache=\"account\"", accounts.getMissCount());
+        header(out, "socialmedia_cache_coalesced_total", "counter", "Misses that waited for another caller's load.");
+        sample(out, "socialmedia_cache_coalesced_total", "cache=\"message\"", messages.getCoalescedCount());
+        sample(out, "socialmedia_cache_coalesced_total", "cache=\"account\"", accounts.getCoalescedCount());
+        header(out, "socialmedia_cache_evictions_total", "counter", "Entries evicted to make room.");
+        sample(out, "socialmedia_cache_evictions_total", "cache=\"message\"", messages.getEvictionCount());
+        sample(out, "socialmedia_cache_evictions_total", "cache=\"account\"", accounts.getEvictionCount());
+    }
+
+    private void writeUsernameFilter(StringBuilder out) {
+        BloomFilter filter = accountService.getUsernameFilter();
+        gauge(out, "socialmedia_username_filter_insertions", "Usernames added to the username filter.",
+                filter.getInsertionCount());
+        gauge(out, "socialmedia_username_filter_false_positive_rate",
+                "Estimated false positive rate of the username filter.", filter.getEstimatedFalsePositiveRate());
+        counter(out, "socialmedia_username_lookups_skipped_total",
+                "Username checks answered by the filter without a database query.",
+                accountService.getUsernameLookupsSkipped());
+        counter(out, "socialmedia_username_false_positives_total",
+                "Username checks the filter could not rule out although the username was free.",
+                accountService.getUsernameFalsePositives());
+    }
+
+    private void writeWriteQueue(StringBuilder out, GroupCommitQueue<?, ?> queue) {
+        if (queue == null) {
+            return;
+        }
+        gauge(out, "socialmedia_write_queue_depth", "Messages waiting for the group-commit writer.",
+                queue.getQueueDepth());
+        counter(out, "socialmedia_write_queue_batches_total", "Batches stored by the group-commit writer.",
+                queue.getBatchCount());
+        counter(out, "socialmedia_write_queue_items_total", "Messages stored by the group-commit writer.",
+                queue.getItemCount());
+        gauge(out, "socialmedia_write_queue_batch_size_max", "Largest batch stored.", queue.getMaxBatchSize());
+        counter(out, "socialmedia_write_queue_wait_seconds_total", "Time messages spent queued before their batch.",
+                queue.getTotalQueueWaitNanos() / NANOS_PER_SECOND);
+        gauge(out, "socialmedia_write_queue_wait_seconds_max", "Longest time a message spent queued.",
+                queue.getMaxQueueWaitMicros() / 1e6);
+        counter(out, "socialmedia_write_queue_fallbacks_total", "Batches retried one message at a time.",
+                queue.getFallbackCount());
+        counter(out, "socialmedia_write_queue_rejections_total", "Messages refused because the queue was full.",
+                queue.getRejectionCount());
+    }
+
+    private void writeDatabaseExecutor(StringBuilder out, DatabaseExecutor executor) {
+        if (executor == null || executor.isInline()) {
+            return;
+        }
+        gauge(out, "socialmedia_db_executor_queue_depth", "Requests waiting for a database executor thread.",
+                executor.getQueueDepth());
+        gauge(out, "socialmedia_db_executor_queue_capacity", "Requests that may wait before new ones are refused.",
+                executor.getQueueCapacity());
+        gauge(out, "socialmedia_db_executor_active", "Requests running on the database executor.",
+                executor.getActiveCount());
+        gauge(out, "socialmedia_db_executor_max_concurrency",
+                "Requests that may run on the database executor at once.",
+                executor.getMaxConcurrency());
+        counter(out, "socialmedia_db_executor_completed_total", "Requests run on the database executor.",
+                executor.getCompletedCount());
+        counter(out, "socialmedia_db_executor_rejections_total",
+                "Requests refused with 503 because the queue was full.",
+                executor.getRejectionCount());
+        header(out, "socialmedia_db_executor_queue_wait_seconds", "summary",
+                "Time requests waited for a database executor thread.");
+        summary(out, "socialmedia_db_executor_queue_wait_seconds", null, executor.getQueueWait());
+    }
+
+    private void writeAdmission(StringBuilder out, AdmissionController admission) {
+        if (admission == null) {
+            return;
+        }
+        List<AdmissionController.Route> admissionRoutes = admission.getRoutes();
+        header(out, "socialmedia_admission_limit", "gauge", "Requests a route currently admits at once.");
+        for (AdmissionController.Route route : admissionRoutes) {
+            sample(out, "socialmedia_admission_limit", admissionLabels(route), route.getLimit().getLimit());
+        }
+        header(out, "socialmedia_admission_in_flight", "gauge", "Admitted requests not yet finished, by route.");
+        for (AdmissionController.Route route : admissionRoutes) {
+            sample(out, "socialmedia_admission_in_flight", admissionLabels(route), route.getLimit().getInFlight());
+        }
+        header(out, "socialmedia_admission_admitted_total", "counter", "Requests admitted, by route.");
+        for (AdmissionController.Route route : admissionRoutes) {
+            sample(out, "socialmedia_admission_admitted_total", admissionLabels(route), route.getAdmittedCount());
+        }
+        header(out, "socialmedia_admission_rejected_total", "counter",
+                "Requests shed with 503, by route and by whether the route's limit or its budget was full.");
+        for (AdmissionController.Route route : admissionRoutes) {
+            sample(out, "socialmedia_admission_rejected_total", admissionLabels(route) + ",reason=\"limit\"",
+                    route.getRejectedByLimitCount());
+            sample(out, "socialmedia_admission_rejected_total", admissionLabels(route) + ",reason=\"budget\"",
+                    route.getRejectedByBudgetCount());
+        }
+        header(out, "socialmedia_admission_queue_wait_seconds", "summary",
+                "Time admitted requests waited before their handler started, by route.");
+        for (AdmissionController.Route route : admissionRoutes) {
+            summary(out, "socialmedia_admission_queue_wait_seconds", admissionLabels(route), route.getQueueWait());
+        }
+
+        header(out, "socialmedia_admission_budget_limit", "gauge",
+                "Requests a budget admits at once over all of its routes.");
+        for (AdmissionController.Budget budget : AdmissionController.Budget.values()) {
+            sample(out, "socialmedia_admission_budget_limit", budgetLabel(budget), admission.getBudgetLimit(budget));
+        }
+        header(out, "socialmedia_admission_budget_in_flight", "gauge",
+                "Admitted requests not yet finished, by budget.");
+        for (AdmissionController.Budget budget : AdmissionController.Budget.values()) {
+            sample(out, "socialmedia_admission_budget_in_flight", budgetLabel(budget),
+                    admission.getBudgetInFlight(budget));
+        }
+    }
+
+    /**
+     * Writes the quantiles, sum and count of a histogram recorded in nanoseconds, converted to seconds.
+     */
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels == null ? "" : labels + ",";
+        for (double quantile : QUANTILES) {
+            sample(out, name, prefix + "quantile=\"" + quantile + '"',
+                    histogram.getValueAtQuantile(quantile) / NANOS_PER_SECOND);
+        }
+        sample(out, name + "_sum", labels, histogram.getSumNanos() / NANOS_PER_SECOND);
+        sample(out, name + "_count", labels, histogram.getCount());
+    }
+
+    private static String admissionLabels(AdmissionController.Route route) {
+        return "method=\"" + escape(route.getMethod()) + "\",path=\"" + escape(route.getPath()) + '"';
+    }
+
+    private static String budgetLabel(AdmissionController.Budget budget) {
+        return "budget=\"" + budget.name().toLowerCase(Locale.ROOT) + '"';
+    }
+
+    private static String sqlLabel(QueryMetrics.Shape shape) {
+        return "sql=\"" + escape(shape.getSql()) + '"';
+    }
+
+    private static String routeLabels(RouteMetrics route) {
+        return "method=\"" + escape(route.getMethod()) + "\",path=\"" + escape(route.getPath()) + '"';
+    }
+
+    /**
+     * Escapes a label value as the exposition format requires.
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, "gauge", help);
+        sample(out, name, null, value);
+    }
+
+    private static void counter(StringBuilder out, String name, String help, double value) {
+        header(out, name, "counter", help);
+        sample(out, name, null, value);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+}
@@ -1,31 +1,219 @@
 package Controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.jetty.server.Request;
+
+import com.fasterxml.jackson.core.JsonGenerator;
 
 import Model.Account;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageCursor;
+import Model.ValidationResult;
 import Service.AccountService;
 import Service.MessageService;
+import Util.AdmissionController;
+import Util.DatabaseExecutor;
+import Util.QueryMetrics;
+import Util.RouteMetrics;
 import io.javalin.Javalin;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.Header;
+import io.javalin.http.HttpResponseException;
+import io.javalin.http.ServiceUnavailableResponse;
+import io.javalin.validation.ValidationException;
 
 /**
- * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
- * found in readme.md as well as the test cases. You should
- * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
+ * The SocialMediaController class defines the HTTP API described in readme.md: registration and login, creating,
+ * listing, updating and deleting messages, and each account's messages. Handlers parse the request, delegate to
+ * AccountService and MessageService, and map their results to status codes and JSON bodies.
+ *
+ * Every database route is wrapped by onDatabase, which records its latency, status and database time in a
+ * RouteMetrics, sheds it with 503 when the AdmissionController is over the route's limit, and runs it on the
+ * DatabaseExecutor chosen with -Dsocialmedia.execution. Single message and timeline reads carry ETags and answer
+ * 304 to a matching If-None-Match. GET /metrics exposes everything recorded in the Prometheus text format.
+ *
+ * Account timelines and their ETags come from MessageService's in-memory timeline index, which by default assumes
+ * this server is the only writer to the message table. Messages inserted by another process are not listed, and
+ * their timeline ETags do not change, until -Dsocialmedia.timeline.refreshMillis is set to a positive interval.
  */
 public class SocialMediaController {
+    /**
+     * Page size used when a listing is requested with an after cursor but no limit.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    /**
+     * Largest page a client may request in one call.
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * Largest number of messages accepted by one POST /messages/batch request.
+     */
+    private static final int MAX_BATCH_SIZE = 10000;
+    /**
+     * Response header carrying the cursor of the next page when more messages may follow.
+     */
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final AccountService accountService;
     private final MessageService messageService;
-    private final ObjectMapper mapper;
+    /**
+     * The one JSON mapper used for every request and response, also registered as Javalin's JsonMapper.
+     */
+    private final JacksonJsonMapper jsonMapper;
+    /**
+     * Latency, in-flight and exception counters of every route registered through onDatabase.
+     */
+    private final List<RouteMetrics> routeMetrics = new CopyOnWriteArrayList<>();
+    private final PrometheusExporter metricsExporter;
+    /**
+     * Runs the handlers that block on the database, on the request thread or on threads of its own depending on
+     * -Dsocialmedia.execution.
+     */
+    private final DatabaseExecutor databaseExecutor;
+    /**
+     * Sheds requests to routes that are over their concurrency limit; null if admission control is turned off with
+     * -Dsocialmedia.admission.enabled=false.
+     */
+    private final AdmissionController admissionController;
 
     public SocialMediaController(){
+        this(DatabaseExecutor.configured(), AdmissionController.configured());
+    }
+
+    /**
+     * @param databaseExecutor Runs the handlers that block on the database; it is closed when the server stops.
+     * @param admissionController Sheds requests to routes that are over their concurrency limit, or null to admit
+     * every request.
+     */
+    public SocialMediaController(DatabaseExecutor databaseExecutor, AdmissionController admissionController){
         this.accountService = new AccountService();
         this.messageService = new MessageService();
-        this.mapper = new ObjectMapper();
+        this.jsonMapper = new JacksonJsonMapper();
+        this.databaseExecutor = databaseExecutor;
+        this.admissionController = admissionController;
+        this.metricsExporter = new PrometheusExporter(routeMetrics, accountService, messageService, databaseExecutor,
+                admissionController);
+    }
+
+    /**
+     * Wraps a handler that blocks on the database so it runs on the database executor, freeing the request thread
+     * while it waits, and measures every request it serves: the request counts as in flight until the handler has
+     * run, and its latency, including any wait for the executor, is recorded under the response status. A handler
+     * that throws is counted as an exception and recorded under the status Javalin will answer with. The statements
+     * the handler ran, and the time they took, are recorded for the route as well. A request the admission controller
+     * does not admit, or that finds the executor's queue full, is refused at once with 503 and a Retry-After header.
+     * @param method The HTTP method of the route.
+     * @param path The path pattern of the route.
+     * @param handler The handler to run on the database executor.
+     * @param fromMemory Returns a handler answering the request without the database, which then runs on the request
+     * thread without going through admission, or null if the request needs the database; null if no request can be
+     * answered from memory.
+     * @return The dispatching and measuring handler.
+     */
+    private Handler onDatabase(String method, String path, Handler handler, Function<Context, Handler> fromMemory) {
+        RouteMetrics metrics = register(method, path);
+        AdmissionController.Route admission =
+                admissionController != null ? admissionController.register(method, path) : null;
+        return context -> {
+            long startedAt = metrics.started();
+            Handler served = fromMemory != null ? fromMemory.apply(context) : null;
+            if (served != null) {
+                handleMeasured(context, served, metrics, startedAt, null);
+                return;
+            }
+            if (admission != null && !admission.tryAdmit()) {
+                shed(context, metrics, startedAt, "Too many requests to " + method + " " + path);
+            }
+            if (databaseExecutor.isInline()) {
+                handleMeasured(context, handler, metrics, startedAt, admission);
+                return;
+            }
+            CompletableFuture<Void> done;
+            try {
+                done = databaseExecutor.submit(() -> {
+                    handleMeasured(context, handler, metrics, startedAt, admission);
+                    return null;
+                });
+            } catch (RejectedExecutionException e) {
+                if (admission != null) {
+                    admission.release(startedAt, 503);
+                }
+                shed(context, metrics, startedAt, "Too many requests are waiting for the database");
+                return;
+            }
+            context.future(() -> done);
+        };
+    }
+
+    /**
+     * Records the request as refused and answers it with 503, asking the client to retry after a while.
+     * @throws ServiceUnavailableResponse always.
+     */
+    private void shed(Context context, RouteMetrics metrics, long startedAt, String reason) {
+        metrics.failed();
+        metrics.finished(startedAt, 503);
+        long retryAfter = admissionController != null ? admissionController.getRetryAfterSeconds() : 1;
+        context.header("Retry-After", Long.toString(retryAfter));
+        throw new ServiceUnavailableResponse(reason);
+    }
+
+    private Handler onDatabase(String method, String path, Handler handler) {
+        return onDatabase(method, path, handler, null);
+    }
+
+    private RouteMetrics register(String method, String path) {
+        RouteMetrics metrics = new RouteMetrics(method, path);
+        routeMetrics.add(metrics);
+        return metrics;
+    }
+
+    /**
+     * Runs the handler on the calling thread and records the request as finished, counting the database work done
+     * by this thread while it ran. An admitted request gives its admission slots back when the handler returns.
+     */
+    private void handleMeasured(Context context, Handler handler, RouteMetrics metrics, long startedAt,
+            AdmissionController.Route admission) throws Exception {
+        if (admission != null) {
+            admission.started(startedAt);
+        }
+        QueryMetrics.RequestTotals database = QueryMetrics.startRequest();
+        int status = 500;
+        try {
+            handler.handle(context);
+            status = context.statusCode();
+        } catch (HttpResponseException e) {
+            metrics.failed();
+            status = e.getStatus();
+            throw e;
+        } catch (ValidationException e) {
+            metrics.failed();
+            status = 400;
+            throw e;
+        } catch (Exception e) {
+            metrics.failed();
+            throw e;
+        } finally {
+            metrics.finished(startedAt, status);
+            metrics.recordDatabase(database);
+            if (admission != null) {
+                admission.release(startedAt, status);
+            }
+        }
     }
 
     /**
@@ -34,16 +222,26 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        Javalin app = Javalin.create(config -> config.jsonMapper(jsonMapper));
+        // Let queued message writes finish and stop the writer and executor threads along with the server
+        app.events(event -> event.serverStopped(() -> {
+            messageService.close();
+            databaseExecutor.close();
+        }));
 
-        app.post("/register", this::registerAccount);
-        app.post("/login", this::loginAccount);
-        app.post("/messages", this::createMessage);
-        app.get("/messages", this::getAllMessages);
-        app.get("/messages/{message_id}", this::getMessageByID);
-        app.delete("/messages/{message_id}", this::deleteMessageByID);
-        app.patch("/messages/{message_id}", this::updateMessageByID);
-        app.get("/accounts/{account_id}/messages", this::getAllMessagesByAccountID);
+        app.post("/register", onDatabase("POST", "/register", this::registerAccount));
+        app.post("/login", onDatabase("POST", "/login", this::loginAccount));
+        app.post("/messages", onDatabase("POST", "/messages", this::createMessage));
+        app.post("/messages/batch", onDatabase("POST", "/messages/batch", this::createMessages));
+        app.get("/messages", onDatabase("GET", "/messages", this::getAllMessages));
+        app.get("/messages/{message_id}",
+                onDatabase("GET", "/messages/{message_id}", this::getMessageByID, this::messageFromMemory));
+        app.delete("/messages/{message_id}",
+                onDatabase("DELETE", "/messages/{message_id}", this::deleteMessageByID));
+        app.patch("/messages/{message_id}", onDatabase("PATCH", "/messages/{message_id}", this::updateMessageByID));
+        app.get("/accounts/{account_id}/messages", onDatabase("GET", "/accounts/{account_id}/messages",
+                this::getAllMessagesByAccountID, this::timelineFromMemory));
+        app.get("/metrics", this::getMetrics);
 
         return app;
     }
@@ -52,32 +250,36 @@ public class SocialMediaController {
      * Hander for creating a new Account for the user.
      * Response status code: 200 (by default) if successful, 400 (client error) otherwise.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
      */
-    private void registerAccount(Context context) throws JsonProcessingException {
-        Account account = mapper.readValue(context.body(), Account.class);
+    private void registerAccount(Context context) throws IOException {
+        Account account = jsonMapper.readAccount(context.bodyInputStream());
         try {
-            Account newAccount = accountService.createAccount(account);
-            context.json(mapper.writeValueAsString(newAccount));
+            ValidationResult<Account> result = accountService.createAccount(account);
+            if(result.isValid()){
+                respondJson(context, result.getValue());
+            } else {
+                context.status(400);
+            }
         } catch (RuntimeException e) {
             context.status(400);
         }
-        
+
     }
 
     /**
      * Hander for login process for users.
      * Response status code: 200 (by default) if successful, 401 (unauthorized) otherwise.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
      */
-    private void loginAccount(Context context) throws JsonProcessingException {
-        Account account = mapper.readValue(context.body(), Account.class);
+    private void loginAccount(Context context) throws IOException {
+        Account account = jsonMapper.readAccount(context.bodyInputStream());
         try {
-            Account loginAccount = accountService.login(account);
+            ValidationResult<Account> result = accountService.login(account);
             // Check if account exists
-            if(loginAccount != null){
-                context.json(mapper.writeValueAsString(loginAccount));
+            if(result.isValid()){
+                respondJson(context, result.getValue());
             } else {
                 context.status(401);
             }
@@ -90,41 +292,98 @@ public class SocialMediaController {
      * Handler for creation of new messages
      * Response status code: 200 (by default) if successful, 400 (client error) otherwise.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
      */
-    private void createMessage(Context context) throws JsonProcessingException {
-        Message msg = mapper.readValue(context.body(), Message.class);
+    private void createMessage(Context context) throws IOException {
+        Message msg = jsonMapper.readMessage(context.bodyInputStream());
+        if(msg == null){
+            context.status(400);
+            return;
+        }
         try {
             Account account = accountService.getAccountByID(msg.getPosted_by());
-            Message newMsg = messageService.createMessage(msg, account);
-
-            context.json((mapper.writeValueAsString(newMsg)));
+            ValidationResult<Message> result = messageService.createMessage(msg, account);
+            if(result.isValid()){
+                respondJson(context, result.getValue());
+            } else {
+                context.status(400);
+            }
         } catch (RuntimeException e) {
             context.status(400);
         }
     }
 
     /**
-     * Handler to retrieve all messages
-     * Response status code: 200 (by default) 
+     * Handler for creation of many messages in one request. The body is a JSON array of messages; each is validated
+     * on its own and the valid ones are inserted in a single transaction.
+     * Response status code: 200 (by default) with one result per message holding its message_id or an error,
+     * 400 (client error) if the body is not an array or holds more than MAX_BATCH_SIZE messages.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
      */
-    private void getAllMessages(Context context) {
-        List<Message> messages = messageService.getAllMessages();
-        context.json(messages);
+    private void createMessages(Context context) throws IOException {
+        List<Message> msgs = jsonMapper.readMessageList(context.bodyInputStream());
+        if(msgs == null || msgs.size() > MAX_BATCH_SIZE || msgs.contains(null)){
+            context.status(400);
+            return;
+        }
+
+        // Look up each distinct poster once
+        Map<Integer, Account> accounts = new HashMap<>();
+        for(Message msg : msgs){
+            if(!accounts.containsKey(msg.getPosted_by())){
+                accounts.put(msg.getPosted_by(), accountService.getAccountByID(msg.getPosted_by()));
+            }
+        }
+
+        List<MessageBatchResult> results = messageService.createMessages(msgs, accounts);
+        respondJson(context, results);
     }
 
     /**
-     * Handler to retrieve a message by its ID.
-     * Response status code: 200 (by default) 
+     * Handler to retrieve all messages. When a limit or after query parameter is present only one page is returned,
+     * and the cursor for the following page is sent in the X-Next-Cursor header. Otherwise every message is streamed
+     * to the response as it is read from the database.
+     * Response status code: 200 (by default), 400 (client error) for an invalid limit or cursor.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void getMessageByID(Context context) {
+    private void getAllMessages(Context context) throws IOException {
+        if(isPaginated(context)){
+            int limit = pageLimit(context);
+            List<Message> messages = messageService.getMessagesPage(pageCursor(context), limit);
+            setNextCursor(context, messages, limit);
+            respondJson(context, messages);
+            return;
+        }
+        streamMessages(context, messageService::forEachMessage);
+    }
+
+    /**
+     * Handler to retrieve a message by its ID. The response carries an ETag, and a request whose If-None-Match
+     * holds the current one is answered without reading the message. If-None-Match: * is answered with 304 only
+     * when the message exists.
+     * Response status code: 200 (by default), 304 (not modified) if the client's copy is current.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getMessageByID(Context context) throws IOException {
         int id = Integer.parseInt(context.pathParam("message_id"));
+        if(notModified(context, messageETag(id))){
+            return;
+        }
         Message msg = messageService.getMessageByID(id);
+        if(notModifiedIfExists(context, () -> msg != null)){
+            return;
+        }
+        respondMessage(context, msg);
+    }
+
+    /**
+     * Writes the message as the response body, or an empty body if the message does not exist.
+     */
+    private void respondMessage(Context context, Message msg) throws IOException {
         // Check if message exists
         if(msg != null){
-            context.json(msg);
+            respondJson(context, msg);
         // Set response body to empty if message does not exists
         } else {
             context.result("");
@@ -132,28 +391,72 @@ public class SocialMediaController {
     }
 
     /**
-     * Handler to delete a message by its ID.
+     * Reads what a GET /messages/{message_id} request can be answered with from memory: a 304 when the client's copy
+     * is current, or the cached message or its cached absence. The returned handler answers with exactly what was
+     * read here, so an entry that changes or is evicted before it runs cannot send it to the database on the request
+     * thread.
+     * @param context The Javalin Context object of a GET /messages/{message_id} request.
+     * @return The handler answering the request without database access, or null if the request needs the database.
+     */
+    private Handler messageFromMemory(Context context) {
+        int id;
+        try {
+            id = Integer.parseInt(context.pathParam("message_id"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String etag = messageETag(id);
+        if(isCurrent(context, etag)){
+            return current -> notModified(current, etag);
+        }
+        Message[] cached = new Message[1];
+        if(!messageService.getCachedMessage(id, msg -> cached[0] = msg)){
+            return null;
+        }
+        return current -> {
+            current.header(Header.ETAG, etag);
+            if(!notModifiedIfExists(current, () -> cached[0] != null)){
+                respondMessage(current, cached[0]);
+            }
+        };
+    }
+
+    /**
+     * @param context The Javalin Context object of a GET /accounts/{account_id}/messages request.
+     * @return A handler answering 304 with the ETag read here when the client's copy of the account's messages is
+     * current, or null if the request needs the database.
+     */
+    private Handler timelineFromMemory(Context context) {
+        int id;
+        try {
+            id = Integer.parseInt(context.pathParam("account_id"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String etag = timelineETag(id);
+        if(!isCurrent(context, etag)){
+            return null;
+        }
+        return current -> notModified(current, etag);
+    }
+
+    /**
+     * Handler to delete a message by its ID. The message is deleted and returned in a single database round trip.
      * Response status code: 200 (by default) if successful, 400 (client error) otherwise.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException 
+     * @throws IOException will be thrown if there is an issue writing the response.
      */
-    private void deleteMessageByID(Context context) throws JsonProcessingException {
+    private void deleteMessageByID(Context context) throws IOException {
 
         try {
             int id = Integer.parseInt(context.pathParam("message_id"));
 
-            Message msgFromDb = messageService.getMessageByID(id);
-            // Check if message exists in database
-            if(msgFromDb == null){
-                context.status(200);
+            Message deletedMsg = messageService.deleteMessageByID(id);
+            // Respond with an empty body if the message did not exist
+            if(deletedMsg != null){
+                respondJson(context, deletedMsg);
             } else {
-                // Check if deleted message was successful
-                boolean isDeleted = messageService.deleteMessageByID(msgFromDb);
-                if(isDeleted){
-                    context.json(msgFromDb);
-                } else{
-                    context.status(400);
-                }
+                context.status(200);
             }
 
         } catch (RuntimeException e){
@@ -163,23 +466,21 @@ public class SocialMediaController {
 
 
     /**
-     * Handler to update a message by its ID.
+     * Handler to update a message by its ID. The message text is updated and the full updated message returned in a
+     * single database round trip.
      * Response status code: 200 (by default) if successful, 400 (client error) otherwise.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
      */
-    private void updateMessageByID(Context context) throws JsonProcessingException {
-        Message msg = mapper.readValue(context.body(), Message.class);
+    private void updateMessageByID(Context context) throws IOException {
+        Message msg = jsonMapper.readMessage(context.bodyInputStream());
         try {
             int id = Integer.parseInt(context.pathParam("message_id"));
 
-            Message msgFromDb = messageService.getMessageByID(id);
-            // Set message text to the updated text 
-            msgFromDb.setMessage_text(msg.getMessage_text());
-            boolean isUpdated = messageService.updateMessageByID(id, msgFromDb);
-            // Check if message was updated successfully
-            if(isUpdated){
-                context.json(msgFromDb);
+            ValidationResult<Message> result = messageService.updateMessageByID(id, msg);
+            // Check if message existed and was updated successfully
+            if(result.isValid()){
+                respondJson(context, result.getValue());
             } else{
                 context.status(400);
             }
@@ -190,20 +491,196 @@ public class SocialMediaController {
     }
 
     /**
-     * Handler to retrieve all messages written by a particular user account.
-     * Response status code: 200 (by default)
+     * Handler to retrieve all messages written by a particular user account. Supports the same limit and after
+     * query parameters as the handler for all messages. The response carries an ETag that changes with any of the
+     * account's messages, and a request whose If-None-Match holds the current one is answered without reading them.
+     * If-None-Match: * is answered with 304 only when the account exists.
+     * Response status code: 200 (by default), 304 (not modified) if the client's copy is current, 400 (client error)
+     * for an invalid limit or cursor.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void getAllMessagesByAccountID(Context context) {
+    private void getAllMessagesByAccountID(Context context) throws IOException {
         int id = Integer.parseInt(context.pathParam("account_id"));
-        List<Message> messages = messageService.getAllMessagesByAccountID(id);
-        // Check if message list exists. If so, then send JSON body of message list as well as 200 OK
-        if(!messages.isEmpty()){
-            context.json(messages).status(200);
-        } else{
-            context.status(200);
+        if(notModified(context, timelineETag(id))){
+            return;
+        }
+        if(notModifiedIfExists(context, () -> accountService.getAccountByID(id) != null)){
+            return;
+        }
+        if(isPaginated(context)){
+            int limit = pageLimit(context);
+            List<Message> messages = messageService.getMessagesPageByAccountID(id, pageCursor(context), limit);
+            setNextCursor(context, messages, limit);
+            respondJson(context, messages);
+            return;
+        }
+        streamMessages(context, consumer -> messageService.forEachMessageByAccountID(id, consumer));
+    }
+
+    /**
+     * Handler to expose the server's metrics in the Prometheus text format.
+     * Response status code: 200 (by default)
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getMetrics(Context context) {
+        context.contentType(PrometheusExporter.CONTENT_TYPE);
+        context.result(metricsExporter.scrape());
+    }
+
+    /**
+     * Serializes a response body once, straight into the response output stream.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param body The object to send as JSON.
+     * @throws IOException will be thrown if there is an issue writing the response.
+     */
+    private void respondJson(Context context, Object body) throws IOException {
+        context.contentType(ContentType.APPLICATION_JSON);
+        jsonMapper.writeTo(context.outputStream(), body);
+    }
+
+    /**
+     * Writes a JSON array of messages straight to the response output stream, one element per row read from the
+     * database, so memory use does not grow with the number of messages. If reading fails partway the response is
+     * never finished as a well-formed array: before anything has been sent the error is answered with status 500,
+     * and after that the connection is aborted, so the client cannot mistake a truncated listing for a complete one.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param source Feeds each message to the consumer it is given.
+     */
+    private void streamMessages(Context context, Consumer<Consumer<Message>> source) throws IOException {
+        context.contentType(ContentType.APPLICATION_JSON);
+        JsonGenerator generator = jsonMapper.createGenerator(context.outputStream());
+        try {
+            generator.writeStartArray();
+            source.accept(msg -> {
+                try {
+                    jsonMapper.writeStreamedMessage(generator, msg);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+            generator.close();
+        } catch (IOException | RuntimeException e) {
+            // Closing the generator would end the array, so it is left open and the response discarded instead
+            if (context.res().isCommitted()) {
+                Request.getBaseRequest(context.req()).getHttpChannel().abort(e);
+            } else {
+                context.res().resetBuffer();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return The strong ETag of a message, which changes whenever the message is created, updated or deleted.
+     */
+    private String messageETag(int id) {
+        return "\"m" + id + "-" + messageService.getMessageVersion(id) + '"';
+    }
+
+    /**
+     * @return The strong ETag of an account's messages, which changes whenever one of them is created, updated or
+     * deleted. Every page of the listing shares it.
+     */
+    private String timelineETag(int accountId) {
+        return "\"a" + accountId + "-" + messageService.getTimelineVersion(accountId) + '"';
+    }
+
+    /**
+     * Sets the ETag header, and answers 304 with no body when the client's copy is current.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param etag The current ETag of the requested resource, taken before the resource is read.
+     * @return True/False whether the response is complete.
+     */
+    private boolean notModified(Context context, String etag) {
+        context.header(Header.ETAG, etag);
+        if(isCurrent(context, etag)){
+            context.status(304);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Answers 304 with no body when the If-None-Match header is *, which matches any current representation of the
+     * resource, and the resource exists. The ETag header must already be set by notModified.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param exists Tells whether the requested resource exists; only asked when the header holds *.
+     * @return True/False whether the response is complete.
+     */
+    private boolean notModifiedIfExists(Context context, BooleanSupplier exists) {
+        if(isCurrent(context, "*") && exists.getAsBoolean()){
+            context.status(304);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param context The Javalin Context object of a conditional request.
+     * @param etag The current ETag of the requested resource, or * to ask whether the header holds *.
+     * @return True/False whether the If-None-Match header holds the ETag, compared weakly as RFC 9110 asks. A * in
+     * the header only matches a resource that exists, which is checked by notModifiedIfExists.
+     */
+    private boolean isCurrent(Context context, String etag) {
+        String ifNoneMatch = context.header(Header.IF_NONE_MATCH);
+        if(ifNoneMatch == null){
+            return false;
+        }
+        for(String candidate : ifNoneMatch.split(",")){
+            candidate = candidate.trim();
+            if(candidate.startsWith("W/")){
+                candidate = candidate.substring(2);
+            }
+            if(candidate.equals(etag)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param context The Javalin Context object of a listing request.
+     * @return True/False whether the client asked for a single page rather than the full listing.
+     */
+    private boolean isPaginated(Context context) {
+        return context.queryParam("limit") != null || context.queryParam("after") != null;
+    }
+
+    /**
+     * @param context The Javalin Context object of a listing request.
+     * @return The requested page size, capped at MAX_PAGE_SIZE.
+     */
+    private int pageLimit(Context context) {
+        int limit = context.queryParamAsClass("limit", Integer.class)
+                .check(value -> value > 0, "limit must be a positive number")
+                .getOrDefault(DEFAULT_PAGE_SIZE);
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * @param context The Javalin Context object of a listing request.
+     * @return The decoded after cursor, or null when the first page is requested.
+     */
+    private MessageCursor pageCursor(Context context) {
+        String after = context.queryParam("after");
+        if(after == null || after.isEmpty()){
+            return null;
+        }
+        MessageCursor cursor = MessageCursor.decode(after);
+        if(cursor == null){
+            throw new BadRequestResponse("Invalid after cursor");
+        }
+        return cursor;
+    }
+
+    /**
+     * Sets the X-Next-Cursor header when the page is full, meaning more messages may follow it.
+     */
+    private void setNextCursor(Context context, List<Message> page, int limit) {
+        if(page.size() == limit){
+            context.header(NEXT_CURSOR_HEADER, MessageCursor.after(page.get(page.size() - 1)).encode());
         }
-        context.json(messages);
     }
 
-}
\ No newline at end of file
+}
@@ -5,11 +5,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.function.Consumer;
 
 import Model.Account;
 import Util.ConnectionUtil;
 
-public class AccountDAO {
+public class AccountDAO implements AccountRepository {
 
     /**
      * insert method utilizes the DAO associated with creating and inserting a new user/account into the database.
@@ -17,12 +18,10 @@ public class AccountDAO {
      * @return The Account object that contains the data associated with the account after insertion into the database.
      */
     public Account insert(Account account){
-        Connection connection = ConnectionUtil.getConnection();
+        String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
 
-        try {
-            String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
-            
-            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setString(1, account.getUsername());
             ps.setString(2, account.getPassword());
             ps.executeUpdate();
@@ -47,12 +46,10 @@ public class AccountDAO {
      * @return True/False whether or not a username already exists in the database.
      */
     public boolean checkUsernameExists(String username){
-        Connection connection = ConnectionUtil.getConnection();
+        String sql = "SELECT * FROM account WHERE username = ?";
 
-        try {
-            String sql = "SELECT * FROM account WHERE username = ?";
-            
-            PreparedStatement ps = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, username);
             try (ResultSet rs = ps.executeQuery()){
                     return rs.next();
@@ -73,12 +70,10 @@ public class AccountDAO {
      * with the one in the database.
      */
     public Account validateLogin(Account loginAccount) {
-        Connection connection = ConnectionUtil.getConnection();
+        String sql = "SELECT * FROM account WHERE username = ?";
 
-        try {
-            String sql = "SELECT * FROM account WHERE username = ?";
-            
-            PreparedStatement ps = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, loginAccount.getUsername());
 
             try(ResultSet rs = ps.executeQuery()){
@@ -108,12 +103,10 @@ public class AccountDAO {
      * @return The Account object that contains the data associated with the account after database retrieval.
      */
     public Account getAccountByID(int id) {
-        Connection connection = ConnectionUtil.getConnection();
+        String sql = "SELECT * FROM account WHERE account_id = ?";
 
-        try {
-            String sql = "SELECT * FROM account WHERE account_id = ?";
-            
-            PreparedStatement ps = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, id);
 
             try(ResultSet rs = ps.executeQuery()){
@@ -132,4 +125,73 @@ public class AccountDAO {
         }
         return null;
     }
+
+    /**
+     * countAccounts method utilizes the DAO associated with counting the accounts in the database.
+     * @return The number of accounts.
+     * @throws RuntimeException if the accounts cannot be counted, so the username filter is not sized for none
+     */
+    public long countAccounts() {
+        String sql = "SELECT COUNT(*) FROM account";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery()) {
+            if(rs.next()){
+                return rs.getLong(1);
+            }
+            return 0;
+        } catch (SQLException e){
+            throw new RuntimeException("Failed to count the accounts", e);
+        }
+    }
+
+    /**
+     * forEachUsername method utilizes the DAO associated with streaming the username of every account in the database.
+     * @param consumer The callback receiving each username in turn.
+     * @throws RuntimeException if the usernames cannot be read, so a partial username filter is not mistaken for a
+     * complete one
+     */
+    public void forEachUsername(Consumer<String> consumer) {
+        String sql = "SELECT username FROM account";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setFetchSize(1000);
+            try(ResultSet rs = ps.executeQuery()){
+                while(rs.next()){
+                    String username = rs.getString("username");
+                    if(username != null){
+                        consumer.accept(username);
+                    }
+                }
+            }
+        } catch (SQLException e){
+            throw new RuntimeException("Failed to read the account usernames", e);
+        }
+    }
+
+    /**
+     * forEachAccount method utilizes the DAO associated with streaming every account in the database.
+     * @param consumer The callback receiving each Account in turn.
+     * @throws RuntimeException if the accounts cannot be read, so a partial copy is not mistaken for a complete one
+     */
+    public void forEachAccount(Consumer<Account> consumer) {
+        String sql = "SELECT * FROM account";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setFetchSize(1000);
+            try(ResultSet rs = ps.executeQuery()){
+                while(rs.next()){
+                    consumer.accept(new Account(
+                        rs.getInt("account_id"),
+                        rs.getString("username"),
+                        rs.getString("password")));
+                }
+            }
+        } catch (SQLException e){
+            throw new RuntimeException("Failed to read the accounts", e);
+        }
+    }
 }
@@ -0,0 +1,51 @@
+package DAO;
+
+import java.util.function.Consumer;
+
+import Model.Account;
+
+/**
+ * The AccountRepository interface is the storage contract used by AccountService. AccountDAO implements it on top of
+ * the JDBC connection pool; other storage engines can be chosen at startup through StorageEngine.
+ */
+public interface AccountRepository {
+
+    /**
+     * @param account The new account, without an account_id.
+     * @return The account with its generated account_id, or with account_id 0 if it was not inserted.
+     */
+    Account insert(Account account);
+
+    /**
+     * @param username The username to look for.
+     * @return True/False whether an account already has the username.
+     */
+    boolean checkUsernameExists(String username);
+
+    /**
+     * @param loginAccount The username and password to check.
+     * @return The matching account, or null if the username does not exist or the password is wrong.
+     */
+    Account validateLogin(Account loginAccount);
+
+    /**
+     * @param id The account_id to look up.
+     * @return The account, or null if there is none with that account_id.
+     */
+    Account getAccountByID(int id);
+
+    /**
+     * @return The number of accounts.
+     */
+    long countAccounts();
+
+    /**
+     * @param consumer The callback receiving the username of every account in turn.
+     */
+    void forEachUsername(Consumer<String> consumer);
+
+    /**
+     * @param consumer The callback receiving every account in turn.
+     */
+    void forEachAccount(Consumer<Account> consumer);
+}
@@ -0,0 +1,116 @@
+package DAO;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import Model.Account;
+
+/**
+ * The InMemoryAccountRepository class keeps every account in process memory using only lock-free concurrent
+ * structures. Accounts are held by account_id in a ConcurrentSkipListMap, and a ConcurrentHashMap by username
+ * enforces unique usernames the same way the database's unique constraint does.
+ *
+ * Stored Account objects are shared with callers and must not be modified.
+ */
+public class InMemoryAccountRepository implements AccountRepository {
+    private final ConcurrentSkipListMap<Integer, Account> accounts = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Account> byUsername = new ConcurrentHashMap<>();
+    private final AtomicInteger lastAccountId = new AtomicInteger();
+
+    /**
+     * insert method stores a new account under the next account_id, unless the username is already taken.
+     * @param account The Account class object which contains the account username and password.
+     * @return The stored Account object, or the given account with account_id 0 if the username is taken.
+     */
+    public Account insert(Account account) {
+        if (account.getUsername() == null) {
+            return account;
+        }
+        Account stored = new Account(lastAccountId.incrementAndGet(), account.getUsername(), account.getPassword());
+        if (byUsername.putIfAbsent(stored.getUsername(), stored) != null) {
+            return account;
+        }
+        accounts.put(stored.getAccount_id(), stored);
+        return stored;
+    }
+
+    /**
+     * @param username The username to look for.
+     * @return True/False whether an account already has the username.
+     */
+    public boolean checkUsernameExists(String username) {
+        return username != null && byUsername.containsKey(username);
+    }
+
+    /**
+     * @param loginAccount The Account class object which contains the account username and password credentials.
+     * @return The stored Account object if the credentials match, otherwise null.
+     */
+    public Account validateLogin(Account loginAccount) {
+        if (loginAccount.getUsername() == null) {
+            return null;
+        }
+        Account stored = byUsername.get(loginAccount.getUsername());
+        if (stored != null && stored.getPassword() != null && stored.getPassword().equals(loginAccount.getPassword())) {
+            return stored;
+        }
+        return null;
+    }
+
+    /**
+     * @param id The account_id associated with a specific account.
+     * @return The stored Account object, or null if there is none with that account_id.
+     */
+    public Account getAccountByID(int id) {
+        return accounts.get(id);
+    }
+
+    /**
+     * @return The number of stored accounts.
+     */
+    public long countAccounts() {
+        return accounts.size();
+    }
+
+    /**
+     * @param consumer The callback receiving the username of each stored account in turn.
+     */
+    public void forEachUsername(Consumer<String> consumer) {
+        accounts.values().forEach(account -> consumer.accept(account.getUsername()));
+    }
+
+    /**
+     * @param consumer The callback receiving each stored account in account_id order.
+     */
+    public void forEachAccount(Consumer<Account> consumer) {
+        accounts.values().forEach(consumer);
+    }
+
+    /**
+     * Stores an account that already has an account_id, such as one copied from another storage engine, replacing
+     * any account with the same account_id. Later inserts are numbered after it.
+     * @param account The account to store.
+     */
+    void restore(Account account) {
+        Account stored = new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+        remove(stored.getAccount_id());
+        accounts.put(stored.getAccount_id(), stored);
+        if (stored.getUsername() != null) {
+            byUsername.put(stored.getUsername(), stored);
+        }
+        lastAccountId.accumulateAndGet(stored.getAccount_id(), Math::max);
+    }
+
+    /**
+     * Removes an account, such as the one restore replaces.
+     * @param id The account_id of the account to remove.
+     */
+    private void remove(int id) {
+        Account removed = accounts.remove(id);
+        if (removed != null && removed.getUsername() != null) {
+            byUsername.remove(removed.getUsername(), removed);
+        }
+    }
+}
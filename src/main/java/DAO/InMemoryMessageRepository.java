@@ -0,0 +1,196 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import Model.Message;
+import Model.MessageCursor;
+
+/**
+ * The InMemoryMessageRepository class keeps every message in process memory using only lock-free concurrent
+ * structures, so no operation touches the disk or the database.
+ *
+ * Messages are held in a ConcurrentSkipListMap by message_id. A MessageKeyIndex orders their ids by
+ * time_posted_epoch and message_id for pages and timelines; its keys are resolved through the primary map, so a
+ * message is visible exactly while it is in that map. Inserts add to the primary map first and deletes remove
+ * from it first, which means readers may briefly see a key without a message and simply skip it.
+ *
+ * Stored Message objects are shared with callers and must not be modified.
+ */
+public class InMemoryMessageRepository implements MessageRepository {
+    private final ConcurrentSkipListMap<Integer, Message> messages = new ConcurrentSkipListMap<>();
+    private final MessageKeyIndex keys = new MessageKeyIndex();
+    private final AtomicInteger lastMessageId = new AtomicInteger();
+
+    /**
+     * insert method stores a new message under the next message_id.
+     * @param msg The Message class object which contains data associated with the new message
+     * @return The stored Message object with its generated message_id
+     */
+    public Message insert(Message msg) {
+        Message stored = new Message(lastMessageId.incrementAndGet(), msg.getPosted_by(), msg.getMessage_text(),
+                msg.getTime_posted_epoch());
+        add(stored);
+        return stored;
+    }
+
+    /**
+     * insertAll method stores many new messages. Their message_ids are reserved as one contiguous range.
+     * @param msgs The Message class objects to insert, in order
+     * @return The stored Message objects with their generated message_id, in the same order
+     */
+    public List<Message> insertAll(List<Message> msgs) {
+        int firstId = lastMessageId.getAndAdd(msgs.size()) + 1;
+        List<Message> inserted = new ArrayList<>(msgs.size());
+        for (int i = 0; i < msgs.size(); i++) {
+            Message msg = msgs.get(i);
+            Message stored = new Message(firstId + i, msg.getPosted_by(), msg.getMessage_text(),
+                    msg.getTime_posted_epoch());
+            add(stored);
+            inserted.add(stored);
+        }
+        return inserted;
+    }
+
+    /**
+     * @return The List of every stored message, in message_id order
+     */
+    public List<Message> getAllMessages() {
+        return new ArrayList<>(messages.values());
+    }
+
+    /**
+     * @param id The message_id of the message
+     * @return The stored Message object, or null if there is none with that message_id
+     */
+    public Message getMessageByID(int id) {
+        return messages.get(id);
+    }
+
+    /**
+     * @param ids The message_ids to look up
+     * @return The stored Message objects found, in the order of ids; ids with no message are left out
+     */
+    public List<Message> getMessagesByIDs(int[] ids) {
+        List<Message> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Message msg = messages.get(id);
+            if (msg != null) {
+                found.add(msg);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param id The message_id of the message selected for deletion
+     * @return The Message object as it was before deletion, or null if no message had that message_id
+     */
+    public Message delete(int id) {
+        Message removed = messages.remove(id);
+        if (removed != null) {
+            keys.remove(removed.getPosted_by(), removed.getTime_posted_epoch(), removed.getMessage_id());
+        }
+        return removed;
+    }
+
+    /**
+     * Replaces the message text atomically. The ordering keys do not change, so only the primary map is written.
+     * @param id The message_id of the message selected for updating
+     * @param messageText The new message_text
+     * @return The Message object after the update, or null if no message had that message_id
+     */
+    public Message updateText(int id, String messageText) {
+        return messages.computeIfPresent(id, (key, current) -> new Message(current.getMessage_id(),
+                current.getPosted_by(), messageText, current.getTime_posted_epoch()));
+    }
+
+    /**
+     * @param id The account_id of the poster
+     * @return The List of messages posted by the account, ordered by time_posted_epoch and message_id
+     */
+    public List<Message> getAllMessagesByAccountID(int id) {
+        List<Message> found = new ArrayList<>();
+        forEachMessageByAccountID(id, found::add);
+        return found;
+    }
+
+    /**
+     * @param after The cursor of the last message on the previous page, or null for the first page
+     * @param limit The maximum number of messages to return
+     * @return The List of Message objects on the requested page
+     */
+    public List<Message> getMessagesPage(MessageCursor after, int limit) {
+        return keys.page(after, limit, messages::get);
+    }
+
+    /**
+     * @param id The account_id of the poster
+     * @param after The cursor of the last message on the previous page, or null for the first page
+     * @param limit The maximum number of messages to return
+     * @return The List of Message objects posted by the account on the requested page
+     */
+    public List<Message> getMessagesPageByAccountID(int id, MessageCursor after, int limit) {
+        return keys.page(id, after, limit, messages::get);
+    }
+
+    /**
+     * @param consumer The callback receiving every stored message in message_id order
+     */
+    public void forEachMessage(Consumer<Message> consumer) {
+        messages.values().forEach(consumer);
+    }
+
+    /**
+     * @param id The account_id of the poster
+     * @param consumer The callback receiving each message posted by the account, ordered by time_posted_epoch
+     */
+    public void forEachMessageByAccountID(int id, Consumer<Message> consumer) {
+        keys.forEach(id, messages::get, consumer);
+    }
+
+    /**
+     * @param consumer The callback receiving the key of every message, ordered by time_posted_epoch and message_id
+     */
+    public void forEachMessageKey(MessageKeyConsumer consumer) {
+        keys.forEachKey(consumer);
+    }
+
+    /**
+     * Walks every key and passes on the newer ones; this repository sees every write, so it is rarely needed.
+     * @param afterMessageId Only messages with a greater message_id are passed on
+     * @param consumer The callback receiving the key of each such message
+     */
+    public void forEachMessageKeyAfter(int afterMessageId, MessageKeyConsumer consumer) {
+        keys.forEachKey((postedBy, timePostedEpoch, messageId) -> {
+            if (messageId > afterMessageId) {
+                consumer.accept(postedBy, timePostedEpoch, messageId);
+            }
+        });
+    }
+
+    /**
+     * Stores a message that already has a message_id, such as one copied from another storage engine, replacing any
+     * message with the same message_id. Later inserts are numbered after it.
+     * @param msg The message to store.
+     */
+    void restore(Message msg) {
+        Message stored = new Message(msg.getMessage_id(), msg.getPosted_by(), msg.getMessage_text(),
+                msg.getTime_posted_epoch());
+        Message previous = messages.get(stored.getMessage_id());
+        if (previous != null && (previous.getPosted_by() != stored.getPosted_by()
+                || previous.getTime_posted_epoch() != stored.getTime_posted_epoch())) {
+            delete(previous.getMessage_id());
+        }
+        add(stored);
+        lastMessageId.accumulateAndGet(stored.getMessage_id(), Math::max);
+    }
+
+    private void add(Message stored) {
+        messages.put(stored.getMessage_id(), stored);
+        keys.add(stored.getPosted_by(), stored.getTime_posted_epoch(), stored.getMessage_id());
+    }
+}
@@ -0,0 +1,914 @@
+package DAO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Model.Message;
+import Model.MessageCursor;
+
+/**
+ * The LogMessageRepository class stores messages in an append-only log instead of the database. The log is a
+ * directory of fixed-size segment files, each memory mapped through a FileChannel, so every write is a sequential
+ * append into the newest segment and every read is served straight from the mapped pages without a system call.
+ *
+ * Each record holds a whole message. Inserts and updates append a put record; deletes append a tombstone; insertAll
+ * appends one batch record that frames a put record per message, so replay applies either the whole batch or, if a
+ * crash tore it, none of it. An in-memory
+ * index maps every live message_id to the segment and offset of its latest put record, and a MessageKeyIndex orders
+ * the ids for pages and timelines. On startup the segments are replayed oldest first to rebuild both indexes, and a
+ * torn record at the end of the log, left by a crash in the middle of a write, is discarded.
+ *
+ * A background task compacts sealed segments whose live records have fallen below a fraction of their size: the live
+ * records are copied to the newest segment and the old file is deleted. Tombstones are carried over while an older
+ * segment could still hold a put record they cancel.
+ *
+ * Writes are serialized on the repository; reads never lock.
+ *
+ * Record layout, after an 8 byte segment header of magic number and the last message_id assigned before the segment:
+ * body length (int), CRC32 of the body (int), then the body: type (byte), message_id (int), posted_by (int),
+ * time_posted_epoch (long), text length in bytes or -1 for null (int), UTF-8 text. The body of a batch record is its
+ * type (byte) and the number of records (int), followed by that many complete put records.
+ */
+public class LogMessageRepository implements MessageRepository, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(LogMessageRepository.class);
+
+    private static final int SEGMENT_MAGIC = 0x4D534731;
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int RECORD_FIXED_BODY_BYTES = 21;
+    private static final byte PUT = 1;
+    private static final byte TOMBSTONE = 2;
+    private static final byte BATCH = 3;
+    private static final int BATCH_HEADER_BYTES = 5;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean syncWrites;
+    private final double compactionLiveRatio;
+
+    /**
+     * Location of the latest put record of every live message, keyed by message_id. A location packs the segment id
+     * in its high 32 bits and the record offset in its low 32 bits.
+     */
+    private final ConcurrentSkipListMap<Integer, Long> locations = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final MessageKeyIndex keys = new MessageKeyIndex();
+    private final ScheduledExecutorService compactor;
+
+    /**
+     * The segment being appended to. Guarded by this.
+     */
+    private Segment active;
+    /**
+     * Guarded by this.
+     */
+    private int lastMessageId;
+
+    private final LongAdder appendedRecords = new LongAdder();
+    private final LongAdder recoveredRecords = new LongAdder();
+    private final LongAdder compactedSegments = new LongAdder();
+
+    /**
+     * Opens the log in the directory, creating it if needed, and replays any existing segments.
+     * @param directory The directory holding the segment files.
+     * @param segmentBytes The size of each segment file.
+     * @param syncWrites Whether every write is forced to disk before it returns.
+     * @param compactionIntervalMillis How often sealed segments are checked for compaction, or 0 to never compact.
+     * @param compactionLiveRatio Sealed segments whose live records take up less than this fraction are compacted.
+     * @throws IOException if the directory or a segment cannot be read.
+     */
+    public LogMessageRepository(Path directory, int segmentBytes, boolean syncWrites, long compactionIntervalMillis,
+            double compactionLiveRatio) throws IOException {
+        if (segmentBytes < SEGMENT_HEADER_BYTES + RECORD_HEADER_BYTES + RECORD_FIXED_BODY_BYTES) {
+            throw new IllegalArgumentException("Log segments of " + segmentBytes + " bytes are too small");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.syncWrites = syncWrites;
+        this.compactionLiveRatio = compactionLiveRatio;
+
+        synchronized (this) {
+            recover();
+        }
+
+        if (compactionIntervalMillis > 0) {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "message-log-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compact, compactionIntervalMillis, compactionIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.compactor = null;
+        }
+    }
+
+    /**
+     * Opens the log configured by the socialmedia.log.* system properties: dir (default ./h2/message-log),
+     * segmentBytes (default 64 MiB), syncWrites (default false), compactionIntervalMillis (default 30000) and
+     * compactionLiveRatio (default 0.5). The log is closed when the JVM shuts down.
+     * @return The opened log.
+     */
+    public static LogMessageRepository open() {
+        try {
+            LogMessageRepository log = new LogMessageRepository(
+                    Paths.get(System.getProperty("socialmedia.log.dir", "./h2/message-log")),
+                    Integer.getInteger("socialmedia.log.segmentBytes", 64 * 1024 * 1024),
+                    Boolean.getBoolean("socialmedia.log.syncWrites"),
+                    Long.getLong("socialmedia.log.compactionIntervalMillis", 30000),
+                    Double.parseDouble(System.getProperty("socialmedia.log.compactionLiveRatio", "0.5")));
+            Runtime.getRuntime().addShutdownHook(new Thread(log::close, "message-log-shutdown"));
+            return log;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the message log", e);
+        }
+    }
+
+    /**
+     * insert method appends a new message to the log under the next message_id.
+     * @param msg The Message class object which contains data associated with the new message
+     * @return The Message object with its generated message_id, or the given message if it could not be written
+     */
+    public Message insert(Message msg) {
+        byte[] text = encode(msg.getMessage_text());
+        synchronized (this) {
+            try {
+                int id = lastMessageId + 1;
+                long location = append(PUT, id, msg.getPosted_by(), msg.getTime_posted_epoch(), text);
+                lastMessageId = id;
+                applyPut(location);
+                syncIfRequired();
+                return new Message(id, msg.getPosted_by(), msg.getMessage_text(), msg.getTime_posted_epoch());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return msg;
+    }
+
+    /**
+     * insertAll method appends many new messages to the log as a single batch record and forces it to disk at most
+     * once. Nothing is written unless the whole batch is, and the messages only become visible once it has been.
+     * @param msgs The Message class objects to insert, in order
+     * @return The inserted Message objects with their generated message_id, in the same order, or null if they could
+     * not be written, e.g. because together they do not fit in one segment
+     */
+    public List<Message> insertAll(List<Message> msgs) {
+        if (msgs.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<byte[]> texts = new ArrayList<>(msgs.size());
+        for (Message msg : msgs) {
+            texts.add(encode(msg.getMessage_text()));
+        }
+
+        synchronized (this) {
+            try {
+                int firstId = lastMessageId + 1;
+                long[] batch = appendBatch(firstId, msgs, texts);
+                lastMessageId = firstId + msgs.size() - 1;
+                List<Message> inserted = new ArrayList<>(msgs.size());
+                for (int i = 0; i < msgs.size(); i++) {
+                    Message msg = msgs.get(i);
+                    applyPut(batch[i]);
+                    inserted.add(new Message(firstId + i, msg.getPosted_by(), msg.getMessage_text(),
+                            msg.getTime_posted_epoch()));
+                }
+                syncIfRequired();
+                return inserted;
+            } catch (IOException e) {
+                logger.warn("Failed to append a batch of {} messages", msgs.size(), e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The List of every live message, in message_id order
+     */
+    public List<Message> getAllMessages() {
+        List<Message> messages = new ArrayList<>(locations.size());
+        forEachMessage(messages::add);
+        return messages;
+    }
+
+    /**
+     * getMessageByID method reads the latest version of a message from its mapped segment.
+     * @param id The message_id of the message
+     * @return The Message object, or null if there is no live message with that message_id
+     */
+    public Message getMessageByID(int id) {
+        while (true) {
+            Long location = locations.get(id);
+            if (location == null) {
+                return null;
+            }
+            Segment segment = segments.get(segmentId(location));
+            if (segment != null) {
+                return segment.readMessage(offset(location));
+            }
+            // The record was moved by a compaction that finished after the location was read
+        }
+    }
+
+    /**
+     * @param ids The message_ids to look up
+     * @return The Message objects found, in the order of ids; ids with no live message are left out
+     */
+    public List<Message> getMessagesByIDs(int[] ids) {
+        List<Message> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Message msg = getMessageByID(id);
+            if (msg != null) {
+                found.add(msg);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * delete method appends a tombstone for a message.
+     * @param id The message_id of the message selected for deletion
+     * @return The Message object as it was before deletion, or null if no live message had that message_id
+     */
+    public synchronized Message delete(int id) {
+        Message msg = getMessageByID(id);
+        if (msg == null) {
+            return null;
+        }
+        try {
+            append(TOMBSTONE, id, msg.getPosted_by(), msg.getTime_posted_epoch(), encode(null));
+            applyTombstone(id);
+            syncIfRequired();
+            return msg;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * updateText method appends a new version of a message with the new text.
+     * @param id The message_id of the message selected for updating
+     * @param messageText The new message_text
+     * @return The Message object after the update, or null if no live message had that message_id
+     */
+    public synchronized Message updateText(int id, String messageText) {
+        Message msg = getMessageByID(id);
+        if (msg == null) {
+            return null;
+        }
+        try {
+            long location = append(PUT, id, msg.getPosted_by(), msg.getTime_posted_epoch(), encode(messageText));
+            applyPut(location);
+            syncIfRequired();
+            return new Message(id, msg.getPosted_by(), messageText, msg.getTime_posted_epoch());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * @param id The account_id of the poster
+     * @return The List of messages posted by the account, ordered by time_posted_epoch and message_id
+     */
+    public List<Message> getAllMessagesByAccountID(int id) {
+        List<Message> found = new ArrayList<>();
+        forEachMessageByAccountID(id, found::add);
+        return found;
+    }
+
+    /**
+     * @param after The cursor of the last message on the previous page, or null for the first page
+     * @param limit The maximum number of messages to return
+     * @return The List of Message objects on the requested page
+     */
+    public List<Message> getMessagesPage(MessageCursor after, int limit) {
+        return keys.page(after, limit, this::getMessageByID);
+    }
+
+    /**
+     * @param id The account_id of the poster
+     * @param after The cursor of the last message on the previous page, or null for the first page
+     * @param limit The maximum number of messages to return
+     * @return The List of Message objects posted by the account on the requested page
+     */
+    public List<Message> getMessagesPageByAccountID(int id, MessageCursor after, int limit) {
+        return keys.page(id, after, limit, this::getMessageByID);
+    }
+
+    /**
+     * @param consumer The callback receiving every live message in message_id order
+     */
+    public void forEachMessage(Consumer<Message> consumer) {
+        for (Integer id : locations.keySet()) {
+            Message msg = getMessageByID(id);
+            if (msg != null) {
+                consumer.accept(msg);
+            }
+        }
+    }
+
+    /**
+     * @param id The account_id of the poster
+     * @param consumer The callback receiving each message posted by the account, ordered by time_posted_epoch
+     */
+    public void forEachMessageByAccountID(int id, Consumer<Message> consumer) {
+        keys.forEach(id, this::getMessageByID, consumer);
+    }
+
+    /**
+     * @param consumer The callback receiving the key of every live message, ordered by time_posted_epoch and
+     * message_id
+     */
+    public void forEachMessageKey(MessageKeyConsumer consumer) {
+        keys.forEachKey(consumer);
+    }
+
+    /**
+     * Walks every key and passes on the newer ones; this repository sees every write, so it is rarely needed.
+     * @param afterMessageId Only messages with a greater message_id are passed on
+     * @param consumer The callback receiving the key of each such live message
+     */
+    public void forEachMessageKeyAfter(int afterMessageId, MessageKeyConsumer consumer) {
+        keys.forEachKey((postedBy, timePostedEpoch, messageId) -> {
+            if (messageId > afterMessageId) {
+                consumer.accept(postedBy, timePostedEpoch, messageId);
+            }
+        });
+    }
+
+    /**
+     * Deletes every message and segment file and starts over with an empty log whose message_ids start again from 1.
+     * Used to reset the log along with the test database.
+     * @throws IOException if a segment file cannot be deleted or the new one cannot be created.
+     */
+    public synchronized void clear() throws IOException {
+        for (Integer id : new ArrayList<>(locations.keySet())) {
+            applyTombstone(id);
+        }
+        for (Segment segment : segments.values()) {
+            segment.close();
+            Files.deleteIfExists(segment.path);
+        }
+        segments.clear();
+        active = null;
+        lastMessageId = 0;
+        roll();
+    }
+
+    /**
+     * Appends a message that already has a message_id, such as one copied from the database, replacing any message
+     * with the same message_id. Later inserts are numbered after it.
+     * @param msg The message to store.
+     */
+    public synchronized void restore(Message msg) {
+        try {
+            long location = append(PUT, msg.getMessage_id(), msg.getPosted_by(), msg.getTime_posted_epoch(),
+                    encode(msg.getMessage_text()));
+            lastMessageId = Math.max(lastMessageId, msg.getMessage_id());
+            applyPut(location);
+            syncIfRequired();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to restore message " + msg.getMessage_id(), e);
+        }
+    }
+
+    /**
+     * Stops compaction, forces the log to disk and closes the segment files.
+     */
+    @Override
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+            try {
+                compactor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (active != null) {
+                active.buffer.force();
+            }
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * Replays every segment, oldest first, then continues appending to the newest one.
+     */
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                files.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())), path);
+            }
+        }
+
+        for (Map.Entry<Integer, Path> file : files.entrySet()) {
+            Segment segment = Segment.open(file.getKey(), file.getValue());
+            segments.put(segment.id, segment);
+            lastMessageId = Math.max(lastMessageId, segment.buffer.getInt(4));
+            replay(segment);
+            active = segment;
+        }
+        if (active == null) {
+            roll();
+        }
+        logger.info("Recovered {} messages from {} log records in {} segments", locations.size(),
+                recoveredRecords.sum(), segments.size());
+    }
+
+    private void replay(Segment segment) {
+        int offset = SEGMENT_HEADER_BYTES;
+        while (offset + RECORD_HEADER_BYTES <= segment.capacity) {
+            int bodyBytes = segment.buffer.getInt(offset);
+            if (bodyBytes == 0) {
+                break;
+            }
+            if (bodyBytes < RECORD_FIXED_BODY_BYTES || offset + RECORD_HEADER_BYTES + bodyBytes > segment.capacity
+                    || segment.buffer.getInt(offset + 4) != checksum(segment.buffer, offset + RECORD_HEADER_BYTES,
+                            bodyBytes)) {
+                logger.warn("Discarding torn record at offset {} of {}", offset, segment.path);
+                segment.zeroFrom(offset);
+                break;
+            }
+
+            int end = offset + RECORD_HEADER_BYTES + bodyBytes;
+            if (segment.type(offset) == BATCH) {
+                for (int inner = offset + RECORD_HEADER_BYTES + BATCH_HEADER_BYTES; inner < end;
+                        inner += segment.recordBytes(inner)) {
+                    replayRecord(segment, inner);
+                }
+            } else {
+                replayRecord(segment, offset);
+            }
+            offset = end;
+        }
+        segment.writePosition = offset;
+    }
+
+    private void replayRecord(Segment segment, int offset) {
+        lastMessageId = Math.max(lastMessageId, segment.messageId(offset));
+        if (segment.type(offset) == PUT) {
+            applyPut(location(segment.id, offset));
+        } else {
+            applyTombstone(segment.messageId(offset));
+        }
+        recoveredRecords.increment();
+    }
+
+    /**
+     * Points the index at a put record and accounts for the record it replaces.
+     */
+    private void applyPut(long location) {
+        Segment segment = segments.get(segmentId(location));
+        int offset = offset(location);
+        int id = segment.messageId(offset);
+        int postedBy = segment.postedBy(offset);
+        long time = segment.time(offset);
+
+        Long previous = locations.put(id, location);
+        segment.liveBytes.addAndGet(segment.recordBytes(offset));
+        if (previous != null) {
+            Segment previousSegment = segments.get(segmentId(previous));
+            int previousOffset = offset(previous);
+            previousSegment.liveBytes.addAndGet(-previousSegment.recordBytes(previousOffset));
+            if (previousSegment.postedBy(previousOffset) == postedBy && previousSegment.time(previousOffset) == time) {
+                return;
+            }
+            keys.remove(previousSegment.postedBy(previousOffset), previousSegment.time(previousOffset), id);
+        }
+        keys.add(postedBy, time, id);
+    }
+
+    private void applyTombstone(int id) {
+        Long previous = locations.remove(id);
+        if (previous != null) {
+            Segment previousSegment = segments.get(segmentId(previous));
+            int previousOffset = offset(previous);
+            previousSegment.liveBytes.addAndGet(-previousSegment.recordBytes(previousOffset));
+            keys.remove(previousSegment.postedBy(previousOffset), previousSegment.time(previousOffset), id);
+        }
+    }
+
+    /**
+     * Appends one record to the active segment, starting a new segment if it does not fit. Caller holds this.
+     * @return The location of the record.
+     */
+    private long append(byte type, int id, int postedBy, long time, byte[] text) throws IOException {
+        ensureRoom(recordBytes(text));
+        int offset = active.writePosition;
+        active.writePosition += writeRecord(active.buffer, offset, type, id, postedBy, time, text);
+        appendedRecords.increment();
+        return location(active.id, offset);
+    }
+
+    /**
+     * Appends a batch record holding a put record for each message, numbered from firstId. Caller holds this.
+     * @return The location of each message's put record, in order.
+     */
+    private long[] appendBatch(int firstId, List<Message> msgs, List<byte[]> texts) throws IOException {
+        int bodyBytes = BATCH_HEADER_BYTES;
+        for (byte[] text : texts) {
+            bodyBytes += recordBytes(text);
+        }
+        ensureRoom(RECORD_HEADER_BYTES + bodyBytes);
+
+        ByteBuffer buffer = active.buffer;
+        int offset = active.writePosition;
+        int body = offset + RECORD_HEADER_BYTES;
+        buffer.put(body, BATCH);
+        buffer.putInt(body + 1, msgs.size());
+        long[] locations = new long[msgs.size()];
+        int inner = body + BATCH_HEADER_BYTES;
+        for (int i = 0; i < msgs.size(); i++) {
+            Message msg = msgs.get(i);
+            locations[i] = location(active.id, inner);
+            inner += writeRecord(buffer, inner, PUT, firstId + i, msg.getPosted_by(), msg.getTime_posted_epoch(),
+                    texts.get(i));
+        }
+        buffer.putInt(offset + 4, checksum(buffer, body, bodyBytes));
+        // As with a single record, the length goes last, so replay sees the batch whole or not at all
+        buffer.putInt(offset, bodyBytes);
+
+        active.writePosition = body + bodyBytes;
+        appendedRecords.add(msgs.size());
+        return locations;
+    }
+
+    /**
+     * Writes one complete record at the offset.
+     * @return The number of bytes written.
+     */
+    private static int writeRecord(ByteBuffer buffer, int offset, byte type, int id, int postedBy, long time,
+            byte[] text) {
+        int textBytes = text == null ? 0 : text.length;
+        int bodyBytes = RECORD_FIXED_BODY_BYTES + textBytes;
+        int body = offset + RECORD_HEADER_BYTES;
+        buffer.put(body, type);
+        buffer.putInt(body + 1, id);
+        buffer.putInt(body + 5, postedBy);
+        buffer.putLong(body + 9, time);
+        buffer.putInt(body + 17, text == null ? -1 : textBytes);
+        if (textBytes > 0) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(body + RECORD_FIXED_BODY_BYTES);
+            view.put(text);
+        }
+        buffer.putInt(offset + 4, checksum(buffer, body, bodyBytes));
+        // The length goes last, so a record is only visible to replay once it is complete
+        buffer.putInt(offset, bodyBytes);
+        return RECORD_HEADER_BYTES + bodyBytes;
+    }
+
+    private static int recordBytes(byte[] text) {
+        return RECORD_HEADER_BYTES + RECORD_FIXED_BODY_BYTES + (text == null ? 0 : text.length);
+    }
+
+    /**
+     * Copies a record unchanged to the end of the active segment. Caller holds this.
+     * @return The new location of the record.
+     */
+    private long copy(Segment source, int offset) throws IOException {
+        int recordBytes = source.recordBytes(offset);
+        ensureRoom(recordBytes);
+
+        ByteBuffer from = source.buffer.duplicate();
+        from.position(offset).limit(offset + recordBytes);
+        ByteBuffer to = active.buffer.duplicate();
+        to.position(active.writePosition);
+        to.put(from);
+
+        long location = location(active.id, active.writePosition);
+        active.writePosition += recordBytes;
+        appendedRecords.increment();
+        return location;
+    }
+
+    private void ensureRoom(int recordBytes) throws IOException {
+        if (recordBytes > segmentBytes - SEGMENT_HEADER_BYTES) {
+            throw new IOException("A record of " + recordBytes + " bytes does not fit in a log segment");
+        }
+        if (active.writePosition + recordBytes > active.capacity) {
+            roll();
+        }
+    }
+
+    /**
+     * Seals the active segment and starts a new one. Caller holds this.
+     */
+    private void roll() throws IOException {
+        int id = active == null ? 1 : active.id + 1;
+        Segment segment = Segment.create(id, directory.resolve(segmentFileName(id)), segmentBytes, lastMessageId);
+        if (active != null) {
+            active.buffer.force();
+        }
+        segments.put(id, segment);
+        active = segment;
+    }
+
+    private void syncIfRequired() {
+        if (syncWrites) {
+            active.buffer.force();
+        }
+    }
+
+    /**
+     * Compacts every sealed segment whose live records take up less than the configured fraction, oldest first. Runs
+     * periodically in the background, and may also be called directly.
+     */
+    public void compact() {
+        List<Segment> candidates = new ArrayList<>(new TreeMap<>(segments).values());
+        for (Segment segment : candidates) {
+            synchronized (this) {
+                if (segment == active) {
+                    continue;
+                }
+            }
+            int usedBytes = segment.writePosition - SEGMENT_HEADER_BYTES;
+            if (usedBytes > 0 && (double) segment.liveBytes.get() / usedBytes >= compactionLiveRatio) {
+                continue;
+            }
+            try {
+                compact(segment);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to compact {}", segment.path, e);
+            }
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        boolean olderSegmentsRemain = segments.keySet().stream().anyMatch(id -> id < segment.id);
+        int offset = SEGMENT_HEADER_BYTES;
+        while (offset < segment.writePosition) {
+            int end = offset + segment.recordBytes(offset);
+            if (segment.type(offset) == BATCH) {
+                for (int inner = offset + RECORD_HEADER_BYTES + BATCH_HEADER_BYTES; inner < end;
+                        inner += segment.recordBytes(inner)) {
+                    if (!moveRecord(segment, inner, olderSegmentsRemain)) {
+                        return;
+                    }
+                }
+            } else if (!moveRecord(segment, offset, olderSegmentsRemain)) {
+                return;
+            }
+            offset = end;
+        }
+
+        synchronized (this) {
+            if (segments.get(segment.id) != segment) {
+                return;
+            }
+            // The copies must be on disk before the only other copy is deleted
+            active.buffer.force();
+            segments.remove(segment.id);
+        }
+        segment.close();
+        Files.deleteIfExists(segment.path);
+        compactedSegments.increment();
+        logger.info("Compacted {}", segment.path);
+    }
+
+    /**
+     * Copies a record of a segment being compacted to the active segment if it is still needed: a put record the
+     * index points at, or a tombstone that may cancel a put record in an older segment.
+     * @return False if the log was cleared meanwhile, so there is nothing left to compact.
+     */
+    private boolean moveRecord(Segment segment, int offset, boolean olderSegmentsRemain) throws IOException {
+        int id = segment.messageId(offset);
+        // Moving a record must not interleave with a write of the same message
+        synchronized (this) {
+            if (segments.get(segment.id) != segment) {
+                return false;
+            }
+            if (segment.type(offset) == PUT) {
+                Long current = locations.get(id);
+                if (current != null && current == location(segment.id, offset)) {
+                    long moved = copy(segment, offset);
+                    locations.put(id, moved);
+                    segment.liveBytes.addAndGet(-segment.recordBytes(offset));
+                    active.liveBytes.addAndGet(segment.recordBytes(offset));
+                }
+            } else if (olderSegmentsRemain && !locations.containsKey(id)) {
+                copy(segment, offset);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of live messages.
+     */
+    public int getMessageCount() {
+        return locations.size();
+    }
+
+    /**
+     * @return The number of segment files.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return The number of records appended since the log was opened, including those moved by compaction.
+     */
+    public long getAppendedRecordCount() {
+        return appendedRecords.sum();
+    }
+
+    /**
+     * @return The number of records replayed when the log was opened.
+     */
+    public long getRecoveredRecordCount() {
+        return recoveredRecords.sum();
+    }
+
+    /**
+     * @return The number of segments compacted and deleted since the log was opened.
+     */
+    public long getCompactedSegmentCount() {
+        return compactedSegments.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "LogMessageRepository{" +
+                "directory=" + directory +
+                ", messages=" + getMessageCount() +
+                ", segments=" + getSegmentCount() +
+                ", appended=" + getAppendedRecordCount() +
+                ", recovered=" + getRecoveredRecordCount() +
+                ", compacted=" + getCompactedSegmentCount() +
+                '}';
+    }
+
+    private static byte[] encode(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(ByteBuffer buffer, int from, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(from).limit(from + length);
+        CRC32 crc = new CRC32();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    private static long location(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    private static String segmentFileName(int id) {
+        return String.format("%s%010d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * One memory mapped segment file. Fields are read with absolute gets, so readers share the buffer safely.
+     */
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        /**
+         * Bytes taken by put records the index still points at.
+         */
+        final AtomicLong liveBytes = new AtomicLong();
+        /**
+         * Offset of the next record. Written under the repository lock.
+         */
+        volatile int writePosition = SEGMENT_HEADER_BYTES;
+
+        private Segment(int id, Path path, FileChannel channel, int capacity) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.capacity = capacity;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+
+        static Segment create(int id, Path path, int capacity, int lastMessageId) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            Segment segment = new Segment(id, path, channel, capacity);
+            segment.buffer.putInt(0, SEGMENT_MAGIC);
+            segment.buffer.putInt(4, lastMessageId);
+            segment.buffer.force();
+            return segment;
+        }
+
+        static Segment open(int id, Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (size < SEGMENT_HEADER_BYTES || size > Integer.MAX_VALUE) {
+                channel.close();
+                throw new IOException("Invalid message log segment size " + size + ": " + path);
+            }
+            Segment segment = new Segment(id, path, channel, (int) size);
+            if (segment.buffer.getInt(0) != SEGMENT_MAGIC) {
+                channel.close();
+                throw new IOException("Not a message log segment: " + path);
+            }
+            return segment;
+        }
+
+        int recordBytes(int offset) {
+            return RECORD_HEADER_BYTES + buffer.getInt(offset);
+        }
+
+        byte type(int offset) {
+            return buffer.get(offset + RECORD_HEADER_BYTES);
+        }
+
+        int messageId(int offset) {
+            return buffer.getInt(offset + RECORD_HEADER_BYTES + 1);
+        }
+
+        int postedBy(int offset) {
+            return buffer.getInt(offset + RECORD_HEADER_BYTES + 5);
+        }
+
+        long time(int offset) {
+            return buffer.getLong(offset + RECORD_HEADER_BYTES + 9);
+        }
+
+        Message readMessage(int offset) {
+            int textBytes = buffer.getInt(offset + RECORD_HEADER_BYTES + 17);
+            String text = null;
+            if (textBytes >= 0) {
+                byte[] bytes = new byte[textBytes];
+                ByteBuffer view = buffer.duplicate();
+                view.position(offset + RECORD_HEADER_BYTES + RECORD_FIXED_BODY_BYTES);
+                view.get(bytes);
+                text = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return new Message(messageId(offset), postedBy(offset), text, time(offset));
+        }
+
+        /**
+         * Clears everything from the offset to the end, so nothing left by an interrupted write is replayed later.
+         */
+        void zeroFrom(int offset) {
+            for (int i = offset; i < capacity; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
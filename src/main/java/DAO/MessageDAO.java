@@ -7,11 +7,22 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import Model.Message;
+import Model.MessageCursor;
 import Util.ConnectionUtil;
 
-public class MessageDAO {
+public class MessageDAO implements MessageRepository {
+    /**
+     * Number of rows read per query when streaming all messages, which bounds the rows buffered per request.
+     */
+    private static final int STREAM_CHUNK_SIZE = 256;
+    /**
+     * Number of rows sent to the database per executeBatch call when inserting many messages.
+     */
+    private static final int INSERT_BATCH_SIZE = 500;
+
     
     /**
      * insert method utilizes the DAO associated with creating and inserting a new message into the database
@@ -19,12 +30,10 @@ public class MessageDAO {
      * @return The Message object that contains the data associated with the message after insertion into the database
      */
     public Message insert(Message msg){
-        Connection connection = ConnectionUtil.getConnection();
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
 
-        try {
-            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
-            
-            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setInt(1, msg.getPosted_by());
             ps.setString(2, msg.getMessage_text());
             ps.setLong(3, msg.getTime_posted_epoch());
@@ -45,17 +54,62 @@ public class MessageDAO {
         return msg;
     }
 
+    /**
+     * insertAll method utilizes the DAO associated with inserting many messages into the database in a single
+     * transaction. Rows are sent with JDBC batching, so a bulk load costs a handful of round trips and one commit.
+     * @param msgs The Message class objects to insert, in order
+     * @return The inserted Message objects with their generated message_id, in the same order, or null if the
+     * transaction failed and nothing was inserted
+     */
+    public List<Message> insertAll(List<Message> msgs){
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+        List<Message> inserted = new ArrayList<>(msgs.size());
+
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (int start = 0; start < msgs.size(); start += INSERT_BATCH_SIZE) {
+                    List<Message> chunk = msgs.subList(start, Math.min(start + INSERT_BATCH_SIZE, msgs.size()));
+                    for (Message msg : chunk) {
+                        ps.setInt(1, msg.getPosted_by());
+                        ps.setString(2, msg.getMessage_text());
+                        ps.setLong(3, msg.getTime_posted_epoch());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+
+                    try(ResultSet rs = ps.getGeneratedKeys()){
+                        for (Message msg : chunk) {
+                            if(!rs.next()){
+                                throw new SQLException("Missing generated message id. Failed to insert messages");
+                            }
+                            inserted.add(new Message(rs.getInt(1), msg.getPosted_by(), msg.getMessage_text(),
+                                    msg.getTime_posted_epoch()));
+                        }
+                    }
+                }
+                connection.commit();
+                return inserted;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e){
+            e.printStackTrace();
+        }
+        return null;
+    }
+
     /**
      * getAllMessages method utilizes the DAO associated with retrieving all messages in the database
      * @return The List of Message objects that contains the data associated with all messages in the database after retrieval
      */
     public List<Message> getAllMessages() {
         List<Message> messages = new ArrayList<>();
-        Connection connection = ConnectionUtil.getConnection();
+        String sql = "SELECT * FROM message";
 
-        try {
-            String sql = "SELECT * FROM message";
-            PreparedStatement ps = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
             try(ResultSet rs = ps.executeQuery()){
                 while(rs.next()){
                     Message msg = new Message(
@@ -80,11 +134,10 @@ public class MessageDAO {
      * @return The Message object that contains the data associated with a message in the database after using message_id for retrieval
      */
     public Message getMessageByID(int id) {
-        Connection connection = ConnectionUtil.getConnection();
+        String sql = "SELECT * FROM message WHERE message_id = ?";
 
-        try {
-            String sql = "SELECT * FROM message WHERE message_id = ?";
-            PreparedStatement ps = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, id);
             try(ResultSet rs = ps.executeQuery()){
                 if(rs.next()){
@@ -104,51 +157,47 @@ public class MessageDAO {
     }
 
     /**
-     * delete method utilizes the DAO associated with deleting an existing message from the database
-     * @param msg The Message class object which contains data associated with the message selected for deletion
-     * @return True/False whether or not the message was successfully removed from the database
+     * delete method utilizes the DAO associated with deleting an existing message from the database. The deleted row
+     * is read back from the same statement, so no separate lookup is needed.
+     * @param id The message_id of the message selected for deletion
+     * @return The Message object as it was before deletion, or null if no message had that message_id
      */
-    public boolean delete(Message msg) {
-        Connection connection = ConnectionUtil.getConnection();
-        int affectedRows = 0;
-        try {
-            String sql = "DELETE FROM message WHERE message_id = ?";
-            
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setInt(1, msg.getMessage_id());
-            affectedRows = ps.executeUpdate();
-            return affectedRows > 0;
+    public Message delete(int id) {
+        String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, id);
+            List<Message> deleted = readMessages(ps);
+            return deleted.isEmpty() ? null : deleted.get(0);
 
         } catch (SQLException e){
             e.printStackTrace();
         }
-        return affectedRows > 0;
+        return null;
     }
 
     /**
-     * update method utilizes the DAO associated with updating an existing message from the database
-     * @param id The message_id used to retrieve the specific message selected to update the values for
-     * @param msg The Message class object which contains data associated with the message selected to update
-     * @return True/False whether or not the message was successfully updated in the database
-     */
-    public boolean update(int id, Message msg){
-        Connection connection = ConnectionUtil.getConnection();
-        int affectedRows = 0;
-        try {
-            String sql = "UPDATE message SET posted_by = ?, message_text = ?, time_posted_epoch = ? WHERE message_id = ?";
-            
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setInt(1, msg.getPosted_by());
-            ps.setString(2, msg.getMessage_text());
-            ps.setLong(3, msg.getTime_posted_epoch());
-            ps.setInt(4, id);
-            affectedRows = ps.executeUpdate();
-            return affectedRows > 0;
+     * updateText method utilizes the DAO associated with updating the text of an existing message in the database. Only
+     * message_text is written, and the updated row is read back from the same statement.
+     * @param id The message_id of the message selected for updating
+     * @param messageText The new message_text
+     * @return The Message object after the update, or null if no message had that message_id
+     */
+    public Message updateText(int id, String messageText){
+        String sql = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, messageText);
+            ps.setInt(2, id);
+            List<Message> updated = readMessages(ps);
+            return updated.isEmpty() ? null : updated.get(0);
 
         } catch (SQLException e){
             e.printStackTrace();
         }
-        return affectedRows > 0;
+        return null;
     }
 
     /**
@@ -158,11 +207,10 @@ public class MessageDAO {
      */
     public List<Message> getAllMessagesByAccountID(int id) {
         List<Message> messages = new ArrayList<>();
-        Connection connection = ConnectionUtil.getConnection();
+        String sql = "SELECT * FROM message WHERE posted_by = ?";
 
-        try {
-            String sql = "SELECT * FROM message WHERE posted_by = ?";
-            PreparedStatement ps = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, id);
             try(ResultSet rs = ps.executeQuery()){
                 while(rs.next()){
@@ -182,4 +230,227 @@ public class MessageDAO {
         }
         return messages;
     }
+
+    /**
+     * getMessagesPage method utilizes the DAO associated with retrieving one page of messages ordered by time_posted_epoch
+     * and message_id. The page starts right after the cursor by seeking on the ordering columns, so the cost of a page
+     * does not depend on how many messages come before it.
+     * @param after The cursor of the last message on the previous page, or null for the first page
+     * @param limit The maximum number of messages to return
+     * @return The List of Message objects on the requested page
+     */
+    public List<Message> getMessagesPage(MessageCursor after, int limit) {
+        String sql = "SELECT * FROM message"
+                + " WHERE time_posted_epoch >= ? AND (time_posted_epoch > ? OR message_id > ?)"
+                + " ORDER BY time_posted_epoch, message_id LIMIT ?";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
+            setPageParameters(ps, 1, after, limit);
+            return readMessages(ps);
+        } catch (SQLException e){
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * getMessagesPageByAccountID method utilizes the DAO associated with retrieving one page of the messages posted by
+     * a specific account_id, ordered by time_posted_epoch and message_id.
+     * @param id The account_id whose messages are retrieved
+     * @param after The cursor of the last message on the previous page, or null for the first page
+     * @param limit The maximum number of messages to return
+     * @return The List of Message objects on the requested page
+     */
+    public List<Message> getMessagesPageByAccountID(int id, MessageCursor after, int limit) {
+        String sql = "SELECT * FROM message"
+                + " WHERE posted_by = ? AND time_posted_epoch >= ? AND (time_posted_epoch > ? OR message_id > ?)"
+                + " ORDER BY time_posted_epoch, message_id LIMIT ?";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, id);
+            setPageParameters(ps, 2, after, limit);
+            return readMessages(ps);
+        } catch (SQLException e){
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Binds the seek predicate and limit of a page query. A null cursor seeks from the very beginning, so the first
+     * page and later pages share the same SQL text and cached statement.
+     */
+    private void setPageParameters(PreparedStatement ps, int index, MessageCursor after, int limit) throws SQLException {
+        long time = after == null ? Long.MIN_VALUE : after.getTime_posted_epoch();
+        int messageId = after == null ? Integer.MIN_VALUE : after.getMessage_id();
+        ps.setLong(index, time);
+        ps.setLong(index + 1, time);
+        ps.setInt(index + 2, messageId);
+        ps.setInt(index + 3, limit);
+    }
+
+    private List<Message> readMessages(PreparedStatement ps) throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        try(ResultSet rs = ps.executeQuery()){
+            while(rs.next()){
+                messages.add(new Message(
+                    rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch")));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * forEachMessage method utilizes the DAO associated with streaming all messages in the database, in message_id
+     * order. Messages are read STREAM_CHUNK_SIZE rows at a time, one query per chunk continuing after the last id
+     * read, and each chunk is handed to the consumer only after its connection has been returned to the pool. Memory
+     * use stays bounded, and a consumer writing to a slow client never holds a connection. Messages created or
+     * deleted while the stream runs may or may not be included.
+     * @param consumer The callback receiving each Message in turn
+     * @throws RuntimeException if a chunk cannot be read, so a partial listing is not mistaken for a complete one
+     */
+    public void forEachMessage(Consumer<Message> consumer) {
+        String sql = "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+        int after = Integer.MIN_VALUE;
+        while (true) {
+            List<Message> chunk;
+            try (Connection connection = ConnectionUtil.getConnection();
+                    PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setInt(1, after);
+                ps.setInt(2, STREAM_CHUNK_SIZE);
+                chunk = readMessages(ps);
+            } catch (SQLException e){
+                throw new RuntimeException("Failed to read messages after message_id " + after, e);
+            }
+            chunk.forEach(consumer);
+            if (chunk.size() < STREAM_CHUNK_SIZE) {
+                return;
+            }
+            after = chunk.get(chunk.size() - 1).getMessage_id();
+        }
+    }
+
+    /**
+     * forEachMessageByAccountID method utilizes the DAO associated with streaming all messages posted by a specific
+     * account_id, ordered by time_posted_epoch and message_id. Like forEachMessage, messages are read
+     * STREAM_CHUNK_SIZE rows at a time, each chunk continuing after the last message read on a connection of its own,
+     * and handed to the consumer only after that connection has been returned to the pool, so a consumer writing to
+     * a slow client never holds a connection.
+     * @param id The account_id whose messages are streamed
+     * @param consumer The callback receiving each Message in turn
+     * @throws RuntimeException if a chunk cannot be read, so a partial listing is not mistaken for a complete one
+     */
+    public void forEachMessageByAccountID(int id, Consumer<Message> consumer) {
+        String sql = "SELECT * FROM message"
+                + " WHERE posted_by = ? AND time_posted_epoch >= ? AND (time_posted_epoch > ? OR message_id > ?)"
+                + " ORDER BY time_posted_epoch, message_id LIMIT ?";
+        MessageCursor after = null;
+        while (true) {
+            List<Message> chunk;
+            try (Connection connection = ConnectionUtil.getConnection();
+                    PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setInt(1, id);
+                setPageParameters(ps, 2, after, STREAM_CHUNK_SIZE);
+                chunk = readMessages(ps);
+            } catch (SQLException e){
+                throw new RuntimeException("Failed to read the messages of account " + id, e);
+            }
+            chunk.forEach(consumer);
+            if (chunk.size() < STREAM_CHUNK_SIZE) {
+                return;
+            }
+            Message last = chunk.get(chunk.size() - 1);
+            after = new MessageCursor(last.getTime_posted_epoch(), last.getMessage_id());
+        }
+    }
+
+    /**
+     * forEachMessageKey method utilizes the DAO associated with streaming the poster, time and id of every message,
+     * grouped by poster and ordered by time_posted_epoch and message_id. Only the indexed columns are read, so the
+     * message text never leaves the database, and the query runs with lazy execution so the rows are not
+     * materialized first.
+     * @param consumer The callback receiving the key of each message in turn
+     * @throws RuntimeException if reading fails partway, so a partial set of keys is not mistaken for a complete one
+     */
+    public void forEachMessageKey(MessageKeyConsumer consumer) {
+        String sql = "SELECT posted_by, time_posted_epoch, message_id FROM message"
+                + " ORDER BY posted_by, time_posted_epoch, message_id";
+
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            setLazyExecution(connection, true);
+            try (PreparedStatement ps = connection.prepareStatement(sql);
+                    ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    consumer.accept(rs.getInt(1), rs.getLong(2), rs.getInt(3));
+                }
+            } finally {
+                setLazyExecution(connection, false);
+            }
+        } catch (SQLException e){
+            throw new RuntimeException("Failed to read message keys", e);
+        }
+    }
+
+    /**
+     * forEachMessageKeyAfter method utilizes the DAO associated with streaming the poster, time and id of the
+     * messages with a message_id above the one given, such as those inserted by another process since the last
+     * call, in message_id order.
+     * @param afterMessageId Only messages with a greater message_id are read
+     * @param consumer The callback receiving the key of each such message in turn
+     * @throws RuntimeException if reading fails partway, so a partial set of keys is not mistaken for a complete one
+     */
+    public void forEachMessageKeyAfter(int afterMessageId, MessageKeyConsumer consumer) {
+        String sql = "SELECT posted_by, time_posted_epoch, message_id FROM message"
+                + " WHERE message_id > ? ORDER BY message_id";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, afterMessageId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    consumer.accept(rs.getInt(1), rs.getLong(2), rs.getInt(3));
+                }
+            }
+        } catch (SQLException e){
+            throw new RuntimeException("Failed to read message keys after message_id " + afterMessageId, e);
+        }
+    }
+
+    /**
+     * Turns H2's lazy query execution on or off for the session. Embedded H2 ignores the fetch size and reads a whole
+     * result before returning its first row unless lazy execution is on. The session belongs to a pooled connection,
+     * so it is turned off again before the connection is returned.
+     */
+    private static void setLazyExecution(Connection connection, boolean lazy) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET LAZY_QUERY_EXECUTION " + (lazy ? "TRUE" : "FALSE"));
+        }
+    }
+
+    /**
+     * getMessagesByIDs method utilizes the DAO associated with retrieving many messages by message_id in one query.
+     * @param ids The message_ids to retrieve
+     * @return The List of Message objects found, in no particular order; ids with no message are left out
+     * @throws RuntimeException if reading fails, so the ids that could not be read are not taken for deleted ones
+     */
+    public List<Message> getMessagesByIDs(int[] ids) {
+        String sql = "SELECT * FROM message WHERE message_id = ANY(?)";
+        Integer[] boxedIds = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            boxedIds[i] = ids[i];
+        }
+
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setArray(1, connection.createArrayOf("INTEGER", boxedIds));
+            return readMessages(ps);
+        } catch (SQLException e){
+            throw new RuntimeException("Failed to read messages by message_id", e);
+        }
+    }
 }
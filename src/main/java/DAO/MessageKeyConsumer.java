@@ -0,0 +1,15 @@
+package DAO;
+
+/**
+ * Receives the ordering key of a message without its text, so indexes can be built from the message table without
+ * creating a Message object per row.
+ */
+@FunctionalInterface
+public interface MessageKeyConsumer {
+    /**
+     * @param postedBy The account_id of the poster.
+     * @param timePostedEpoch The time_posted_epoch of the message.
+     * @param messageId The message_id of the message.
+     */
+    void accept(int postedBy, long timePostedEpoch, int messageId);
+}
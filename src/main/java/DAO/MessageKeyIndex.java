@@ -0,0 +1,115 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import Model.Message;
+import Model.MessageCursor;
+
+/**
+ * The MessageKeyIndex class orders message ids by time_posted_epoch and message_id, both overall and per poster, for
+ * the storage engines that keep messages outside the database. It only holds keys; pages and timelines are turned
+ * into messages through a resolver supplied by the engine, and ids the resolver no longer finds are skipped. All
+ * operations are lock-free.
+ */
+final class MessageKeyIndex {
+    private static final Comparator<Key> KEY_ORDER = Comparator
+            .comparingLong((Key key) -> key.time)
+            .thenComparingInt(key -> key.id);
+
+    private final ConcurrentSkipListSet<Key> byTime = new ConcurrentSkipListSet<>(KEY_ORDER);
+    private final ConcurrentHashMap<Integer, ConcurrentSkipListSet<Key>> byPoster = new ConcurrentHashMap<>();
+
+    void add(int postedBy, long time, int id) {
+        Key key = new Key(postedBy, time, id);
+        byTime.add(key);
+        byPoster.computeIfAbsent(postedBy, poster -> new ConcurrentSkipListSet<>(KEY_ORDER)).add(key);
+    }
+
+    void remove(int postedBy, long time, int id) {
+        Key key = new Key(postedBy, time, id);
+        byTime.remove(key);
+        ConcurrentSkipListSet<Key> timeline = byPoster.get(postedBy);
+        if (timeline != null) {
+            timeline.remove(key);
+        }
+    }
+
+    /**
+     * @return Up to limit messages after the cursor, across all posters.
+     */
+    List<Message> page(MessageCursor after, int limit, IntFunction<Message> resolver) {
+        return page(byTime, after, limit, resolver);
+    }
+
+    /**
+     * @return Up to limit messages of one poster after the cursor.
+     */
+    List<Message> page(int postedBy, MessageCursor after, int limit, IntFunction<Message> resolver) {
+        ConcurrentSkipListSet<Key> timeline = byPoster.get(postedBy);
+        return timeline == null ? new ArrayList<>() : page(timeline, after, limit, resolver);
+    }
+
+    /**
+     * Hands every message of one poster to the consumer, oldest first.
+     */
+    void forEach(int postedBy, IntFunction<Message> resolver, Consumer<Message> consumer) {
+        ConcurrentSkipListSet<Key> timeline = byPoster.get(postedBy);
+        if (timeline == null) {
+            return;
+        }
+        for (Key key : timeline) {
+            Message msg = resolver.apply(key.id);
+            if (msg != null) {
+                consumer.accept(msg);
+            }
+        }
+    }
+
+    /**
+     * Hands the key of every message to the consumer, ordered by time_posted_epoch and message_id.
+     */
+    void forEachKey(MessageKeyConsumer consumer) {
+        for (Key key : byTime) {
+            consumer.accept(key.postedBy, key.time, key.id);
+        }
+    }
+
+    private static List<Message> page(NavigableSet<Key> keys, MessageCursor after, int limit,
+            IntFunction<Message> resolver) {
+        List<Message> found = new ArrayList<>(Math.min(limit, 256));
+        NavigableSet<Key> from = after == null
+                ? keys : keys.tailSet(new Key(0, after.getTime_posted_epoch(), after.getMessage_id()), false);
+        for (Key key : from) {
+            if (found.size() >= limit) {
+                break;
+            }
+            Message msg = resolver.apply(key.id);
+            if (msg != null) {
+                found.add(msg);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Ordered by time and id only; the poster is carried along for forEachKey.
+     */
+    private static final class Key {
+        final int postedBy;
+        final long time;
+        final int id;
+
+        Key(int postedBy, long time, int id) {
+            this.postedBy = postedBy;
+            this.time = time;
+            this.id = id;
+        }
+    }
+}
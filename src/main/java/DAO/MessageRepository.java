@@ -0,0 +1,109 @@
+package DAO;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import Model.Message;
+import Model.MessageCursor;
+
+/**
+ * The MessageRepository interface is the storage contract used by MessageService. MessageDAO implements it on top of
+ * the JDBC connection pool; other storage engines can be chosen at startup through StorageEngine.
+ *
+ * Listings are returned in message_id order unless a method says otherwise, and pages and keys are ordered by
+ * time_posted_epoch and then message_id.
+ */
+public interface MessageRepository {
+
+    /**
+     * @param msg The new message, without a message_id.
+     * @return The message with its generated message_id, or a message whose message_id is 0 if it was not inserted.
+     */
+    Message insert(Message msg);
+
+    /**
+     * Inserts many messages atomically.
+     * @param msgs The new messages, in order.
+     * @return The inserted messages with their generated message_id in the same order, or null if none were inserted.
+     */
+    List<Message> insertAll(List<Message> msgs);
+
+    /**
+     * @return Every message.
+     */
+    List<Message> getAllMessages();
+
+    /**
+     * @param id The message_id to look up.
+     * @return The message, or null if there is none with that message_id.
+     */
+    Message getMessageByID(int id);
+
+    /**
+     * @param ids The message_ids to look up.
+     * @return The messages found, in no particular order; ids with no message are left out.
+     * @throws RuntimeException if reading fails, rather than leaving out the ids that could not be read.
+     */
+    List<Message> getMessagesByIDs(int[] ids);
+
+    /**
+     * @param id The message_id of the message to delete.
+     * @return The message as it was before deletion, or null if there was none with that message_id.
+     */
+    Message delete(int id);
+
+    /**
+     * @param id The message_id of the message to update.
+     * @param messageText The new message_text.
+     * @return The message after the update, or null if there was none with that message_id.
+     */
+    Message updateText(int id, String messageText);
+
+    /**
+     * @param id The account_id of the poster.
+     * @return Every message posted by the account.
+     */
+    List<Message> getAllMessagesByAccountID(int id);
+
+    /**
+     * @param after The cursor of the last message on the previous page, or null for the first page.
+     * @param limit The maximum number of messages to return.
+     * @return The messages on the requested page.
+     */
+    List<Message> getMessagesPage(MessageCursor after, int limit);
+
+    /**
+     * @param id The account_id of the poster.
+     * @param after The cursor of the last message on the previous page, or null for the first page.
+     * @param limit The maximum number of messages to return.
+     * @return The messages posted by the account on the requested page.
+     */
+    List<Message> getMessagesPageByAccountID(int id, MessageCursor after, int limit);
+
+    /**
+     * @param consumer The callback receiving every message in turn.
+     * @throws RuntimeException if reading fails partway, rather than ending the stream early.
+     */
+    void forEachMessage(Consumer<Message> consumer);
+
+    /**
+     * @param id The account_id of the poster.
+     * @param consumer The callback receiving every message posted by the account in turn.
+     * @throws RuntimeException if reading fails partway, rather than ending the stream early.
+     */
+    void forEachMessageByAccountID(int id, Consumer<Message> consumer);
+
+    /**
+     * @param consumer The callback receiving the poster, time and id of every message, ordered by time_posted_epoch
+     * and message_id within each poster.
+     * @throws RuntimeException if reading fails partway, rather than ending the stream early.
+     */
+    void forEachMessageKey(MessageKeyConsumer consumer);
+
+    /**
+     * @param afterMessageId Only messages with a greater message_id are passed on.
+     * @param consumer The callback receiving the poster, time and id of each such message, in no particular order.
+     * @throws RuntimeException if reading fails partway, rather than ending the stream early.
+     */
+    void forEachMessageKeyAfter(int afterMessageId, MessageKeyConsumer consumer);
+}
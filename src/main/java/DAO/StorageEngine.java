@@ -0,0 +1,95 @@
+package DAO;
+
+import java.util.Locale;
+
+/**
+ * The StorageEngine enum lists the storage engines the services can run on. The engine is chosen at startup with the
+ * socialmedia.storage system property, for example -Dsocialmedia.storage=memory, and defaults to jdbc.
+ */
+public enum StorageEngine {
+    /**
+     * Every operation goes to the H2 database through the connection pool.
+     */
+    JDBC {
+        @Override
+        public MessageRepository newMessageRepository() {
+            return new MessageDAO();
+        }
+
+        @Override
+        public AccountRepository newAccountRepository() {
+            return new AccountDAO();
+        }
+    },
+    /**
+     * Every operation is served from lock-free in-memory structures. Each repository starts as a copy of the
+     * database, which in this mode is itself in memory, taken once when it is created; changes made to the database
+     * afterwards are not seen by it. Data written through the server is not persisted.
+     */
+    MEMORY {
+        @Override
+        public MessageRepository newMessageRepository() {
+            InMemoryMessageRepository repository = new InMemoryMessageRepository();
+            new MessageDAO().forEachMessage(repository::restore);
+            return repository;
+        }
+
+        @Override
+        public AccountRepository newAccountRepository() {
+            InMemoryAccountRepository repository = new InMemoryAccountRepository();
+            new AccountDAO().forEachAccount(repository::restore);
+            return repository;
+        }
+    },
+    /**
+     * Messages are kept in an append-only, memory mapped segment log configured by the socialmedia.log.* system
+     * properties; accounts stay in the H2 database. The log is opened once per process and shared, and is never
+     * copied from the message table, so resetting the test database leaves it as it was.
+     */
+    LOG {
+        @Override
+        public MessageRepository newMessageRepository() {
+            return SharedLog.REPOSITORY;
+        }
+
+        @Override
+        public AccountRepository newAccountRepository() {
+            return new AccountDAO();
+        }
+    };
+
+    /**
+     * System property naming the storage engine.
+     */
+    public static final String PROPERTY = "socialmedia.storage";
+
+    /**
+     * @return A ready to use message repository backed by this engine.
+     */
+    public abstract MessageRepository newMessageRepository();
+
+    /**
+     * @return A ready to use account repository backed by this engine.
+     */
+    public abstract AccountRepository newAccountRepository();
+
+    /**
+     * Opens the message log the first time the LOG engine is used.
+     */
+    private static final class SharedLog {
+        static final LogMessageRepository REPOSITORY = LogMessageRepository.open();
+    }
+
+    /**
+     * @return The engine named by the socialmedia.storage system property, or JDBC if it is not set.
+     * @throws IllegalArgumentException if the property names an unknown engine.
+     */
+    public static StorageEngine configured() {
+        String name = System.getProperty(PROPERTY, "jdbc").trim();
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown storage engine '" + name + "' in " + PROPERTY);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package Model;
+
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * This is a class that models the outcome of one message in a batch creation request. Exactly one of message_id and
+ * error is set, depending on whether the message was created.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageBatchResult {
+    /**
+     * The position of the message in the request array.
+     */
+    public int index;
+    /**
+     * The id generated for the message by the database, or null if it was not created.
+     */
+    public Integer message_id;
+    /**
+     * Why the message was not created, or null if it was.
+     */
+    public String error;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageBatchResult(){
+    }
+
+    public MessageBatchResult(int index, Integer message_id, String error) {
+        this.index = index;
+        this.message_id = message_id;
+        this.error = error;
+    }
+
+    /**
+     * @param index The position of the message in the request array.
+     * @param message_id The id generated for the message.
+     * @return A result for a message that was created.
+     */
+    public static MessageBatchResult created(int index, int message_id) {
+        return new MessageBatchResult(index, message_id, null);
+    }
+
+    /**
+     * @param index The position of the message in the request array.
+     * @param error Why the message was not created.
+     * @return A result for a message that was rejected.
+     */
+    public static MessageBatchResult failed(int index, String error) {
+        return new MessageBatchResult(index, null, error);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public Integer getMessage_id() {
+        return message_id;
+    }
+
+    public void setMessage_id(Integer message_id) {
+        this.message_id = message_id;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MessageBatchResult result = (MessageBatchResult) o;
+        return index == result.index && Objects.equals(message_id, result.message_id)
+                && Objects.equals(error, result.error);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(index, message_id, error);
+    }
+
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "index=" + index +
+                ", message_id=" + message_id +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
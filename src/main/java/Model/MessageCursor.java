@@ -0,0 +1,88 @@
+package Model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * This is a class that models a position in a message listing ordered by (time_posted_epoch, message_id). It is
+ * handed to clients as an opaque string so the next page can be fetched by seeking past the last message returned
+ * instead of skipping over every message before it.
+ */
+public class MessageCursor {
+    /**
+     * The time_posted_epoch of the last message on the previous page.
+     */
+    private final long time_posted_epoch;
+    /**
+     * The message_id of the last message on the previous page, used to break ties between equal timestamps.
+     */
+    private final int message_id;
+
+    public MessageCursor(long time_posted_epoch, int message_id) {
+        this.time_posted_epoch = time_posted_epoch;
+        this.message_id = message_id;
+    }
+
+    /**
+     * @param msg The last message on a page.
+     * @return A cursor positioned right after the given message.
+     */
+    public static MessageCursor after(Message msg) {
+        return new MessageCursor(msg.getTime_posted_epoch(), msg.getMessage_id());
+    }
+
+    public long getTime_posted_epoch() {
+        return time_posted_epoch;
+    }
+
+    public int getMessage_id() {
+        return message_id;
+    }
+
+    /**
+     * @return The opaque string form of this cursor, safe to use in a query string.
+     */
+    public String encode() {
+        String raw = time_posted_epoch + ":" + message_id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param encoded A string previously produced by encode().
+     * @return The decoded cursor, or null if the string is not a valid cursor.
+     */
+    public static MessageCursor decode(String encoded) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.US_ASCII);
+            int separator = raw.indexOf(':');
+            if (separator < 0) {
+                return null;
+            }
+            return new MessageCursor(Long.parseLong(raw.substring(0, separator)),
+                    Integer.parseInt(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MessageCursor cursor = (MessageCursor) o;
+        return time_posted_epoch == cursor.time_posted_epoch && message_id == cursor.message_id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(time_posted_epoch) * 31 + message_id;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageCursor{" +
+                "time_posted_epoch=" + time_posted_epoch +
+                ", message_id=" + message_id +
+                '}';
+    }
+}
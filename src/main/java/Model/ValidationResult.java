@@ -0,0 +1,111 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of a service operation that can be refused for an ordinary reason, such as
+ * a blank message or a username that is taken. A valid result carries the operation's value; a failed one carries
+ * the Failure explaining it. Failed results hold no per-request data, so one instance per Failure is created up
+ * front and shared, and refusing a request costs no allocation or stack trace. Exceptions stay reserved for faults
+ * such as a broken database connection.
+ * @param <T> The type of value produced by a valid result.
+ */
+public final class ValidationResult<T> {
+
+    /**
+     * The ordinary reasons a request is refused. The message of each is the text reported to clients, for example
+     * in the error field of a batch creation result.
+     */
+    public enum Failure {
+        MISSING_CREDENTIALS("Username and password are required"),
+        BLANK_USERNAME("Username cannot be blank"),
+        SHORT_PASSWORD("Password must be at least 4 characters long"),
+        USERNAME_TAKEN("Username already exists"),
+        INVALID_CREDENTIALS("Username or password is incorrect"),
+        ACCOUNT_NOT_STORED("Failed to insert account"),
+        MISSING_MESSAGE_TEXT("Invalid message"),
+        BLANK_MESSAGE("Message cannot be blank"),
+        MESSAGE_TOO_LONG("Message cannot exceed 255 characters"),
+        UNKNOWN_ACCOUNT("Cannot create message without existing account"),
+        MESSAGE_NOT_FOUND("Message does not exist"),
+        MESSAGE_NOT_STORED("Failed to insert message");
+
+        private final String message;
+
+        Failure(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private static final ValidationResult<?> VALID = new ValidationResult<>(null, null);
+    private static final ValidationResult<?>[] FAILURES = new ValidationResult<?>[Failure.values().length];
+
+    static {
+        for (Failure failure : Failure.values()) {
+            FAILURES[failure.ordinal()] = new ValidationResult<>(null, failure);
+        }
+    }
+
+    private final T value;
+    private final Failure failure;
+
+    private ValidationResult(T value, Failure failure) {
+        this.value = value;
+        this.failure = failure;
+    }
+
+    /**
+     * @return The shared valid result without a value, for checks that only accept or refuse.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ValidationResult<T> valid() {
+        return (ValidationResult<T>) VALID;
+    }
+
+    /**
+     * @param value The value produced by the operation.
+     * @return A valid result carrying the value.
+     */
+    public static <T> ValidationResult<T> valid(T value) {
+        return new ValidationResult<>(value, null);
+    }
+
+    /**
+     * @param failure Why the request was refused.
+     * @return The shared failed result for that reason.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ValidationResult<T> failed(Failure failure) {
+        return (ValidationResult<T>) FAILURES[failure.ordinal()];
+    }
+
+    /**
+     * @return True/False whether the request was accepted.
+     */
+    public boolean isValid() {
+        return failure == null;
+    }
+
+    /**
+     * @return The value produced by a valid result, or null for a failed one.
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return Why the request was refused, or null if it was accepted.
+     */
+    public Failure getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return isValid()
+                ? "ValidationResult{value=" + value + '}'
+                : "ValidationResult{failure=" + failure + '}';
+    }
+}
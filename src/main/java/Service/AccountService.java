@@ -1,90 +1,212 @@
 package Service;
 
-import DAO.AccountDAO;
+import java.util.concurrent.atomic.LongAdder;
+
+import DAO.AccountRepository;
+import DAO.StorageEngine;
 import Model.Account;
+import Model.ValidationResult;
+import Util.BloomFilter;
+import Util.LruCache;
 
 public class AccountService {
-    AccountDAO accountDAO;
+    /**
+     * Maximum number of accounts, including unknown account ids, kept in the account cache.
+     */
+    private static final int ACCOUNT_CACHE_SIZE = 10000;
+    /**
+     * How long an account stays cached after it was loaded.
+     */
+    private static final long ACCOUNT_CACHE_TTL_MILLIS = 5 * 60 * 1000;
+    /**
+     * How long an account id that does not exist stays cached as unknown.
+     */
+    private static final long UNKNOWN_ACCOUNT_TTL_MILLIS = 5 * 1000;
+    /**
+     * False positive rate targeted by the username filter while it is below capacity.
+     */
+    private static final double USERNAME_FILTER_FALSE_POSITIVE_RATE = 0.01;
+    /**
+     * Smallest number of usernames the username filter is sized for.
+     */
+    private static final long MIN_USERNAME_FILTER_CAPACITY = 1024;
+
+    AccountRepository accountRepository;
+    /**
+     * Read-through cache of accounts by account_id, so checking that a message poster exists normally skips the
+     * database.
+     */
+    private final LruCache<Integer, Account> accountCache =
+            new LruCache<>(ACCOUNT_CACHE_SIZE, ACCOUNT_CACHE_TTL_MILLIS, UNKNOWN_ACCOUNT_TTL_MILLIS);
+
+    /**
+     * Bloom filter of every registered username. A username it has never seen is known to be free without asking
+     * the database; the unique constraint on account.username remains the final check.
+     */
+    private volatile BloomFilter usernameFilter;
+    private final LongAdder usernameLookupsSkipped = new LongAdder();
+    private final LongAdder usernameFalsePositives = new LongAdder();
 
     public AccountService(){
-        accountDAO = new AccountDAO();
+        accountRepository = StorageEngine.configured().newAccountRepository();
+        loadUsernameFilter();
     }
 
-    public AccountService(AccountDAO accountDAO){
-        this.accountDAO = accountDAO;
+    public AccountService(AccountRepository accountRepository){
+        this.accountRepository = accountRepository;
+        loadUsernameFilter();
+    }
+
+    /**
+     * Builds the username filter from the account table, sized for twice the current number of accounts.
+     */
+    private synchronized void loadUsernameFilter() {
+        long accounts = accountRepository.countAccounts();
+        BloomFilter filter = new BloomFilter(Math.max(MIN_USERNAME_FILTER_CAPACITY, accounts * 2),
+                USERNAME_FILTER_FALSE_POSITIVE_RATE);
+        accountRepository.forEachUsername(filter::add);
+        usernameFilter = filter;
     }
 
     /**
      * createAccount method handles the business logic and interaction with the DAO associated
      * with creating and inserting a new user/account into the database.
      * @param account The Account class object which contains account.
-     * @return The Account object that contains the data associated with the account after insertion into the database.
+     * @return A valid result holding the Account after insertion into the database, or the reason the
+     * account was refused.
      */
-    public Account createAccount(Account account){
+    public ValidationResult<Account> createAccount(Account account){
         try {
-            validateAccount(account);
+            ValidationResult<Account> validation = validateAccount(account);
+            if(!validation.isValid()){
+                return validation;
+            }
 
             Account newAccount = new Account(account.getUsername(), account.getPassword());
             
-            return accountDAO.insert(newAccount);
+            Account insertedAccount = accountRepository.insert(newAccount);
+            // No id means the insert failed, e.g. a concurrent registration took the username first
+            if(insertedAccount.getAccount_id() == 0){
+                return ValidationResult.failed(ValidationResult.Failure.ACCOUNT_NOT_STORED);
+            }
+            // Warm the cache so the new account's first message does not need a lookup
+            accountCache.put(insertedAccount.getAccount_id(), insertedAccount);
+
+            BloomFilter filter = usernameFilter;
+            filter.add(insertedAccount.getUsername());
+            if(filter.getInsertionCount() > filter.getExpectedInsertions()){
+                loadUsernameFilter();
+            }
+            return ValidationResult.valid(insertedAccount);
             
         } catch (RuntimeException e) {
-            throw new RuntimeException("Exception during createAccount");
+            throw new RuntimeException("Exception during createAccount", e);
         }
     }
 
     /**
      * validateAccount method is a helper function to perform validation on the account requirements.
-     * Account username cannot be blank, password less than 4 characters, and user account must exists.
+     * Account username cannot be blank, password less than 4 characters, and username must not be taken.
      * @param account The Account class object which contains data associated with the new account.
+     * @return The shared valid result, or the failed result naming the first requirement not met.
      */
-    public void validateAccount(Account account){
-        try{
-            String username = account.getUsername().trim();
-            String password = account.getPassword().trim();
-
-            // Validation to check if username is blank, password is less than 4 characters, and if username already exists
-            if(username.isEmpty()){
-                throw new RuntimeException("Username cannot be blank");
-            }
-            if(password.length() < 4){
-                throw new RuntimeException("Password must be at least 4 characters long");
-            }
-            if(accountDAO.checkUsernameExists(account.getUsername())){
-                throw new RuntimeException("Username already exists");
-            }
+    public ValidationResult<Account> validateAccount(Account account){
+        if(account == null || account.getUsername() == null || account.getPassword() == null){
+            return ValidationResult.failed(ValidationResult.Failure.MISSING_CREDENTIALS);
+        }
+        // Validation to check if username is blank, password is less than 4 characters, and if username already exists
+        if(account.getUsername().trim().isEmpty()){
+            return ValidationResult.failed(ValidationResult.Failure.BLANK_USERNAME);
+        }
+        if(account.getPassword().trim().length() < 4){
+            return ValidationResult.failed(ValidationResult.Failure.SHORT_PASSWORD);
+        }
+        if(usernameExists(account.getUsername())){
+            return ValidationResult.failed(ValidationResult.Failure.USERNAME_TAKEN);
+        }
+        return ValidationResult.valid();
+    }
 
-        } catch (RuntimeException e) {
-            throw new RuntimeException(e.getMessage());
+    /**
+     * usernameExists method is a helper function to check whether a username is taken, only querying the
+     * database when the username filter cannot rule it out.
+     * @param username The username to look for.
+     * @return True/False whether or not an account already has the username.
+     */
+    private boolean usernameExists(String username){
+        if(!usernameFilter.mightContain(username)){
+            usernameLookupsSkipped.increment();
+            return false;
         }
+        boolean exists = accountRepository.checkUsernameExists(username);
+        if(!exists){
+            usernameFalsePositives.increment();
+        }
+        return exists;
     }
 
     /**
      * login method handles the business logic and interaction with the DAO associated
      * with validating the account login credentials
      * @param account The Account class object which contains the credentials of the login account
-     * @return The Account object that contains the data associated with account and login credentials
+     * @return A valid result holding the Account matching the login credentials, or a failed result if the
+     * credentials are missing or do not match an account.
      */
-    public Account login(Account account) {
+    public ValidationResult<Account> login(Account account) {
+        if(account == null || account.getUsername() == null || account.getPassword() == null){
+            return ValidationResult.failed(ValidationResult.Failure.MISSING_CREDENTIALS);
+        }
         try {
-            return accountDAO.validateLogin(account);
+            Account loginAccount = accountRepository.validateLogin(account);
+            return loginAccount != null
+                    ? ValidationResult.valid(loginAccount)
+                    : ValidationResult.failed(ValidationResult.Failure.INVALID_CREDENTIALS);
         } catch (RuntimeException e) {
-            throw new RuntimeException(e.getMessage());
+            throw new RuntimeException("Exception during login", e);
         }
     }
 
     /**
      * getAccountByID method handles the business logic and interaction with the DAO associated
-     * with retrieving the account data associated with the account_id
+     * with retrieving the account data associated with the account_id. Accounts, and ids that do not
+     * belong to any account, are served from the account cache when possible.
      * @param id The account_id used to retrieve the data of a specific account
      * @return The Account object that contains the data associated with the account after retrieval from the database.
      */
     public Account getAccountByID(int id) {
         try {
-            return accountDAO.getAccountByID(id);
+            return accountCache.getOrLoad(id, accountRepository::getAccountByID);
         } catch (RuntimeException e){
             e.printStackTrace();
         }
         return null;
     }
+
+    /**
+     * @return The account cache, for reporting its size and hit rate.
+     */
+    public LruCache<Integer, Account> getAccountCache() {
+        return accountCache;
+    }
+
+    /**
+     * @return The username filter, for reporting its size and estimated false positive rate.
+     */
+    public BloomFilter getUsernameFilter() {
+        return usernameFilter;
+    }
+
+    /**
+     * @return The number of username checks answered by the filter without a database lookup.
+     */
+    public long getUsernameLookupsSkipped() {
+        return usernameLookupsSkipped.sum();
+    }
+
+    /**
+     * @return The number of username checks where the filter answered maybe but the username was free.
+     */
+    public long getUsernameFalsePositives() {
+        return usernameFalsePositives.sum();
+    }
 }
@@ -1,40 +1,213 @@
 package Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
-import DAO.MessageDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import DAO.MessageRepository;
+import DAO.StorageEngine;
 import Model.Account;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageCursor;
+import Model.ValidationResult;
+import Util.GroupCommitQueue;
+import Util.LruCache;
+import Util.TimelineIndex;
+import Util.VersionCounters;
 
 public class MessageService {
-    MessageDAO messageDAO;
+    private static final Logger log = LoggerFactory.getLogger(MessageService.class);
+
+    /**
+     * Maximum number of messages kept in the message cache.
+     */
+    private static final int MESSAGE_CACHE_SIZE = 10000;
+    /**
+     * How long a message stays cached after it was loaded or written.
+     */
+    private static final long MESSAGE_CACHE_TTL_MILLIS = 60 * 1000;
+    /**
+     * Number of timeline messages resolved per database query when they are not cached.
+     */
+    private static final int TIMELINE_RESOLVE_CHUNK_SIZE = 256;
+    /**
+     * Number of message_ids below the highest one indexed that each timeline refresh reads again, so a message whose
+     * transaction committed after one with a higher message_id is still picked up.
+     */
+    private static final int TIMELINE_REFRESH_OVERLAP = 1024;
+    /**
+     * Number of version counters shared by message ids, and by account ids for their timelines.
+     */
+    private static final int VERSION_COUNTERS = 1 << 16;
+
+    MessageRepository messageRepository;
+    /**
+     * Cache of messages by message_id. Every write through this service invalidates the message's entry once the
+     * write is done rather than caching the written value, since two writes to the same message may finish in either
+     * order; the next read loads whatever the write that landed last stored. Concurrent misses for the same message
+     * share a single database query.
+     */
+    private final LruCache<Integer, Message> messageCache =
+            new LruCache<>(MESSAGE_CACHE_SIZE, MESSAGE_CACHE_TTL_MILLIS, 0);
+    /**
+     * Ids of each account's messages in time order. Built from the message table when the service is created and
+     * kept current by the create and delete methods of this service, so timeline reads never scan the table.
+     * Messages inserted by other processes only appear once refreshTimelineIndex has run, and messages they deleted
+     * are dropped when a timeline read finds them missing.
+     */
+    private final TimelineIndex timelineIndex = new TimelineIndex();
+    /**
+     * Highest message_id the timeline index has read from the repository, where refreshTimelineIndex carries on.
+     */
+    private volatile int timelineIndexedThrough;
+    /**
+     * Runs refreshTimelineIndex every socialmedia.timeline.refreshMillis milliseconds. Null when that is 0, the
+     * default, which assumes a single writer: this service must own every write to the message table, since rows
+     * inserted by anyone else never reach the timeline index. Deployments sharing the table with other writers must
+     * set a positive interval.
+     */
+    private final ScheduledExecutorService timelineRefresher;
+    /**
+     * Group-commit pipeline for createMessage: concurrent creates are inserted together, one transaction per batch.
+     * Null when disabled with -Dsocialmedia.write.groupCommit=false, in which case each create inserts on its own.
+     */
+    private final GroupCommitQueue<Message, Message> writeQueue;
+    /**
+     * Versions of each message and of each account's timeline, moved by the create, update and delete methods of
+     * this service once the change is visible, so clients can revalidate their copy without a query.
+     */
+    private final VersionCounters messageVersions = new VersionCounters(VERSION_COUNTERS);
+    private final VersionCounters timelineVersions = new VersionCounters(VERSION_COUNTERS);
 
     public MessageService(){
-        messageDAO = new MessageDAO();
+        this(StorageEngine.configured().newMessageRepository());
     }
 
-    public MessageService(MessageDAO messageDAO){
-        this.messageDAO = messageDAO;
+    public MessageService(MessageRepository messageRepository){
+        this.messageRepository = messageRepository;
+        int[] highest = new int[1];
+        messageRepository.forEachMessageKey((postedBy, timePostedEpoch, messageId) -> {
+            timelineIndex.add(postedBy, timePostedEpoch, messageId);
+            highest[0] = Math.max(highest[0], messageId);
+        });
+        this.timelineIndexedThrough = highest[0];
+        this.writeQueue = Boolean.parseBoolean(System.getProperty("socialmedia.write.groupCommit", "true"))
+                ? new GroupCommitQueue<>("message-writer", messageRepository::insertAll, messageRepository::insert,
+                        Integer.getInteger("socialmedia.write.queueCapacity", 10000),
+                        Integer.getInteger("socialmedia.write.maxBatchSize", 256),
+                        Long.getLong("socialmedia.write.maxLingerMicros", 1000),
+                        Long.getLong("socialmedia.write.enqueueTimeoutMillis", 1000))
+                : null;
+        // 0 assumes this service is the only writer to the message table; see timelineRefresher
+        long refreshMillis = Long.getLong("socialmedia.timeline.refreshMillis", 0);
+        if (refreshMillis > 0) {
+            this.timelineRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "timeline-refresher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timelineRefresher.scheduleWithFixedDelay(() -> {
+                try {
+                    refreshTimelineIndex();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to refresh the timeline index", e);
+                }
+            }, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.timelineRefresher = null;
+        }
     }
 
 /**
  * createMessage method handles the business logic and interaction with the DAO associated
- * with creating and inserting a new message into the database.
+ * with creating and inserting a new message into the database. Unless group commit is disabled,
+ * the message is queued and inserted in a batch with other concurrent creates; this returns once
+ * that batch has been committed.
  * @param msg The Message class objet, which contains the data of the new message.
  * @param account The Account class object which contains the specific account associated with the message.
- * @return The Message object that contains the data associated with the message after insertion into the database.
+ * @return A valid result holding the Message after insertion into the database, or the reason the message
+ * was refused.
  */
-public Message createMessage(Message msg, Account account) {
+public ValidationResult<Message> createMessage(Message msg, Account account) {
     try {
-        validateNewMessage(msg, account);
+        ValidationResult<Message> validation = validateNewMessage(msg, account);
+        if(!validation.isValid()){
+            return validation;
+        }
 
         Message newMsg = new Message(msg.getPosted_by(), msg.getMessage_text(), msg.getTime_posted_epoch());
         
-        return messageDAO.insert(newMsg);
+        Message insertedMsg = writeQueue != null
+                ? writeQueue.submit(newMsg).join()
+                : messageRepository.insert(newMsg);
+        // No id means the insert failed, e.g. the poster's account was deleted in the meantime
+        if(insertedMsg == null || insertedMsg.getMessage_id() <= 0){
+            return ValidationResult.failed(ValidationResult.Failure.MESSAGE_NOT_STORED);
+        }
+        messageCache.invalidate(insertedMsg.getMessage_id());
+        timelineIndex.add(insertedMsg.getPosted_by(), insertedMsg.getTime_posted_epoch(),
+                insertedMsg.getMessage_id());
+        messageChanged(insertedMsg);
+        return ValidationResult.valid(insertedMsg);
         
     } catch (RuntimeException e) {
-        throw new RuntimeException("Exception during createMessage");
+        throw new RuntimeException("Exception during createMessage", e);
+    }
+}
+
+/**
+ * createMessages method handles the business logic and interaction with the DAO associated
+ * with creating many messages at once. Every message is validated on its own; the valid ones are
+ * inserted together in one transaction.
+ * @param msgs The Message class objects to create, in request order.
+ * @param accounts The existing accounts of the posters, keyed by account_id.
+ * @return One MessageBatchResult per message, in request order, holding either its new message_id or the
+ * reason it was rejected.
+ */
+public List<MessageBatchResult> createMessages(List<Message> msgs, Map<Integer, Account> accounts) {
+    MessageBatchResult[] results = new MessageBatchResult[msgs.size()];
+    List<Message> valid = new ArrayList<>(msgs.size());
+    List<Integer> validIndexes = new ArrayList<>(msgs.size());
+
+    for (int i = 0; i < msgs.size(); i++) {
+        Message msg = msgs.get(i);
+        ValidationResult<Message> validation = validateNewMessage(msg, accounts.get(msg.getPosted_by()));
+        if(validation.isValid()){
+            valid.add(new Message(msg.getPosted_by(), msg.getMessage_text(), msg.getTime_posted_epoch()));
+            validIndexes.add(i);
+        } else {
+            results[i] = MessageBatchResult.failed(i, validation.getFailure().getMessage());
+        }
+    }
+
+    if (!valid.isEmpty()) {
+        List<Message> inserted = messageRepository.insertAll(valid);
+        if (inserted != null) {
+            for (Message insertedMsg : inserted) {
+                messageCache.invalidate(insertedMsg.getMessage_id());
+                timelineIndex.add(insertedMsg.getPosted_by(), insertedMsg.getTime_posted_epoch(),
+                        insertedMsg.getMessage_id());
+                messageChanged(insertedMsg);
+            }
+        }
+        for (int j = 0; j < validIndexes.size(); j++) {
+            int i = validIndexes.get(j);
+            results[i] = inserted != null
+                    ? MessageBatchResult.created(i, inserted.get(j).getMessage_id())
+                    : MessageBatchResult.failed(i, ValidationResult.Failure.MESSAGE_NOT_STORED.getMessage());
+        }
     }
+    return List.of(results);
 }
 
 /**
@@ -42,23 +215,36 @@ public Message createMessage(Message msg, Account account) {
  * Message text cannot be blank, over 255 characters, and should be posted by an existing user account.
  * @param msg The Message class object, which contains the data of the new message.
  * @param account The Account class object which contains the specific account associated with the message.
+ * @return The shared valid result, or the failed result naming the first requirement not met.
  */
-public void validateNewMessage(Message msg, Account account){
-    try{
-        // Validate to check if new message to be added satisfies text requirements
-        if(msg.message_text.isBlank()){
-            throw new RuntimeException("Message cannot be blank");
-        }
-        if(msg.message_text.length() > 254){
-            throw new RuntimeException("Message cannot exceed 255 characters");
-        }
-        if(account == null){
-            throw new RuntimeException("Cannot create message without existing account");
-        }
+public ValidationResult<Message> validateNewMessage(Message msg, Account account){
+    ValidationResult<Message> textValidation = validateMessageText(msg);
+    if(!textValidation.isValid()){
+        return textValidation;
+    }
+    if(account == null){
+        return ValidationResult.failed(ValidationResult.Failure.UNKNOWN_ACCOUNT);
+    }
+    return ValidationResult.valid();
+}
 
-    } catch (RuntimeException e) {
-        throw new RuntimeException(e.getMessage());
+/**
+ * validateMessageText method is a helper function to check that a message text is present, not blank and
+ * not over 255 characters.
+ * @param msg The Message class object, which contains the message text.
+ * @return The shared valid result, or the failed result naming the first requirement not met.
+ */
+private ValidationResult<Message> validateMessageText(Message msg){
+    if(msg == null || msg.message_text == null){
+        return ValidationResult.failed(ValidationResult.Failure.MISSING_MESSAGE_TEXT);
+    }
+    if(msg.message_text.isBlank()){
+        return ValidationResult.failed(ValidationResult.Failure.BLANK_MESSAGE);
+    }
+    if(msg.message_text.length() > 254){
+        return ValidationResult.failed(ValidationResult.Failure.MESSAGE_TOO_LONG);
     }
+    return ValidationResult.valid();
 }
 
 /**
@@ -68,7 +254,7 @@ public void validateNewMessage(Message msg, Account account){
  */
 public List<Message> getAllMessages() {
     try {
-        return messageDAO.getAllMessages();      
+        return messageRepository.getAllMessages();      
     } catch (RuntimeException e) {
         throw new RuntimeException("Exception during getAllMessages");
     }
@@ -76,69 +262,284 @@ public List<Message> getAllMessages() {
 
 /**
  * getMessageByID method handles the business logic and interaction with the DAO associated
- * with retrieving a specific id associated with a message in the database.
+ * with retrieving a specific id associated with a message in the database. Messages are served
+ * from the message cache when possible.
  * @param id The message id of the associated message.
  * @return The Message object that contains the data corresponding to a specific message id in the database.
  */
 public Message getMessageByID(int id) {
     try {
-        return messageDAO.getMessageByID(id);      
+        return messageCache.getOrLoad(id, messageRepository::getMessageByID);
     } catch (RuntimeException e) {
         throw new RuntimeException("Exception during getMessageByID");
     }
 }
 
+/**
+ * getCachedMessage method answers for the id from the message cache alone, without touching the database.
+ * @param id The message id of the associated message.
+ * @param consumer Receives the cached message, or null if its absence is cached; not called on a cache miss.
+ * @return True/False whether the message, or its absence, was cached.
+ */
+public boolean getCachedMessage(int id, Consumer<Message> consumer) {
+    return messageCache.ifCached(id, consumer);
+}
+
 /**
  * deleteMessageByID method handles the business logic and interaction with the DAO associated
  * with deleting an existing message from the database.
- * @param msg The Message class object , which contains the message_id of the message to be deleted.
- * @return True/False whether or not the message was deleted sucessfully from the database.
+ * @param id The message_id of the message to be deleted.
+ * @return The Message object as it was before deletion, or null if the message did not exist.
  */
-public boolean deleteMessageByID(Message msg) {
+public Message deleteMessageByID(int id) {
     try {
-        return messageDAO.delete(msg);
+        Message deletedMsg = messageRepository.delete(id);
+        messageCache.invalidate(id);
+        if(deletedMsg != null){
+            timelineIndex.remove(deletedMsg.getPosted_by(), deletedMsg.getTime_posted_epoch(), id);
+            messageChanged(deletedMsg);
+        }
+        return deletedMsg;
 
     } catch (RuntimeException e) {
-        throw new RuntimeException("Exception during updateMessageByID");
+        throw new RuntimeException("Exception during deleteMessageByID");
     }
 }
 
 /**
  * updateMessageByID method handles the business logic and interaction with the DAO associated
- * with updating an existing message from the database.
+ * with updating the text of an existing message in the database.
  * @param id The message_id associated with a specific message targeted for updating.
- * @param msg The instance of the Message class, which contains the updated data of the message.
- * @return True/False whether or not the message was updated sucessfully from an existing record in the database.
+ * @param msg The instance of the Message class, which contains the updated message text.
+ * @return A valid result holding the Message after the update, or the reason it was refused, including
+ * a message that does not exist.
  */
-public boolean updateMessageByID(int id, Message msg) {
+public ValidationResult<Message> updateMessageByID(int id, Message msg) {
+    // Validation to check if message text is blank and over 255 characters
+    ValidationResult<Message> validation = validateMessageText(msg);
+    if(!validation.isValid()){
+        return validation;
+    }
     try {
-        // Validation to check if message text is blank and over 255 characters
-        if(msg.message_text.isBlank()){
-            throw new RuntimeException("Message cannot be blank");
+        Message updatedMsg = messageRepository.updateText(id, msg.getMessage_text());
+        messageCache.invalidate(id);
+        if(updatedMsg != null){
+            messageChanged(updatedMsg);
+            return ValidationResult.valid(updatedMsg);
         }
-        if(msg.message_text.length() > 254){
-            throw new RuntimeException("Message cannot exceed 255 characters");
-        }
-
-        return messageDAO.update(id, msg);
+        return ValidationResult.failed(ValidationResult.Failure.MESSAGE_NOT_FOUND);
         
     } catch (RuntimeException e) {
-        throw new RuntimeException("Exception during updateMessageByID");
+        throw new RuntimeException("Exception during updateMessageByID", e);
     }
 }
 
 /**
  * getAllMessagesByAccountID method handles the business logic and interaction with the DAO associated
- * with retrieving all messages in the database from a specific account_id.
+ * with retrieving all messages in the database from a specific account_id. The message ids come from the
+ * timeline index, so an account with no messages costs no query at all.
  * @param id The account_id that is associated with all the messages that are targeted for retrieval.
- * @return A List of Message objects corresponding to a specific user account id in the database.
+ * @return A List of Message objects corresponding to a specific user account id in the database, oldest first.
  */
 public List<Message> getAllMessagesByAccountID(int id) {
     try {
-        return messageDAO.getAllMessagesByAccountID(id);      
+        List<Message> messages = new ArrayList<>();
+        resolveMessages(id, timelineIndex.messageIds(id), messages::add);
+        return messages;
     } catch (RuntimeException e) {
         throw new RuntimeException("Exception during getAllMessagesByAccountID");
     }
 }
 
+/**
+ * getMessagesPage method handles the business logic and interaction with the DAO associated
+ * with retrieving one page of all messages, ordered by time_posted_epoch and message_id.
+ * @param after The cursor of the last message on the previous page, or null for the first page.
+ * @param limit The maximum number of messages on the page.
+ * @return A List of Message objects on the requested page.
+ */
+public List<Message> getMessagesPage(MessageCursor after, int limit) {
+    try {
+        return messageRepository.getMessagesPage(after, limit);
+    } catch (RuntimeException e) {
+        throw new RuntimeException("Exception during getMessagesPage");
+    }
+}
+
+/**
+ * getMessagesPageByAccountID method handles the business logic and interaction with the DAO associated
+ * with retrieving one page of the messages posted by a specific account_id. The page is located in the
+ * timeline index and only its messages are read.
+ * @param id The account_id that is associated with all the messages that are targeted for retrieval.
+ * @param after The cursor of the last message on the previous page, or null for the first page.
+ * @param limit The maximum number of messages on the page.
+ * @return A List of Message objects on the requested page.
+ */
+public List<Message> getMessagesPageByAccountID(int id, MessageCursor after, int limit) {
+    try {
+        int[] ids = after == null
+                ? timelineIndex.messageIdsAfter(id, Long.MIN_VALUE, Integer.MIN_VALUE, limit)
+                : timelineIndex.messageIdsAfter(id, after.getTime_posted_epoch(), after.getMessage_id(), limit);
+        List<Message> messages = new ArrayList<>(ids.length);
+        resolveMessages(id, ids, messages::add);
+        return messages;
+    } catch (RuntimeException e) {
+        throw new RuntimeException("Exception during getMessagesPageByAccountID");
+    }
+}
+
+/**
+ * forEachMessage method handles the business logic and interaction with the DAO associated
+ * with streaming all messages in the database one at a time.
+ * @param consumer The callback receiving each Message as it is read from the database.
+ */
+public void forEachMessage(Consumer<Message> consumer) {
+    try {
+        messageRepository.forEachMessage(consumer);
+    } catch (RuntimeException e) {
+        throw new RuntimeException("Exception during forEachMessage", e);
+    }
+}
+
+/**
+ * forEachMessageByAccountID method handles the business logic and interaction with the DAO associated
+ * with streaming all messages posted by a specific account_id one at a time, oldest first. The message ids
+ * come from the timeline index and are read in chunks, cached messages first.
+ * @param id The account_id that is associated with all the messages that are targeted for retrieval.
+ * @param consumer The callback receiving each Message in turn.
+ */
+public void forEachMessageByAccountID(int id, Consumer<Message> consumer) {
+    try {
+        resolveMessages(id, timelineIndex.messageIds(id), consumer);
+    } catch (RuntimeException e) {
+        throw new RuntimeException("Exception during forEachMessageByAccountID", e);
+    }
+}
+
+/**
+ * resolveMessages method is a helper function that turns message ids from the timeline index into messages,
+ * in the same order. Cached messages are used as they are; the rest of each chunk is read in a single query.
+ * Ids whose message is no longer in the repository, e.g. because another process deleted it, are skipped and
+ * dropped from the timeline index. A failed read is thrown rather than taken for deleted messages.
+ * @param accountId The account_id whose timeline the ids come from.
+ * @param ids The message ids to resolve, in order.
+ * @param consumer The callback receiving each Message in turn.
+ */
+private void resolveMessages(int accountId, int[] ids, Consumer<Message> consumer) {
+    Message[] chunk = new Message[Math.min(ids.length, TIMELINE_RESOLVE_CHUNK_SIZE)];
+    int[] missing = new int[chunk.length];
+
+    for (int start = 0; start < ids.length; start += chunk.length) {
+        int end = Math.min(start + chunk.length, ids.length);
+        int missingCount = 0;
+        for (int i = start; i < end; i++) {
+            Message cached = messageCache.getIfPresent(ids[i]);
+            chunk[i - start] = cached;
+            if (cached == null) {
+                missing[missingCount++] = ids[i];
+            }
+        }
+
+        if (missingCount > 0) {
+            Map<Integer, Message> loaded = new HashMap<>();
+            for (Message msg : messageRepository.getMessagesByIDs(Arrays.copyOf(missing, missingCount))) {
+                loaded.put(msg.getMessage_id(), msg);
+            }
+            for (int i = start; i < end; i++) {
+                if (chunk[i - start] == null) {
+                    chunk[i - start] = loaded.get(ids[i]);
+                    if (chunk[i - start] == null && timelineIndex.remove(accountId, ids[i])) {
+                        timelineVersions.increment(accountId);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < end - start; i++) {
+            if (chunk[i] != null) {
+                consumer.accept(chunk[i]);
+            }
+        }
+    }
+}
+
+/**
+ * refreshTimelineIndex method adds the messages inserted by other processes to the timeline index, reading
+ * the keys of the messages above the highest message_id indexed so far, less a small overlap for transactions
+ * that committed out of order. Runs on a schedule when socialmedia.timeline.refreshMillis is set.
+ */
+public synchronized void refreshTimelineIndex() {
+    try {
+        int[] highest = { timelineIndexedThrough };
+        messageRepository.forEachMessageKeyAfter(Math.max(0, highest[0] - TIMELINE_REFRESH_OVERLAP),
+                (postedBy, timePostedEpoch, messageId) -> {
+                    if (timelineIndex.add(postedBy, timePostedEpoch, messageId)) {
+                        timelineVersions.increment(postedBy);
+                    }
+                    highest[0] = Math.max(highest[0], messageId);
+                });
+        timelineIndexedThrough = highest[0];
+    } catch (RuntimeException e) {
+        throw new RuntimeException("Exception during refreshTimelineIndex", e);
+    }
+}
+
+/**
+ * messageChanged method is a helper function that moves the versions of a message and of its poster's
+ * timeline after the message was created, updated or deleted.
+ * @param msg The Message class object that changed.
+ */
+private void messageChanged(Message msg) {
+    messageVersions.increment(msg.getMessage_id());
+    timelineVersions.increment(msg.getPosted_by());
+}
+
+/**
+ * getMessageVersion method returns a version of a message that changes whenever the message is created,
+ * updated or deleted through this service, without touching the database. Read it before the message
+ * itself, so the version never describes a newer message than the one read.
+ * @param id The message id of the associated message.
+ * @return The version of the message, which differs across restarts.
+ */
+public String getMessageVersion(int id) {
+    return messageVersions.tag(id);
+}
+
+/**
+ * getTimelineVersion method returns a version of the messages posted by an account that changes whenever
+ * one of them is created, updated or deleted through this service, without touching the database.
+ * @param accountId The account_id whose messages are versioned.
+ * @return The version of the account's messages, which differs across restarts.
+ */
+public String getTimelineVersion(int accountId) {
+    return timelineVersions.tag(accountId);
+}
+
+/**
+ * close method stops the timeline refresher, and the group-commit writer after the messages already queued
+ * have been inserted.
+ */
+public void close() {
+    if (timelineRefresher != null) {
+        timelineRefresher.shutdownNow();
+    }
+    if (writeQueue != null) {
+        writeQueue.close();
+    }
+}
+
+/**
+ * @return The group-commit pipeline, for reporting batch sizes and queue wait, or null if group commit is disabled.
+ */
+public GroupCommitQueue<Message, Message> getWriteQueue() {
+    return writeQueue;
+}
+
+/**
+ * @return The message cache, for reporting its hit ratio, coalesced loads and evictions.
+ */
+public LruCache<Integer, Message> getMessageCache() {
+    return messageCache;
+}
+
 }
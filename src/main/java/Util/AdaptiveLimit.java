@@ -0,0 +1,142 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The AdaptiveLimit class caps how many requests may be in flight at once and adjusts the cap from the latency it
+ * observes, in the style of a gradient concurrency limit. It keeps two moving averages of latency, a short one over
+ * the last SHORT_WINDOW requests and a long one over the last LONG_WINDOW. While the short average stays within
+ * TOLERANCE of the long one, the limit grows by a fraction of its square root per request, probing for more
+ * throughput. Once requests start queueing somewhere, the short average rises above the long one and the limit
+ * shrinks in proportion, by at most half of it at a time. A request that ends in a server error shrinks the limit by
+ * BACKOFF straight away.
+ *
+ * The limit only changes while at least half of it is in use, so a lightly loaded route keeps its limit instead of
+ * growing it without evidence. Acquiring and releasing a slot are lock-free; updating the limit takes a short lock.
+ */
+public class AdaptiveLimit {
+    private static final int SHORT_WINDOW = 10;
+    private static final int LONG_WINDOW = 600;
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    /**
+     * Moving averages of latency in nanoseconds and the number of samples seen, guarded by this.
+     */
+    private double shortLatency;
+    private double longLatency;
+    private long samples;
+
+    /**
+     * @param initialLimit The limit before any latency has been observed.
+     * @param minLimit The lowest the limit may shrink to.
+     * @param maxLimit The highest the limit may grow to.
+     */
+    public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("The limits must satisfy 1 <= minLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Takes a slot if fewer requests than the limit are in flight.
+     * @return True/False whether a slot was taken; one that was must be given back with release or cancel.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a slot without learning from it, for a request turned away after its slot was taken.
+     */
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Gives back a slot and adjusts the limit from the request that held it.
+     * @param latencyNanos How long the request took.
+     * @param overloaded True if the request failed in a way that signals overload, such as a server error.
+     */
+    public void release(long latencyNanos, boolean overloaded) {
+        int running = inFlight.getAndDecrement();
+        update(latencyNanos, running, overloaded);
+    }
+
+    private synchronized void update(long latencyNanos, int running, boolean overloaded) {
+        samples++;
+        shortLatency = average(shortLatency, latencyNanos, SHORT_WINDOW);
+        longLatency = average(longLatency, latencyNanos, LONG_WINDOW);
+        if (overloaded) {
+            limit = Math.max(minLimit, limit * BACKOFF);
+            return;
+        }
+        // Once a slowdown is over, bring the long average down quickly so it does not hide the next one
+        if (longLatency > 2 * shortLatency) {
+            longLatency *= 0.95;
+        }
+        if (running < limit / 2 || shortLatency <= 0) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+
+    /**
+     * @return The average updated with the sample: a plain mean over the first window samples, an exponential
+     * moving average after that.
+     */
+    private double average(double average, long sample, int window) {
+        double weight = samples <= window ? 1.0 / samples : 2.0 / (window + 1);
+        return average + (sample - average) * weight;
+    }
+
+    /**
+     * @return The number of requests that may be in flight at once.
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return The number of slots taken and not yet given back.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveLimit{" +
+                "limit=" + getLimit() +
+                ", inFlight=" + getInFlight() +
+                ", minLimit=" + minLimit +
+                ", maxLimit=" + maxLimit +
+                '}';
+    }
+}
@@ -0,0 +1,267 @@
+package Util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The AdmissionController class decides whether a request may go on to the database or is shed at once, so that when
+ * the database saturates the excess requests fail fast instead of queueing up and slowing every route down.
+ *
+ * Each route has an AdaptiveLimit of its own that follows the route's latency. On top of those, the routes share two
+ * fixed budgets, one for reads (GET requests) and one for writes (every other method), so a burst of writes cannot
+ * take the concurrency reads need and the other way round. A request is admitted only when both its route and its
+ * budget have a free slot.
+ */
+public class AdmissionController {
+    /**
+     * The shared budget a route draws from.
+     */
+    public enum Budget {
+        READ, WRITE
+    }
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final long retryAfterSeconds;
+    private final Slots reads;
+    private final Slots writes;
+    private final List<Route> routes = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param initialLimit The limit of a route before its latency has been observed.
+     * @param minLimit The lowest a route's limit may shrink to.
+     * @param readBudget The most read requests admitted at once, over every route.
+     * @param writeBudget The most write requests admitted at once, over every route.
+     * @param retryAfterSeconds The delay shed requests are told to wait before retrying.
+     */
+    public AdmissionController(int initialLimit, int minLimit, int readBudget, int writeBudget,
+            long retryAfterSeconds) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.reads = new Slots(readBudget);
+        this.writes = new Slots(writeBudget);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Creates the controller configured with the socialmedia.admission.* system properties: initialLimit (default
+     * 20), minLimit (4), readBudget (128), writeBudget (64) and retryAfterSeconds (1).
+     * @return The configured controller, or null if socialmedia.admission.enabled is false.
+     */
+    public static AdmissionController configured() {
+        if (!Boolean.parseBoolean(System.getProperty("socialmedia.admission.enabled", "true"))) {
+            return null;
+        }
+        return new AdmissionController(Integer.getInteger("socialmedia.admission.initialLimit", 20),
+                Integer.getInteger("socialmedia.admission.minLimit", 4),
+                Integer.getInteger("socialmedia.admission.readBudget", 128),
+                Integer.getInteger("socialmedia.admission.writeBudget", 64),
+                Long.getLong("socialmedia.admission.retryAfterSeconds", 1));
+    }
+
+    /**
+     * Adds a route whose requests go through admission.
+     * @param method The HTTP method of the route; GET routes draw from the read budget and the others from the write
+     * budget.
+     * @param path The path pattern of the route.
+     * @return The route's admission state.
+     */
+    public Route register(String method, String path) {
+        Budget budget = "GET".equalsIgnoreCase(method) ? Budget.READ : Budget.WRITE;
+        Slots slots = slots(budget);
+        Route route = new Route(method, path, budget, slots,
+                new AdaptiveLimit(initialLimit, Math.min(minLimit, slots.max), slots.max));
+        routes.add(route);
+        return route;
+    }
+
+    private Slots slots(Budget budget) {
+        return budget == Budget.READ ? reads : writes;
+    }
+
+    /**
+     * @return Every route registered so far.
+     */
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * @return The delay, in seconds, to send in the Retry-After header of a shed request.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * @return The most requests the budget admits at once.
+     */
+    public int getBudgetLimit(Budget budget) {
+        return slots(budget).max;
+    }
+
+    /**
+     * @return The requests admitted under the budget and not yet finished.
+     */
+    public int getBudgetInFlight(Budget budget) {
+        return slots(budget).taken.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionController{" +
+                "reads=" + getBudgetInFlight(Budget.READ) + "/" + reads.max +
+                ", writes=" + getBudgetInFlight(Budget.WRITE) + "/" + writes.max +
+                ", routes=" + routes.size() +
+                '}';
+    }
+
+    /**
+     * A fixed number of slots shared by the routes of a budget.
+     */
+    private static final class Slots {
+        private final int max;
+        private final AtomicInteger taken = new AtomicInteger();
+
+        Slots(int max) {
+            if (max < 1) {
+                throw new IllegalArgumentException("A budget needs at least one slot");
+            }
+            this.max = max;
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int current = taken.get();
+                if (current >= max) {
+                    return false;
+                }
+                if (taken.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            taken.decrementAndGet();
+        }
+    }
+
+    /**
+     * The admission state and counters of one route.
+     */
+    public static final class Route {
+        private final String method;
+        private final String path;
+        private final Budget budget;
+        private final Slots slots;
+        private final AdaptiveLimit limit;
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rejectedByLimit = new LongAdder();
+        private final LongAdder rejectedByBudget = new LongAdder();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+
+        private Route(String method, String path, Budget budget, Slots slots, AdaptiveLimit limit) {
+            this.method = method;
+            this.path = path;
+            this.budget = budget;
+            this.slots = slots;
+            this.limit = limit;
+        }
+
+        /**
+         * Admits the request if both the route's limit and its budget have a free slot.
+         * @return True/False whether the request was admitted; an admitted request must be passed to release once it
+         * has finished.
+         */
+        public boolean tryAdmit() {
+            if (!limit.tryAcquire()) {
+                rejectedByLimit.increment();
+                return false;
+            }
+            if (!slots.tryAcquire()) {
+                limit.cancel();
+                rejectedByBudget.increment();
+                return false;
+            }
+            admitted.increment();
+            return true;
+        }
+
+        /**
+         * Records how long an admitted request waited, e.g. for a database executor thread, before its handler
+         * started.
+         * @param admittedAt The System.nanoTime at which the request was admitted.
+         */
+        public void started(long admittedAt) {
+            queueWait.record(System.nanoTime() - admittedAt);
+        }
+
+        /**
+         * Frees the slots of an admitted request and lets the route's limit learn from it. A server error status counts
+         * as a sign of overload.
+         * @param admittedAt The System.nanoTime at which the request was admitted.
+         * @param status The HTTP status the request finished with.
+         */
+        public void release(long admittedAt, int status) {
+            slots.release();
+            limit.release(System.nanoTime() - admittedAt, status >= 500);
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Budget getBudget() {
+            return budget;
+        }
+
+        public AdaptiveLimit getLimit() {
+            return limit;
+        }
+
+        /**
+         * @return The number of requests admitted.
+         */
+        public long getAdmittedCount() {
+            return admitted.sum();
+        }
+
+        /**
+         * @return The number of requests shed because the route was at its limit.
+         */
+        public long getRejectedByLimitCount() {
+            return rejectedByLimit.sum();
+        }
+
+        /**
+         * @return The number of requests shed because the route's budget was used up by every route drawing from it.
+         */
+        public long getRejectedByBudgetCount() {
+            return rejectedByBudget.sum();
+        }
+
+        /**
+         * @return The time admitted requests waited between admission and their handler starting, in nanoseconds.
+         */
+        public LatencyHistogram getQueueWait() {
+            return queueWait;
+        }
+
+        @Override
+        public String toString() {
+            return "Route{" +
+                    "method='" + method + '\'' +
+                    ", path='" + path + '\'' +
+                    ", budget=" + budget +
+                    ", limit=" + limit +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,513 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The ConnectionPool class keeps a bounded set of physical connections open and lends them out to the DAO layer.
+ * Borrowers receive a lightweight handle whose close() method returns the physical connection to the pool instead
+ * of closing it. The pool enforces a maximum size with a fair acquire timeout, evicts connections that sit idle
+ * above the minimum size, validates connections that have been idle before handing them out, and reports the
+ * stack trace of any borrower that holds a connection past the leak detection threshold. Leak detection records
+ * where every connection was borrowed, which costs a stack walk per borrow, so it is meant to be turned on while
+ * hunting a leak rather than left on. Each physical connection
+ * also keeps a StatementCache so repeated prepareStatement calls skip parsing and planning. Acquire waits, statement
+ * executions and commits are recorded in the pool's QueryMetrics.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /**
+     * Connections idle for less than this are handed out without a validation round trip.
+     */
+    private static final long VALIDATION_INTERVAL_MILLIS = 1000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 1000;
+
+    private final DataSource dataSource;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakDetectionThresholdMillis;
+    private final int statementCacheSize;
+    private final QueryMetrics queryMetrics;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireWaitNanos = new LongAdder();
+    private final AtomicLong maxAcquireWaitNanos = new AtomicLong();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder leakCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+
+    /**
+     * @param dataSource The DataSource used to open new physical connections.
+     * @param minSize The number of connections kept open even when idle.
+     * @param maxSize The maximum number of connections open at the same time.
+     * @param acquireTimeoutMillis How long a borrower waits for a free connection before failing.
+     * @param idleTimeoutMillis How long a connection above the minimum size may stay idle before it is closed.
+     * @param leakDetectionThresholdMillis How long a connection may be borrowed before it is reported as a leak,
+     * or 0 to disable leak detection.
+     * @param statementCacheSize The number of prepared statements cached per connection, or 0 to disable caching.
+     * @param queryMetrics Where acquire waits, statements and commits are recorded, or null to not time them.
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+            long idleTimeoutMillis, long leakDetectionThresholdMillis, int statementCacheSize,
+            QueryMetrics queryMetrics) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.queryMetrics = queryMetrics;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_PERIOD_MILLIS,
+                HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none are idle and the pool is below its maximum size.
+     * The caller must close the returned connection to hand it back.
+     * @return A pooled connection handle.
+     * @throws SQLException if the pool is closed, no connection became available within the acquire timeout or a new
+     * one failed to open.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.increment();
+                throw new SQLException("Timed out after " + acquireTimeoutMillis + "ms waiting for a connection ("
+                        + getActiveCount() + " active, " + getWaiterCount() + " waiting)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        long waited = System.nanoTime() - start;
+        acquireCount.increment();
+        acquireWaitNanos.add(waited);
+        maxAcquireWaitNanos.accumulateAndGet(waited, Math::max);
+        if (queryMetrics != null) {
+            queryMetrics.recordAcquire(waited);
+        }
+
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) {
+                pooled = open();
+            }
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowSite = leakDetectionThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.add(pooled);
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the most recently returned idle connection, discarding any that fail validation.
+     */
+    private PooledConnection takeIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pooled.returnedAt < VALIDATION_INTERVAL_MILLIS || pooled.isValid()) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+        return null;
+    }
+
+    private PooledConnection open() throws SQLException {
+        totalConnections.incrementAndGet();
+        try {
+            return new PooledConnection(dataSource.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        pooled.closePhysical();
+    }
+
+    /**
+     * Returns a borrowed connection to the pool, rolling back any open transaction first.
+     */
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        boolean reusable;
+        try {
+            pooled.statements.release();
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            reusable = !pooled.physical.isClosed();
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        if (reusable && !closed) {
+            pooled.returnedAt = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+            // The pool may have been closed while the connection was being returned
+            if (closed) {
+                closeIdle();
+            }
+        } else {
+            discard(pooled);
+        }
+        permits.release();
+    }
+
+    /**
+     * Periodic maintenance: closes connections idle past the idle timeout while above the minimum size, tops the pool
+     * back up to its minimum size and reports connections borrowed for longer than the leak detection threshold.
+     */
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        try {
+            PooledConnection oldest;
+            while (totalConnections.get() > minSize && (oldest = idle.peekLast()) != null
+                    && now - oldest.returnedAt > idleTimeoutMillis) {
+                if (idle.removeLastOccurrence(oldest)) {
+                    evictionCount.increment();
+                    discard(oldest);
+                }
+            }
+
+            while (!closed && totalConnections.get() < minSize && permits.tryAcquire()) {
+                try {
+                    PooledConnection pooled = open();
+                    pooled.returnedAt = now;
+                    idle.offerLast(pooled);
+                } finally {
+                    permits.release();
+                }
+            }
+
+            if (leakDetectionThresholdMillis > 0) {
+                for (PooledConnection pooled : borrowed) {
+                    if (!pooled.leakReported && now - pooled.borrowedAt > leakDetectionThresholdMillis) {
+                        pooled.leakReported = true;
+                        leakCount.increment();
+                        log.warn("Connection held for " + (now - pooled.borrowedAt)
+                                + "ms without being closed, possible leak", pooled.borrowSite);
+                    }
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Connection pool housekeeping failed", e);
+        }
+    }
+
+    /**
+     * Stops the housekeeper and closes every idle connection. Connections still borrowed are closed as they are
+     * returned, and borrowing fails from now on.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        closeIdle();
+    }
+
+    private void closeIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    /**
+     * @return True/False whether close has been called.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return The number of connections currently borrowed.
+     */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * @return The number of open connections waiting in the pool.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return The number of physical connections currently open.
+     */
+    public int getTotalCount() {
+        return totalConnections.get();
+    }
+
+    /**
+     * @return An estimate of the number of threads waiting to borrow a connection.
+     */
+    public int getWaiterCount() {
+        return permits.getQueueLength();
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of connections successfully borrowed since the pool was created.
+     */
+    public long getAcquireCount() {
+        return acquireCount.sum();
+    }
+
+    /**
+     * @return The total time borrowers spent waiting for a connection, in milliseconds.
+     */
+    public long getTotalAcquireWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(acquireWaitNanos.sum());
+    }
+
+    /**
+     * @return The longest time a single borrower waited for a connection, in milliseconds.
+     */
+    public long getMaxAcquireWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxAcquireWaitNanos.get());
+    }
+
+    /**
+     * @return The number of borrow attempts that failed with an acquire timeout.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /**
+     * @return The number of borrowed connections reported as possible leaks.
+     */
+    public long getLeakCount() {
+        return leakCount.sum();
+    }
+
+    /**
+     * @return The number of connections closed for sitting idle past the idle timeout.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return The number of prepareStatement calls served from a connection's statement cache.
+     */
+    public long getStatementCacheHitCount() {
+        return statementHits.sum();
+    }
+
+    /**
+     * @return The number of prepareStatement calls that had to prepare a new statement.
+     */
+    public long getStatementCacheMissCount() {
+        return statementMisses.sum();
+    }
+
+    /**
+     * @return The statement timings and acquire waits recorded by the pool, or null if it does not time them.
+     */
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    /**
+     * @return The number of cached statements closed to make room for others.
+     */
+    public long getStatementCacheEvictionCount() {
+        return statementEvictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "active=" + getActiveCount() +
+                ", idle=" + getIdleCount() +
+                ", total=" + getTotalCount() +
+                ", waiters=" + getWaiterCount() +
+                ", acquired=" + getAcquireCount() +
+                ", totalWaitMillis=" + getTotalAcquireWaitMillis() +
+                ", maxWaitMillis=" + getMaxAcquireWaitMillis() +
+                ", timeouts=" + getTimeoutCount() +
+                ", leaks=" + getLeakCount() +
+                ", statementHits=" + getStatementCacheHitCount() +
+                ", statementMisses=" + getStatementCacheMissCount() +
+                '}';
+    }
+
+    /**
+     * A physical connection owned by the pool, along with the bookkeeping needed for eviction and leak detection.
+     */
+    private class PooledConnection {
+        final Connection physical;
+        final StatementCache statements;
+        volatile long borrowedAt;
+        volatile long returnedAt;
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = new StatementCache(statementCacheSize, statementHits, statementMisses,
+                    statementEvictions, queryMetrics);
+        }
+
+        boolean isValid() {
+            try {
+                return physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void closePhysical() {
+            try {
+                statements.closeAll();
+                physical.close();
+            } catch (SQLException e) {
+                log.warn("Failed to close a pooled connection", e);
+            }
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Handle(this));
+        }
+    }
+
+    /**
+     * The view of a pooled connection given to a single borrower. Closing it returns the physical connection to the
+     * pool exactly once; any further use of the handle fails as if the connection were closed.
+     */
+    private class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        /**
+         * Set by the first close, which may come from any thread the handle was passed to.
+         */
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (closed.compareAndSet(false, true)) {
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed.get() || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + (closed.get() ? ", closed]" : "]");
+                default:
+                    break;
+            }
+            if (closed.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (method.getName().equals("prepareStatement") && args.length <= 2
+                    && (args.length == 1 || args[1] instanceof Integer)) {
+                int autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                return pooled.statements.prepare(pooled.physical, (Connection) proxy, (String) args[0],
+                        autoGeneratedKeys);
+            }
+            if (queryMetrics != null && method.getName().equals("commit")) {
+                return timeCommit(method, args);
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * Commits and records the commit as a statement, since a transaction's writes may only reach the disk then.
+         */
+        private Object timeCommit(Method method, Object[] args) throws Throwable {
+            QueryMetrics.Shape shape = queryMetrics.shapeOf("COMMIT");
+            long start = System.nanoTime();
+            try {
+                Object result = method.invoke(pooled.physical, args);
+                queryMetrics.record(shape, System.nanoTime() - start, 0, false, null, 0, 0);
+                return result;
+            } catch (InvocationTargetException e) {
+                queryMetrics.record(shape, System.nanoTime() - start, 0, true, null, 0, 0);
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
@@ -13,15 +14,23 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are borrowed from a bounded ConnectionPool and must be closed by
+ * the caller so they can be returned to the pool.
  */
 public class ConnectionUtil {
 
 	/**
 	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * will represent a file location to store the data. With the in-memory storage
+	 * engine (-Dsocialmedia.storage=memory) the database only seeds the repositories,
+	 * so it is kept in memory as well and nothing is written to disk. Either default
+	 * can be replaced with the socialmedia.db.url system property, e.g. to give the
+	 * benchmarks a database of their own.
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = System.getProperty("socialmedia.db.url",
+			"memory".equalsIgnoreCase(System.getProperty("socialmedia.storage"))
+					? "jdbc:h2:mem:socialmedia;DB_CLOSE_DELAY=-1"
+					: "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,21 +41,48 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource used by the pool to open new physical connections.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static JdbcDataSource dataSource = new JdbcDataSource();
+
+	/**
+	 * Bounded pool of connections shared by every DAO. The sizing and timeouts can
+	 * be tuned with the socialmedia.pool.* system properties. Leak detection records
+	 * a stack trace on every borrow, so it is off unless
+	 * socialmedia.pool.leakDetectionThresholdMillis is set. Statement timing and
+	 * the slow query log are configured with the socialmedia.db.* system properties.
+	 */
+	private static ConnectionPool pool;
+
+	/**
+	 * Rows of the test tables right after the sql script ran, restored by
+	 * resetTestDatabase. Null until the first reset.
+	 */
+	private static DatabaseSnapshot testSnapshot;
 
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+
+		pool = new ConnectionPool(dataSource,
+				Integer.getInteger("socialmedia.pool.minSize", 2),
+				Integer.getInteger("socialmedia.pool.maxSize", 10),
+				Long.getLong("socialmedia.pool.acquireTimeoutMillis", 5000),
+				Long.getLong("socialmedia.pool.idleTimeoutMillis", 600000),
+				Long.getLong("socialmedia.pool.leakDetectionThresholdMillis", 0),
+				Integer.getInteger("socialmedia.pool.statementCacheSize", 64),
+				Boolean.parseBoolean(System.getProperty("socialmedia.db.instrument", "true"))
+						? new QueryMetrics(Long.getLong("socialmedia.db.slowQueryMillis", 200),
+								Arrays.asList(System.getProperty("socialmedia.db.redactColumns", "password").split(",")))
+						: null);
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database, which must be closed to return it to the pool
 	 */
 	public static Connection getConnection() {
 		try {
@@ -58,17 +94,51 @@ public class ConnectionUtil {
 		return null;
 	}
 
+	/**
+	 * @return the pool backing getConnection(), for reporting its statistics
+	 */
+	public static ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Closes the pool and its housekeeper thread, e.g. once the server has stopped.
+	 * Later calls to getConnection fail.
+	 */
+	public static void shutdown() {
+		pool.close();
+	}
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
-	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * tables to keep it consistent across all tests. The first reset reads the sql
+	 * file in resources, applies the schema migrations again to restore the indexes,
+	 * and keeps a snapshot of the resulting rows. Later resets restore that snapshot
+	 * instead, which keeps resetting before every test cheap; if the tables no longer
+	 * match it, the script is run again.
 	 */
-	public static void resetTestDatabase() {
-		try {
+	public static synchronized void resetTestDatabase() {
+		if (testSnapshot != null) {
+			try (Connection connection = getConnection()) {
+				testSnapshot.restore(connection);
+				return;
+			} catch (SQLException e) {
+				testSnapshot = null;
+			}
+		}
+
+		try (Connection connection = getConnection()) {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			RunScript.execute(connection, sqlReader);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
 		}
+		SchemaMigrator.reapply();
+
+		try (Connection connection = getConnection()) {
+			testSnapshot = DatabaseSnapshot.capture(connection, "account", "message");
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
 	}
 }
@@ -0,0 +1,254 @@
+package Util;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The DatabaseExecutor class decides where request work that blocks on the database runs, so a storm of slow queries
+ * cannot take every request thread with it. It has three modes:
+ *
+ * - blocking: the work runs on the calling request thread, as if there were no executor.
+ * - async: the work runs on a fixed pool of threads with a bounded queue. When the queue is full, submit fails
+ *   straight away, so the caller can shed the request instead of letting it wait.
+ * - virtual: every task gets a virtual thread of its own. Virtual threads only exist from Java 21, so they are
+ *   looked up reflectively, and on older runtimes this mode falls back to async.
+ *
+ * In the async and virtual modes at most maxConcurrency tasks run at once. In the virtual mode, tasks over that limit
+ * wait for a slot without holding a platform thread, and the queue capacity still bounds how many may wait.
+ */
+public class DatabaseExecutor implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseExecutor.class);
+
+    /**
+     * Where submitted work runs.
+     */
+    public enum Mode {
+        BLOCKING, ASYNC, VIRTUAL
+    }
+
+    private final Mode mode;
+    private final ExecutorService executor;
+    private final int maxConcurrency;
+    private final int queueCapacity;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    /**
+     * Limits concurrently running tasks in the virtual mode, where the executor itself has no limit.
+     */
+    private final Semaphore permits;
+
+    /**
+     * @param mode Where submitted work runs.
+     * @param maxConcurrency The most tasks running at once in the async and virtual modes.
+     * @param queueCapacity The most tasks waiting to run before submit rejects new ones.
+     */
+    public DatabaseExecutor(Mode mode, int maxConcurrency, int queueCapacity) {
+        ExecutorService virtual = mode == Mode.VIRTUAL ? newVirtualThreadExecutor() : null;
+        if (mode == Mode.VIRTUAL && virtual == null) {
+            logger.warn("Virtual threads are not available on Java " + Runtime.version().feature()
+                    + ", using the async executor instead");
+            mode = Mode.ASYNC;
+        }
+        this.mode = mode;
+        this.maxConcurrency = maxConcurrency;
+        this.queueCapacity = queueCapacity;
+        if (mode == Mode.ASYNC) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                        Thread thread = new Thread(runnable, "db-executor-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+            this.permits = null;
+        } else {
+            this.executor = virtual;
+            this.permits = mode == Mode.VIRTUAL ? new Semaphore(maxConcurrency) : null;
+        }
+    }
+
+    /**
+     * Creates the executor configured with the socialmedia.execution system property (blocking, async or virtual;
+     * default blocking), socialmedia.execution.threads (default 16) and socialmedia.execution.queueCapacity (default
+     * 1000).
+     * @return The configured executor.
+     */
+    public static DatabaseExecutor configured() {
+        String name = System.getProperty("socialmedia.execution", "blocking");
+        Mode mode;
+        try {
+            mode = Mode.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown execution mode " + name + ", expected blocking, async or "
+                    + "virtual");
+        }
+        return new DatabaseExecutor(mode, Integer.getInteger("socialmedia.execution.threads", 16),
+                Integer.getInteger("socialmedia.execution.queueCapacity", 1000));
+    }
+
+    /**
+     * @return Executors.newVirtualThreadPerTaskExecutor() if the runtime has it, otherwise null.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return True/False whether submitted work runs on the calling thread, in which case callers should simply run
+     * it themselves.
+     */
+    public boolean isInline() {
+        return executor == null;
+    }
+
+    /**
+     * Runs the task according to the mode.
+     * @param task The work to run.
+     * @return A future completed with the task's result, or exceptionally with what it threw.
+     * @throws RejectedExecutionException if the queue is full or the executor has been closed.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        if (executor == null) {
+            return call(task);
+        }
+        if (waiting.incrementAndGet() > queueCapacity) {
+            waiting.decrementAndGet();
+            rejections.increment();
+            throw new RejectedExecutionException("Database executor queue is full");
+        }
+        long submittedAt = System.nanoTime();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> run(task, future, submittedAt));
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            rejections.increment();
+            throw e;
+        }
+        return future;
+    }
+
+    private <T> void run(Callable<T> task, CompletableFuture<T> future, long submittedAt) {
+        if (permits != null) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                waiting.decrementAndGet();
+                future.completeExceptionally(e);
+                return;
+            }
+        }
+        waiting.decrementAndGet();
+        queueWait.record(System.nanoTime() - submittedAt);
+        running.incrementAndGet();
+        try {
+            future.complete(task.call());
+        } catch (Exception | Error e) {
+            future.completeExceptionally(e);
+        } finally {
+            running.decrementAndGet();
+            completed.increment();
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    private static <T> CompletableFuture<T> call(Callable<T> task) {
+        try {
+            return CompletableFuture.completedFuture(task.call());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Stops accepting work; tasks already submitted still run.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return The number of tasks submitted but not yet started.
+     */
+    public int getQueueDepth() {
+        return Math.max(0, waiting.get());
+    }
+
+    /**
+     * @return The number of tasks running.
+     */
+    public int getActiveCount() {
+        return running.get();
+    }
+
+    /**
+     * @return The number of tasks that have finished, successfully or not.
+     */
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    /**
+     * @return The number of tasks turned away because the queue was full.
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * @return The time tasks waited between submit and starting to run, in nanoseconds.
+     */
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseExecutor{" +
+                "mode=" + mode +
+                ", maxConcurrency=" + maxConcurrency +
+                ", queueDepth=" + getQueueDepth() +
+                ", active=" + getActiveCount() +
+                ", rejections=" + getRejectionCount() +
+                '}';
+    }
+}
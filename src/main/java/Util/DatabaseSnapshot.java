@@ -0,0 +1,155 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The DatabaseSnapshot class keeps a copy of the rows of some tables in memory, along with the next value of each
+ * table's identity column, and can put the tables back into exactly that state. Restoring deletes and reinserts the
+ * rows in one transaction, which is much cheaper than dropping and recreating the tables from a script and leaves
+ * their indexes and triggers in place.
+ */
+public class DatabaseSnapshot {
+    private final List<TableRows> tables;
+
+    private DatabaseSnapshot(List<TableRows> tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * Copies the current rows of the tables.
+     * @param connection The connection to read the tables with.
+     * @param tableNames The tables to copy, with every table listed before the tables whose foreign keys reference it.
+     * @return The snapshot of the tables.
+     * @throws SQLException if a table cannot be read.
+     */
+    public static DatabaseSnapshot capture(Connection connection, String... tableNames) throws SQLException {
+        List<TableRows> tables = new ArrayList<>(tableNames.length);
+        for (String table : tableNames) {
+            tables.add(TableRows.capture(connection, table));
+        }
+        return new DatabaseSnapshot(tables);
+    }
+
+    /**
+     * Replaces the rows of the tables with the ones captured, and restarts their identity columns where they were.
+     * @param connection The connection to write the tables with; its auto-commit mode is restored afterwards.
+     * @throws SQLException if a table no longer matches the snapshot, in which case the rows are left unchanged.
+     */
+    public void restore(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try (Statement statement = connection.createStatement()) {
+                for (int i = tables.size() - 1; i >= 0; i--) {
+                    statement.executeUpdate("DELETE FROM " + tables.get(i).table);
+                }
+            }
+            for (TableRows table : tables) {
+                table.insert(connection);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        // DDL commits on its own in H2, so identities are restarted once the rows are in
+        for (TableRows table : tables) {
+            table.restartIdentity(connection);
+        }
+    }
+
+    /**
+     * The rows of one table and the next value of its identity column.
+     */
+    private static final class TableRows {
+        private final String table;
+        private final String[] columns;
+        private final List<Object[]> rows;
+        private final String identityColumn;
+        private final long identityBase;
+
+        private TableRows(String table, String[] columns, List<Object[]> rows, String identityColumn,
+                long identityBase) {
+            this.table = table;
+            this.columns = columns;
+            this.rows = rows;
+            this.identityColumn = identityColumn;
+            this.identityBase = identityBase;
+        }
+
+        static TableRows capture(Connection connection, String table) throws SQLException {
+            String[] columns;
+            List<Object[]> rows = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                    ResultSet rs = statement.executeQuery("SELECT * FROM " + table)) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                columns = new String[metaData.getColumnCount()];
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c] = metaData.getColumnName(c + 1);
+                }
+                while (rs.next()) {
+                    Object[] row = new Object[columns.length];
+                    for (int c = 0; c < columns.length; c++) {
+                        row[c] = rs.getObject(c + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+
+            String identityColumn = null;
+            long identityBase = 0;
+            try (PreparedStatement ps = connection.prepareStatement("SELECT COLUMN_NAME, IDENTITY_BASE "
+                    + "FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = ? AND IS_IDENTITY = 'YES'")) {
+                ps.setString(1, table.toUpperCase(Locale.ROOT));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        identityColumn = rs.getString(1);
+                        identityBase = rs.getLong(2);
+                    }
+                }
+            }
+            return new TableRows(table, columns, rows, identityColumn, identityBase);
+        }
+
+        void insert(Connection connection) throws SQLException {
+            if (rows.isEmpty()) {
+                return;
+            }
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (")
+                    .append(String.join(", ", columns)).append(") VALUES (");
+            for (int c = 0; c < columns.length; c++) {
+                sql.append(c == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+            try (PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+                for (Object[] row : rows) {
+                    for (int c = 0; c < row.length; c++) {
+                        ps.setObject(c + 1, row[c]);
+                    }
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+
+        void restartIdentity(Connection connection) throws SQLException {
+            if (identityColumn == null) {
+                return;
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ALTER TABLE " + table + " ALTER COLUMN " + identityColumn + " RESTART WITH "
+                        + identityBase);
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The DatasetGenerator class bulk-loads synthetic accounts and messages into the account and message tables, for
+ * reproducing production volumes locally. The same seed and settings always produce the same rows.
+ *
+ * Accounts are named user{account_id} with the password password{account_id} and are appended after the accounts
+ * already in the table. How many messages an account posts follows a Zipf distribution over the new accounts: with
+ * exponent s, the k-th new account posts in proportion to 1/k^s, so a few accounts post most messages. An exponent of
+ * 0 spreads messages evenly. Message texts are made of words, with lengths drawn from a log-normal distribution
+ * (median about 60 characters) capped at the 254 characters MessageService accepts. Posting times increase from
+ * a fixed epoch by random gaps.
+ *
+ * Rows are streamed into reused prepared statements in large JDBC batches and committed every COMMIT_ROWS rows, so
+ * memory use does not grow with the size of the dataset. Run it against the configured database with
+ *
+ *     mvn compile exec:java -Dexec.mainClass=Util.DatasetGenerator -Dexec.args="accounts=100000 messages=50000000"
+ *
+ * Other arguments are zipf (default 1.1), seed (default 42) and reset (default false; true runs the test script
+ * first, leaving only its single account and message).
+ */
+public class DatasetGenerator {
+    private static final Logger log = LoggerFactory.getLogger(DatasetGenerator.class);
+
+    private static final int BATCH_ROWS = 5000;
+    private static final int COMMIT_ROWS = 100000;
+    private static final int MAX_TEXT_LENGTH = 254;
+    private static final long FIRST_EPOCH = 1669947792L;
+    /**
+     * Secondary indexes on message created by the V2 migration, dropped during the load and rebuilt by reapplying
+     * the migrations.
+     */
+    private static final String[] DEFERRED_INDEXES = {"message_posted_by_time_idx", "message_time_idx"};
+    private static final String[] WORDS = {
+        "the", "a", "to", "and", "of", "in", "is", "it", "for", "on", "my", "just", "so", "this", "that", "with",
+        "today", "new", "post", "coffee", "weekend", "finally", "love", "great", "morning", "night", "work", "team",
+        "game", "music", "photo", "friends", "city", "trip", "release", "update", "thanks", "everyone", "really",
+        "never", "always", "again", "about", "what", "happened", "tomorrow", "launch", "blog", "code", "bug", "fixed",
+        "deploy", "weather", "rain", "sunny", "train", "late", "dinner", "lunch", "book", "movie", "watching",
+        "reading", "learning", "java", "database", "server", "latency", "cache", "queue", "happy", "tired", "excited",
+    };
+
+    private final long seed;
+    private final double zipfExponent;
+
+    /**
+     * @param seed The seed of every random choice; the same seed produces the same rows.
+     * @param zipfExponent The skew of messages over accounts, 0 for none; 1 to 1.2 resembles real posting activity.
+     */
+    public DatasetGenerator(long seed, double zipfExponent) {
+        if (zipfExponent < 0) {
+            throw new IllegalArgumentException("The Zipf exponent cannot be negative");
+        }
+        this.seed = seed;
+        this.zipfExponent = zipfExponent;
+    }
+
+    /**
+     * Appends the accounts and then the messages to the tables of the configured database. While messages are
+     * loaded, the secondary message indexes are dropped and the foreign key on posted_by is not checked; the indexes
+     * are rebuilt from the schema migrations afterwards, which is several times faster than maintaining them row by
+     * row. Readers of the database see no indexes in the meantime, so this is meant for offline use.
+     * @param accounts The number of accounts to add.
+     * @param messages The number of messages to add, posted by the new accounts.
+     * @throws SQLException if inserting fails; rows committed before the failure are kept.
+     */
+    public void generate(int accounts, long messages) throws SQLException {
+        if (accounts < 1 && messages > 0) {
+            throw new IllegalArgumentException("Messages need at least one account to post them");
+        }
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            int firstAccountId = nextId(connection, "account", "account_id");
+            long start = System.nanoTime();
+            insertAccounts(connection, firstAccountId, accounts);
+            log.info("Inserted " + accounts + " accounts in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+            start = System.nanoTime();
+            try (Statement statement = connection.createStatement()) {
+                for (String index : DEFERRED_INDEXES) {
+                    statement.execute("DROP INDEX IF EXISTS " + index);
+                }
+                // Every posted_by is one of the accounts just inserted
+                statement.execute("ALTER TABLE message SET REFERENTIAL_INTEGRITY FALSE");
+                try {
+                    insertMessages(connection, firstAccountId, accounts, messages);
+                } finally {
+                    statement.execute("ALTER TABLE message SET REFERENTIAL_INTEGRITY TRUE NOCHECK");
+                }
+            }
+            long millis = (System.nanoTime() - start) / 1000000;
+            log.info("Inserted " + messages + " messages in " + millis + " ms ("
+                    + messages * 1000 / Math.max(1, millis) + " rows/s)");
+        } finally {
+            long start = System.nanoTime();
+            SchemaMigrator.reapply();
+            log.info("Rebuilt message indexes in " + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+    }
+
+    private static int nextId(Connection connection, String table, String column) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(" + column + "), 0) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1) + 1;
+        }
+    }
+
+    private void insertAccounts(Connection connection, int firstAccountId, int accounts) throws SQLException {
+        String sql = "INSERT INTO account (account_id, username, password) VALUES (?, ?, ?)";
+        connection.setAutoCommit(false);
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (int i = 0; i < accounts; i++) {
+                int id = firstAccountId + i;
+                ps.setInt(1, id);
+                ps.setString(2, "user" + id);
+                ps.setString(3, "password" + id);
+                ps.addBatch();
+                flush(connection, ps, i + 1);
+            }
+            ps.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        // The ids were given explicitly, so move the identity past them
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE account ALTER COLUMN account_id RESTART WITH "
+                    + (firstAccountId + accounts));
+        }
+    }
+
+    private void insertMessages(Connection connection, int firstAccountId, int accounts, long messages)
+            throws SQLException {
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+        SplittableRandom random = new SplittableRandom(seed);
+        ZipfSampler posters = new ZipfSampler(accounts, zipfExponent);
+        StringBuilder text = new StringBuilder(MAX_TEXT_LENGTH + 16);
+        long time = FIRST_EPOCH;
+        connection.setAutoCommit(false);
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (long i = 0; i < messages; i++) {
+                time += random.nextInt(30);
+                ps.setInt(1, firstAccountId + posters.sample(random) - 1);
+                ps.setString(2, messageText(random, text));
+                ps.setLong(3, time);
+                ps.addBatch();
+                flush(connection, ps, i + 1);
+                if ((i + 1) % 1000000 == 0) {
+                    log.info("Inserted " + (i + 1) + " of " + messages + " messages");
+                }
+            }
+            ps.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void flush(Connection connection, PreparedStatement ps, long rows) throws SQLException {
+        if (rows % BATCH_ROWS == 0) {
+            ps.executeBatch();
+        }
+        if (rows % COMMIT_ROWS == 0) {
+            connection.commit();
+        }
+    }
+
+    /**
+     * @return A text of whole words whose length is log-normally distributed, at most MAX_TEXT_LENGTH characters.
+     */
+    private static String messageText(SplittableRandom random, StringBuilder text) {
+        double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble()))
+                * Math.cos(2 * Math.PI * random.nextDouble());
+        int length = (int) Math.max(3, Math.min(MAX_TEXT_LENGTH, Math.round(Math.exp(4.1 + 0.7 * gaussian))));
+        text.setLength(0);
+        while (text.length() < length) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+
+    /**
+     * Draws ranks from 1 to n with probability proportional to 1/rank^exponent in constant time, using the rejection
+     * inversion method of Hormann and Derflinger.
+     */
+    static final class ZipfSampler {
+        private final int n;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+
+        ZipfSampler(int n, double exponent) {
+            this.n = n;
+            this.exponent = exponent;
+            this.hIntegralX1 = hIntegral(1.5) - 1;
+            this.hIntegralN = hIntegral(n + 0.5);
+            this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        int sample(SplittableRandom random) {
+            if (exponent == 0) {
+                return 1 + random.nextInt(n);
+            }
+            while (true) {
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) Math.max(1, Math.min(n, x + 0.5));
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = Math.max(-1, x * (1 - exponent));
+            return Math.exp(helper1(t) * x);
+        }
+
+        /**
+         * @return log(1 + x) / x, accurate near 0.
+         */
+        private static double helper1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        /**
+         * @return (exp(x) - 1) / x, accurate near 0.
+         */
+        private static double helper2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        // Loading batches would otherwise be logged as slow queries
+        if (System.getProperty("socialmedia.db.slowQueryMillis") == null) {
+            System.setProperty("socialmedia.db.slowQueryMillis", "-1");
+        }
+
+        if (Boolean.parseBoolean(options.getOrDefault("reset", "false"))) {
+            ConnectionUtil.resetTestDatabase();
+        } else {
+            SchemaMigrator.migrate();
+        }
+        DatasetGenerator generator = new DatasetGenerator(Long.parseLong(options.getOrDefault("seed", "42")),
+                Double.parseDouble(options.getOrDefault("zipf", "1.1")));
+        generator.generate(Integer.parseInt(options.getOrDefault("accounts", "1000")),
+                Long.parseLong(options.getOrDefault("messages", "100000")));
+    }
+}
@@ -0,0 +1,299 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The GroupCommitQueue class funnels concurrent writes through a single writer thread that stores them in batches, so
+ * many callers share the cost of one transaction. Callers submit an item to a bounded queue and get a future back.
+ * The writer takes the first waiting item, then keeps collecting until the batch is full or the linger time since
+ * that first item has passed, and hands the whole batch to the batch writer. Each future completes only once the
+ * batch holding its item has been stored.
+ *
+ * If the batch writer fails, the items of that batch are retried one at a time with the single writer, so one bad item
+ * does not fail the others.
+ * @param <T> The type of item written.
+ * @param <R> The type of result returned for each item.
+ */
+public class GroupCommitQueue<T, R> implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitQueue.class);
+
+    private final BlockingQueue<Pending<T, R>> queue;
+    private final Function<List<T>, List<R>> batchWriter;
+    private final Function<T, R> singleWriter;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final long enqueueTimeoutNanos;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final AtomicLong maxBatch = new AtomicLong();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+
+    /**
+     * Starts the writer thread.
+     * @param name The name of the writer thread.
+     * @param batchWriter Stores a batch of items atomically and returns their results in the same order, or null if
+     * nothing was stored.
+     * @param singleWriter Stores one item; used when a batch fails.
+     * @param queueCapacity The maximum number of items waiting for the writer.
+     * @param maxBatchSize The maximum number of items stored together.
+     * @param maxLingerMicros How long the writer waits for more items after the first one of a batch, or 0 to only
+     * take what is already queued.
+     * @param enqueueTimeoutMillis How long submit waits for room in a full queue before giving up.
+     */
+    public GroupCommitQueue(String name, Function<List<T>, List<R>> batchWriter, Function<T, R> singleWriter,
+            int queueCapacity, int maxBatchSize, long maxLingerMicros, long enqueueTimeoutMillis) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchWriter = batchWriter;
+        this.singleWriter = singleWriter;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = TimeUnit.MICROSECONDS.toNanos(maxLingerMicros);
+        this.enqueueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(enqueueTimeoutMillis);
+        this.writer = new Thread(this::run, name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues an item for the writer, waiting up to the enqueue timeout while the queue is full.
+     * @param item The item to store.
+     * @return A future completed with the item's result once its batch has been stored.
+     * @throws RejectedExecutionException if the queue stayed full or the queue has been closed.
+     */
+    public CompletableFuture<R> submit(T item) {
+        if (closed) {
+            throw new RejectedExecutionException("Write queue is closed");
+        }
+        Pending<T, R> pending = new Pending<>(item, System.nanoTime());
+        try {
+            if (!queue.offer(pending, enqueueTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                rejections.increment();
+                throw new RejectedExecutionException("Write queue is full");
+            }
+            // close() may have drained the queue between the check above and the offer
+            if (closed && queue.remove(pending)) {
+                throw new RejectedExecutionException("Write queue is closed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the write queue", e);
+        }
+        return pending.future;
+    }
+
+    private void run() {
+        List<Pending<T, R>> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending<T, R> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch, first.enqueuedAt);
+                write(batch);
+            } catch (InterruptedException e) {
+                if (!closed) {
+                    logger.warn("Write queue writer interrupted", e);
+                }
+            } catch (RuntimeException | Error e) {
+                logger.error("Write queue writer failed", e);
+                for (Pending<T, R> pending : batch) {
+                    pending.future.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Adds waiting items to the batch until it is full or the linger time has passed.
+     */
+    private void collect(List<Pending<T, R>> batch, long firstEnqueuedAt) throws InterruptedException {
+        long deadline = firstEnqueuedAt + maxLingerNanos;
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                return;
+            }
+            Pending<T, R> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void write(List<Pending<T, R>> batch) {
+        long startedAt = System.nanoTime();
+        for (Pending<T, R> pending : batch) {
+            long waited = startedAt - pending.enqueuedAt;
+            queueWaitNanos.add(waited);
+            maxQueueWaitNanos.accumulateAndGet(waited, Math::max);
+        }
+        batches.increment();
+        items.add(batch.size());
+        maxBatch.accumulateAndGet(batch.size(), Math::max);
+
+        List<T> values = new ArrayList<>(batch.size());
+        for (Pending<T, R> pending : batch) {
+            values.add(pending.item);
+        }
+
+        List<R> results = null;
+        try {
+            results = batchWriter.apply(values);
+        } catch (RuntimeException e) {
+            logger.warn("Batch write of {} items failed, retrying them one at a time", batch.size(), e);
+        }
+        if (results != null && results.size() == batch.size()) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(results.get(i));
+            }
+            return;
+        }
+
+        fallbacks.increment();
+        for (Pending<T, R> pending : batch) {
+            try {
+                pending.future.complete(singleWriter.apply(pending.item));
+            } catch (RuntimeException e) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting items, waits for the writer to store everything already queued, then stops it.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending<T, R> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new RejectedExecutionException("Write queue is closed"));
+        }
+    }
+
+    /**
+     * @return The number of items waiting for the writer.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return The number of batches written.
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return The number of items written.
+     */
+    public long getItemCount() {
+        return items.sum();
+    }
+
+    /**
+     * @return The mean number of items per batch, or 0 if no batch has been written.
+     */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0.0 : (double) items.sum() / count;
+    }
+
+    /**
+     * @return The largest batch written.
+     */
+    public long getMaxBatchSize() {
+        return maxBatch.get();
+    }
+
+    /**
+     * @return The total time items spent in the queue before their batch started, in nanoseconds.
+     */
+    public long getTotalQueueWaitNanos() {
+        return queueWaitNanos.sum();
+    }
+
+    /**
+     * @return The mean time an item spent in the queue before its batch started, in microseconds.
+     */
+    public double getAverageQueueWaitMicros() {
+        long count = items.sum();
+        return count == 0 ? 0.0 : queueWaitNanos.sum() / 1000.0 / count;
+    }
+
+    /**
+     * @return The longest time an item spent in the queue before its batch started, in microseconds.
+     */
+    public long getMaxQueueWaitMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxQueueWaitNanos.get());
+    }
+
+    /**
+     * @return The number of batches that failed and were retried one item at a time.
+     */
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * @return The number of items refused because the queue stayed full.
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "GroupCommitQueue{" +
+                "queueDepth=" + getQueueDepth() +
+                ", batches=" + getBatchCount() +
+                ", items=" + getItemCount() +
+                ", averageBatchSize=" + getAverageBatchSize() +
+                ", maxBatchSize=" + getMaxBatchSize() +
+                ", averageQueueWaitMicros=" + getAverageQueueWaitMicros() +
+                ", maxQueueWaitMicros=" + getMaxQueueWaitMicros() +
+                ", fallbacks=" + getFallbackCount() +
+                ", rejections=" + getRejectionCount() +
+                '}';
+    }
+
+    private static final class Pending<T, R> {
+        final T item;
+        final long enqueuedAt;
+        final CompletableFuture<R> future = new CompletableFuture<>();
+
+        Pending(T item, long enqueuedAt) {
+            this.item = item;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class records durations in nanoseconds into log-linear buckets, in the style of an HDR
+ * histogram. Durations below 128ns get a bucket each; above that, every power of two is split into 64 equal buckets,
+ * so a reported percentile is never more than about 1.6% below the true value. Durations up to 2^40ns (about 18
+ * minutes) are tracked, and longer ones are counted in the last bucket.
+ *
+ * Recording is lock-free and allocation-free: it increments one slot of a preallocated array and updates the count,
+ * sum and maximum with atomic operations. Reading percentiles walks the buckets without stopping writers, so a
+ * snapshot taken under load may be off by the few values recorded while it was being read.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << (SUB_BUCKET_BITS - 1);
+    private static final int MAX_MAGNITUDE = 40;
+    private static final long MAX_TRACKABLE_NANOS = (1L << MAX_MAGNITUDE) - 1;
+    private static final int BUCKET_COUNT = indexOf(MAX_TRACKABLE_NANOS) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one duration.
+     * @param nanos The duration in nanoseconds; negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(indexOf(Math.min(value, MAX_TRACKABLE_NANOS)));
+        count.increment();
+        sumNanos.add(value);
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * @param value A duration no longer than MAX_TRACKABLE_NANOS.
+     * @return The bucket holding it. Values below 128 map to themselves; above that, the top seven bits of the value
+     * and its power of two select the bucket.
+     */
+    private static int indexOf(long value) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(value | 1);
+        if (magnitude < SUB_BUCKET_BITS) {
+            return (int) value;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS + 1;
+        return (shift << (SUB_BUCKET_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return The largest duration that falls in the bucket, so percentiles are reported conservatively.
+     */
+    private static long highestValueIn(int index) {
+        if (index < 2 * SUB_BUCKET_HALF_COUNT) {
+            return index;
+        }
+        int shift = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        long subBucket = index - ((long) shift << (SUB_BUCKET_BITS - 1));
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * @param quantile The quantile to report, between 0 and 1, e.g. 0.99.
+     * @return The duration in nanoseconds that the given fraction of recorded durations did not exceed, capped at
+     * the largest duration recorded, or 0 if nothing was recorded.
+     */
+    public long getValueAtQuantile(double quantile) {
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(1.0, Math.max(0.0, quantile)) * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * @return The number of durations recorded.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return The sum of all durations recorded, in nanoseconds.
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * @return The longest duration recorded, in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "count=" + getCount() +
+                ", p50Micros=" + TimeUnit.NANOSECONDS.toMicros(getValueAtQuantile(0.5)) +
+                ", p99Micros=" + TimeUnit.NANOSECONDS.toMicros(getValueAtQuantile(0.99)) +
+                ", p999Micros=" + TimeUnit.NANOSECONDS.toMicros(getValueAtQuantile(0.999)) +
+                ", maxMicros=" + TimeUnit.NANOSECONDS.toMicros(getMaxNanos()) +
+                '}';
+    }
+}
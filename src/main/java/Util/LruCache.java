@@ -0,0 +1,269 @@
+package Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The LruCache class is a bounded, thread-safe in-process cache. Entries expire after a time to live and the least
+ * recently used entry is evicted once the cache is full. Lookups that find nothing can also be cached for a shorter
+ * time, so repeated requests for a key that does not exist do not all reach the database.
+ *
+ * Concurrent misses for the same key are coalesced: only the first caller runs the loader and the others wait for
+ * its result. A write that invalidates or replaces a key while a load for it is in flight wins over that load, so a
+ * value read before the write is never cached after it.
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+public class LruCache<K, V> {
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param maxSize The maximum number of entries, including cached absences.
+     * @param ttlMillis How long a loaded value stays cached.
+     * @param negativeTtlMillis How long a lookup that found nothing stays cached, or 0 to not cache absences.
+     */
+    public LruCache(int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for the key, calling the loader on a miss and caching what it returns. A null result
+     * is cached as an absence when negative caching is enabled. If another thread is already loading the key, this
+     * waits for and returns its result instead of calling the loader again.
+     * @param key The key to look up.
+     * @param loader Loads the value for the key from the backing store; may return null.
+     * @return The cached or loaded value, or null if the key does not exist.
+     */
+    public V getOrLoad(K key, Function<? super K, ? extends V> loader) {
+        Entry<V> entry = lookup(key);
+        if (entry != null) {
+            hits.increment();
+            return entry.value;
+        }
+
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, load);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        try {
+            // Another caller may have finished loading between the lookup and registering this load
+            entry = lookup(key);
+            if (entry != null) {
+                hits.increment();
+                finishLoad(key, load, null);
+                load.complete(entry.value);
+                return entry.value;
+            }
+
+            misses.increment();
+            V value = loader.apply(key);
+            if (value != null) {
+                finishLoad(key, load, new Entry<>(value, System.nanoTime() + ttlNanos));
+            } else {
+                finishLoad(key, load, negativeTtlNanos > 0
+                        ? new Entry<>(null, System.nanoTime() + negativeTtlNanos) : null);
+            }
+            load.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, load);
+            load.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the cached value for the key without loading it on a miss. Misses are not counted, since the caller
+     * decides how to load them.
+     * @param key The key to look up.
+     * @return The cached value, or null if the key is not cached or is cached as absent.
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = lookup(key);
+        if (entry == null) {
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Passes the cached value for the key to the consumer without loading it on a miss, telling a key cached as
+     * absent apart from one that is not cached. Hits are counted, misses are not.
+     * @param key The key to look up.
+     * @param consumer Receives the cached value, or null if the key is cached as absent; not called on a miss.
+     * @return True/False whether the key had a live entry.
+     */
+    public boolean ifCached(K key, Consumer<? super V> consumer) {
+        Entry<V> entry = lookup(key);
+        if (entry == null) {
+            return false;
+        }
+        hits.increment();
+        consumer.accept(entry.value);
+        return true;
+    }
+
+    /**
+     * @return The live entry for the key, or null if there is none or it has expired.
+     */
+    private synchronized Entry<V> lookup(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.expiresAt >= 0) {
+            entries.remove(key);
+            evictions.increment();
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Ends an in-flight load, storing its result only if no write for the key happened while it was running.
+     */
+    private synchronized void finishLoad(K key, CompletableFuture<V> load, Entry<V> entry) {
+        if (inFlight.remove(key, load) && entry != null) {
+            entries.put(key, entry);
+        }
+    }
+
+    private V await(CompletableFuture<V> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Caches a value, replacing any existing entry for the key; an in-flight load of the key will not overwrite it.
+     * Puts are not ordered against each other or against invalidate, so only use this to warm the cache with values
+     * that never change once written. After a write that can race another write to the same key, invalidate instead.
+     * @param key The key to cache the value under.
+     * @param value The value, which must not be null.
+     */
+    public synchronized void put(K key, V value) {
+        inFlight.remove(key);
+        entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+    }
+
+    /**
+     * Removes the entry for the key, if any. An in-flight load of the key will not cache its result.
+     * @param key The key to forget.
+     */
+    public synchronized void invalidate(K key) {
+        inFlight.remove(key);
+        entries.remove(key);
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return The number of entries currently cached, including cached absences.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of lookups answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups that had to call the loader.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of entries dropped because the cache was full or they had expired.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The number of lookups that waited for another caller's load instead of calling the loader.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return The fraction of lookups that did not call the loader, counting coalesced ones, or 0 if there have
+     * been none.
+     */
+    public double getHitRate() {
+        long served = hits.sum() + coalesced.sum();
+        long total = served + misses.sum();
+        return total == 0 ? 0.0 : (double) served / total;
+    }
+
+    @Override
+    public String toString() {
+        return "LruCache{" +
+                "size=" + size() +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() +
+                ", coalesced=" + getCoalescedCount() +
+                ", hitRate=" + getHitRate() +
+                '}';
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The QueryMetrics class collects timings of the statements run through the connection pool. Statements are grouped
+ * by their SQL shape, the SQL text with whitespace collapsed and literals replaced by ?, and each shape keeps a
+ * latency histogram, the number of rows returned or changed and the number of failures. The time spent waiting for
+ * pooled connections is kept in a histogram as well.
+ *
+ * The statements, rows, database time and connection wait of the current thread are also added to a per-thread
+ * RequestTotals, which the HTTP layer resets when a request starts and reads when it ends. This separates the time a
+ * request spent in the database from the time spent elsewhere, such as serializing the response.
+ *
+ * Statements slower than the slow query threshold are written to the socialmedia.slowquery logger together with
+ * their bind parameters. Parameters bound to one of the redacted columns, or that cannot be matched to a column in a
+ * statement that mentions one, are logged as &lt;redacted&gt;.
+ */
+public class QueryMetrics {
+    private static final Logger slowQueryLog = LoggerFactory.getLogger("socialmedia.slowquery");
+    private static final Pattern LITERALS = Pattern.compile("'(?:[^']|'')*'|(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern INSERT_COLUMNS =
+            Pattern.compile("(?is)\\bINSERT\\s+INTO\\s+[\\w.\"]+\\s*\\(([^)]*)\\)\\s*VALUES\\s*\\(([^)]*)\\)");
+    private static final Pattern COMPARED_COLUMN =
+            Pattern.compile("(?is)([\\w.\"]+)\\s*(?:=|<>|!=|<=|>=|<|>|\\bLIKE)\\s*$");
+    private static final ThreadLocal<RequestTotals> CURRENT = ThreadLocal.withInitial(RequestTotals::new);
+
+    private final long slowQueryNanos;
+    private final Set<String> redactedColumns;
+    private final ConcurrentHashMap<String, Shape> shapesBySql = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Shape> shapes = new ConcurrentHashMap<>();
+    private final LatencyHistogram acquireWait = new LatencyHistogram();
+    private final LongAdder slowQueries = new LongAdder();
+
+    /**
+     * @param slowQueryMillis Statements taking at least this long are logged, or a negative value to log none.
+     * @param redactedColumns Column names, in any case, whose bind parameters are never logged.
+     */
+    public QueryMetrics(long slowQueryMillis, Collection<String> redactedColumns) {
+        this.slowQueryNanos = slowQueryMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+        this.redactedColumns = ConcurrentHashMap.newKeySet();
+        for (String column : redactedColumns) {
+            if (!column.isBlank()) {
+                this.redactedColumns.add(column.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    /**
+     * Resets the totals of the calling thread, to be called when it starts handling a request.
+     * @return The calling thread's totals, which keep accumulating until the next reset.
+     */
+    public static RequestTotals startRequest() {
+        RequestTotals totals = CURRENT.get();
+        totals.reset();
+        return totals;
+    }
+
+    /**
+     * @return True/False whether bind parameters need to be kept for the slow query log.
+     */
+    public boolean isCapturingParameters() {
+        return slowQueryNanos >= 0;
+    }
+
+    /**
+     * @param sql The SQL text of a prepared statement.
+     * @return The shape the statement is counted under, created the first time the text is seen.
+     */
+    public Shape shapeOf(String sql) {
+        Shape shape = shapesBySql.get(sql);
+        if (shape == null) {
+            String normalized = normalize(sql);
+            shape = shapes.computeIfAbsent(normalized, key -> new Shape(key, redactedParameters(sql)));
+            shapesBySql.putIfAbsent(sql, shape);
+        }
+        return shape;
+    }
+
+    /**
+     * Records the time a borrower waited for a pooled connection.
+     * @param nanos The wait in nanoseconds.
+     */
+    public void recordAcquire(long nanos) {
+        acquireWait.record(nanos);
+        CURRENT.get().acquireNanos += nanos;
+    }
+
+    /**
+     * Records one execution of a statement, and logs it if it reached the slow query threshold.
+     * @param shape The statement's shape.
+     * @param nanos The time spent executing the statement and reading its results.
+     * @param rows The rows read from its result set, or the rows it changed.
+     * @param failed True/False whether the statement threw.
+     * @param parameters The bind parameters by index starting at 1, or null if they were not kept.
+     * @param parameterCount The highest parameter index bound.
+     * @param batchSize The number of parameter sets executed as one batch, or 0 for a single execution.
+     */
+    void record(Shape shape, long nanos, long rows, boolean failed, Object[] parameters, int parameterCount,
+            int batchSize) {
+        shape.latency.record(nanos);
+        shape.rows.add(rows);
+        if (failed) {
+            shape.errors.increment();
+        }
+        RequestTotals totals = CURRENT.get();
+        totals.statements++;
+        totals.rows += rows;
+        totals.dbNanos += nanos;
+
+        if (slowQueryNanos >= 0 && nanos >= slowQueryNanos) {
+            slowQueries.increment();
+            slowQueryLog.warn("Slow query took {} ms, {} rows{}{}: {} params={}",
+                    String.format(Locale.ROOT, "%.3f", nanos / 1e6), rows,
+                    batchSize > 0 ? ", batch of " + batchSize : "", failed ? ", failed" : "",
+                    shape.sql, formatParameters(shape, parameters, parameterCount));
+        }
+    }
+
+    private static String formatParameters(Shape shape, Object[] parameters, int parameterCount) {
+        if (parameters == null) {
+            return "[]";
+        }
+        StringBuilder out = new StringBuilder("[");
+        for (int i = 1; i <= parameterCount && i < parameters.length; i++) {
+            if (i > 1) {
+                out.append(", ");
+            }
+            Object value = parameters[i];
+            if (shape.isRedacted(i)) {
+                out.append("<redacted>");
+            } else if (value instanceof String) {
+                out.append('\'').append(((String) value).replace("'", "''")).append('\'');
+            } else {
+                out.append(value);
+            }
+        }
+        return out.append(']').toString();
+    }
+
+    /**
+     * Collapses whitespace and replaces string and number literals with ?, so statements differing only in their
+     * literals share a shape.
+     */
+    static String normalize(String sql) {
+        String withoutLiterals = LITERALS.matcher(sql).replaceAll("?");
+        return WHITESPACE.matcher(withoutLiterals).replaceAll(" ").trim();
+    }
+
+    /**
+     * Works out which ? placeholders of the statement bind a redacted column. Placeholders in the VALUES list of an
+     * INSERT with a column list take that column; others take the column they are compared with. If the statement
+     * mentions a redacted column anywhere, placeholders that cannot be matched to a column are redacted too.
+     * @return Whether each placeholder is redacted, indexed from 1.
+     */
+    private boolean[] redactedParameters(String sql) {
+        List<Integer> placeholders = new ArrayList<>();
+        boolean quoted = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == '?' && !quoted) {
+                placeholders.add(i);
+            }
+        }
+
+        String lower = sql.toLowerCase(Locale.ROOT);
+        boolean mentionsRedacted = false;
+        for (String column : redactedColumns) {
+            if (Pattern.compile("\\b" + Pattern.quote(column) + "\\b").matcher(lower).find()) {
+                mentionsRedacted = true;
+                break;
+            }
+        }
+
+        String[] columns = new String[placeholders.size()];
+        Matcher insert = INSERT_COLUMNS.matcher(sql);
+        if (insert.find()) {
+            String[] names = insert.group(1).split(",");
+            String[] values = insert.group(2).split(",");
+            int valuesStart = insert.start(2);
+            int offset = 0;
+            for (int v = 0; v < values.length && v < names.length; v++) {
+                int position = valuesStart + offset + values[v].indexOf('?');
+                if (values[v].trim().equals("?")) {
+                    int index = placeholders.indexOf(position);
+                    if (index >= 0) {
+                        columns[index] = unquote(names[v]);
+                    }
+                }
+                offset += values[v].length() + 1;
+            }
+        }
+        for (int p = 0; p < placeholders.size(); p++) {
+            if (columns[p] == null) {
+                Matcher compared = COMPARED_COLUMN.matcher(sql.substring(0, placeholders.get(p)));
+                if (compared.find()) {
+                    columns[p] = unquote(compared.group(1));
+                }
+            }
+        }
+
+        boolean[] redacted = new boolean[placeholders.size() + 1];
+        for (int p = 0; p < placeholders.size(); p++) {
+            redacted[p + 1] = columns[p] == null ? mentionsRedacted : redactedColumns.contains(columns[p]);
+        }
+        return redacted;
+    }
+
+    /**
+     * @return The column name without table qualifier or quotes, in lower case.
+     */
+    private static String unquote(String column) {
+        String name = column.trim();
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0) {
+            name = name.substring(dot + 1);
+        }
+        return name.replace("\"", "").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return The statement shapes seen so far.
+     */
+    public Collection<Shape> getShapes() {
+        return shapes.values();
+    }
+
+    /**
+     * @return The waits for pooled connections, in nanoseconds.
+     */
+    public LatencyHistogram getAcquireWait() {
+        return acquireWait;
+    }
+
+    /**
+     * @return The number of statements written to the slow query log.
+     */
+    public long getSlowQueryCount() {
+        return slowQueries.sum();
+    }
+
+    /**
+     * @return The slow query threshold in milliseconds, or -1 if the slow query log is off.
+     */
+    public long getSlowQueryMillis() {
+        return slowQueryNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(slowQueryNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "QueryMetrics{" +
+                "shapes=" + shapes.size() +
+                ", slowQueries=" + getSlowQueryCount() +
+                ", acquireWait=" + acquireWait +
+                '}';
+    }
+
+    /**
+     * The statistics of one SQL shape.
+     */
+    public static final class Shape {
+        private final String sql;
+        private final boolean[] redacted;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        Shape(String sql, boolean[] redacted) {
+            this.sql = sql;
+            this.redacted = redacted;
+        }
+
+        /**
+         * @param index A parameter index, starting at 1.
+         * @return True/False whether the parameter must not be logged.
+         */
+        public boolean isRedacted(int index) {
+            return index < redacted.length && redacted[index];
+        }
+
+        /**
+         * @return The normalized SQL text.
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return The execution times of the statement, in nanoseconds, including reading its results.
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return The rows read or changed by all executions.
+         */
+        public long getRowCount() {
+            return rows.sum();
+        }
+
+        /**
+         * @return The number of executions that threw.
+         */
+        public long getErrorCount() {
+            return errors.sum();
+        }
+    }
+
+    /**
+     * The database work done by one thread since its totals were last reset. Only that thread updates it.
+     */
+    public static final class RequestTotals {
+        private long statements;
+        private long rows;
+        private long dbNanos;
+        private long acquireNanos;
+
+        void reset() {
+            statements = 0;
+            rows = 0;
+            dbNanos = 0;
+            acquireNanos = 0;
+        }
+
+        /**
+         * @return The number of statements executed.
+         */
+        public long getStatements() {
+            return statements;
+        }
+
+        /**
+         * @return The rows read or changed.
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return The time spent executing statements and reading their results, in nanoseconds.
+         */
+        public long getDbNanos() {
+            return dbNanos;
+        }
+
+        /**
+         * @return The time spent waiting for pooled connections, in nanoseconds.
+         */
+        public long getAcquireNanos() {
+            return acquireNanos;
+        }
+    }
+}
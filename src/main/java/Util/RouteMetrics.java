@@ -0,0 +1,160 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The RouteMetrics class holds the measurements of one HTTP route: a latency histogram per response status, the
+ * number of requests in flight and the number of requests whose handler threw an exception. It also keeps the
+ * database time of each request, so time spent in the database can be told apart from the rest of the request.
+ *
+ * The histogram of a status is created the first time that status is recorded; from then on recording a request
+ * only touches atomics, so it is lock-free and allocates nothing.
+ */
+public class RouteMetrics {
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 599;
+
+    private final String method;
+    private final String path;
+    private final AtomicReferenceArray<LatencyHistogram> byStatus =
+            new AtomicReferenceArray<>(MAX_STATUS - MIN_STATUS + 1);
+    private final AtomicLong inFlight = new AtomicLong();
+    private final LongAdder exceptions = new LongAdder();
+    private final LatencyHistogram databaseTime = new LatencyHistogram();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+
+    /**
+     * @param method The HTTP method of the route, e.g. GET.
+     * @param path The path pattern of the route, e.g. /messages/{message_id}.
+     */
+    public RouteMetrics(String method, String path) {
+        this.method = method;
+        this.path = path;
+    }
+
+    /**
+     * Marks a request as started.
+     * @return The start time to pass to finished, from System.nanoTime.
+     */
+    public long started() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a request that has finished with the given status.
+     * @param startedAt The value returned by started for this request.
+     * @param status The HTTP status of the response; statuses outside 100-599 are recorded as 500.
+     */
+    public void finished(long startedAt, int status) {
+        long elapsed = System.nanoTime() - startedAt;
+        inFlight.decrementAndGet();
+        histogram(status < MIN_STATUS || status > MAX_STATUS ? 500 : status).record(elapsed);
+    }
+
+    /**
+     * Records the database work of a finished request.
+     * @param totals The totals of the thread that handled the request, reset when it started.
+     */
+    public void recordDatabase(QueryMetrics.RequestTotals totals) {
+        databaseTime.record(totals.getDbNanos());
+        statements.add(totals.getStatements());
+        rows.add(totals.getRows());
+        acquireNanos.add(totals.getAcquireNanos());
+    }
+
+    /**
+     * Counts a request whose handler threw instead of returning normally.
+     */
+    public void failed() {
+        exceptions.increment();
+    }
+
+    private LatencyHistogram histogram(int status) {
+        int index = status - MIN_STATUS;
+        LatencyHistogram histogram = byStatus.get(index);
+        if (histogram == null) {
+            byStatus.compareAndSet(index, null, new LatencyHistogram());
+            histogram = byStatus.get(index);
+        }
+        return histogram;
+    }
+
+    /**
+     * Passes the histogram of every status recorded so far, with the status, to the consumer.
+     * @param consumer The callback receiving each histogram and its status, in status order.
+     */
+    public void forEachStatus(ObjIntConsumer<LatencyHistogram> consumer) {
+        for (int i = 0; i < byStatus.length(); i++) {
+            LatencyHistogram histogram = byStatus.get(i);
+            if (histogram != null) {
+                consumer.accept(histogram, i + MIN_STATUS);
+            }
+        }
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return The number of requests started but not yet finished.
+     */
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return The number of requests whose handler threw an exception.
+     */
+    public long getExceptionCount() {
+        return exceptions.sum();
+    }
+
+    /**
+     * @return The time each request spent running statements and reading their results, in nanoseconds.
+     */
+    public LatencyHistogram getDatabaseTime() {
+        return databaseTime;
+    }
+
+    /**
+     * @return The number of statements run by requests to the route.
+     */
+    public long getStatementCount() {
+        return statements.sum();
+    }
+
+    /**
+     * @return The rows read or changed by requests to the route.
+     */
+    public long getRowCount() {
+        return rows.sum();
+    }
+
+    /**
+     * @return The total time requests to the route waited for pooled connections, in nanoseconds.
+     */
+    public long getAcquireNanos() {
+        return acquireNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "RouteMetrics{" +
+                "method='" + method + '\'' +
+                ", path='" + path + '\'' +
+                ", inFlight=" + getInFlight() +
+                ", exceptions=" + getExceptionCount() +
+                '}';
+    }
+}
@@ -0,0 +1,156 @@
+package Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.h2.tools.RunScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The SchemaMigrator class brings the database schema up to date by applying the numbered SQL migrations in
+ * src/main/resources/db/migration in order. Each applied migration is recorded in the schema_history table along
+ * with a checksum of its script, so running the migrator again only applies what is new and refuses to continue if
+ * a migration that was already applied has since been edited.
+ *
+ * Each migration is applied in a transaction of its own together with its schema_history row. H2 commits DDL
+ * statements on its own, though, so a failed migration may leave some of its tables or indexes behind; migrations
+ * are therefore written to be safe to run again (CREATE ... IF NOT EXISTS).
+ */
+public class SchemaMigrator {
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    private static final String MIGRATION_PATH = "/db/migration/";
+
+    /**
+     * Migration scripts in the order they are applied. The version of each is the number after the leading V.
+     * New migrations are appended here; applied ones must never be edited.
+     */
+    private static final String[] MIGRATIONS = {
+        "V1__create_tables.sql",
+        "V2__add_message_indexes.sql",
+    };
+
+    /**
+     * Applies every migration that is not yet recorded in schema_history.
+     * @throws IllegalStateException if a migration fails or an applied migration no longer matches its checksum.
+     */
+    public static synchronized void migrate() {
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS schema_history ("
+                        + "version INT PRIMARY KEY, "
+                        + "description VARCHAR(255), "
+                        + "checksum INT, "
+                        + "installed_on TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            }
+            Map<Integer, Integer> applied = appliedChecksums(connection);
+
+            for (String script : MIGRATIONS) {
+                int version = versionOf(script);
+                String sql = readScript(script);
+                int checksum = checksum(sql);
+
+                Integer appliedChecksum = applied.get(version);
+                if (appliedChecksum != null) {
+                    if (appliedChecksum != checksum) {
+                        throw new IllegalStateException("Migration " + script + " was modified after it was applied");
+                    }
+                    continue;
+                }
+
+                apply(connection, script, version, checksum, sql);
+                log.info("Applied schema migration " + script);
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Schema migration failed", e);
+        }
+    }
+
+    /**
+     * Runs a migration and records it in schema_history in one transaction, so a migration whose script fails part
+     * way is not recorded and is run again in full next time.
+     */
+    private static void apply(Connection connection, String script, int version, int checksum, String sql)
+            throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            RunScript.execute(connection, new StringReader(sql));
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO schema_history (version, description, checksum) VALUES (?, ?, ?)")) {
+                ps.setInt(1, version);
+                ps.setString(2, descriptionOf(script));
+                ps.setInt(3, checksum);
+                ps.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Forgets every applied migration and applies them all again. Used after the test script has dropped and
+     * recreated the tables, which also drops their indexes.
+     */
+    public static synchronized void reapply() {
+        try (Connection connection = ConnectionUtil.getConnection();
+                Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS schema_history");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Schema migration failed", e);
+        }
+        migrate();
+    }
+
+    private static Map<Integer, Integer> appliedChecksums(Connection connection) throws SQLException {
+        Map<Integer, Integer> applied = new HashMap<>();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT version, checksum FROM schema_history");
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getInt("checksum"));
+            }
+        }
+        return applied;
+    }
+
+    private static String readScript(String script) throws IOException {
+        try (InputStream in = SchemaMigrator.class.getResourceAsStream(MIGRATION_PATH + script)) {
+            if (in == null) {
+                throw new IOException("Migration script not found: " + script);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            // Normalize line endings so checkouts on different platforms share a checksum
+            return out.toString(StandardCharsets.UTF_8).replace("\r\n", "\n");
+        }
+    }
+
+    private static int checksum(String sql) {
+        CRC32 crc = new CRC32();
+        crc.update(sql.getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue();
+    }
+
+    private static int versionOf(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+
+    private static String descriptionOf(String script) {
+        return script.substring(script.indexOf("__") + 2, script.lastIndexOf('.')).replace('_', ' ');
+    }
+}
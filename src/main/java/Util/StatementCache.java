@@ -0,0 +1,444 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The StatementCache class keeps the prepared statements of a single pooled connection open between borrows, so the
+ * DAO layer can keep calling prepareStatement(sql) and close() while the database only parses and plans each SQL
+ * string once per connection. Statements are keyed by SQL text and generated-keys mode and evicted in least recently
+ * used order once the cache is full.
+ *
+ * When given a QueryMetrics, every execution is timed, including the time spent reading its result set, and
+ * recorded under the statement's SQL shape with the number of rows read or changed. Bind parameters are kept
+ * until the statement is closed so a slow execution can be logged with them.
+ *
+ * Statements that are not in the cache, because the cached one was busy, caching is disabled or they were evicted
+ * while in use, are closed when their borrower closes them, or at the latest when the connection is returned.
+ *
+ * A pooled connection is only used by one borrower at a time, so the cache itself is not thread-safe.
+ */
+public class StatementCache {
+    private static final Logger log = LoggerFactory.getLogger(StatementCache.class);
+    /**
+     * Size at which the list of uncached statements is pruned of the ones already closed.
+     */
+    private static final int UNCACHED_PRUNE_SIZE = 64;
+
+    private final int capacity;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final QueryMetrics queryMetrics;
+    private final LinkedHashMap<Key, Entry> entries;
+    /**
+     * Statements lent out during the current borrow that the cache does not hold, closed by release if the borrower
+     * has not closed them.
+     */
+    private final List<Entry> uncached = new ArrayList<>();
+
+    /**
+     * @param capacity The maximum number of statements kept open for the connection.
+     * @param hits Counter incremented when a cached statement is reused.
+     * @param misses Counter incremented when a statement has to be prepared.
+     * @param evictions Counter incremented when a cached statement is closed to make room.
+     * @param queryMetrics Where executions are recorded, or null to not time them.
+     */
+    public StatementCache(int capacity, LongAdder hits, LongAdder misses, LongAdder evictions,
+            QueryMetrics queryMetrics) {
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.queryMetrics = queryMetrics;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= StatementCache.this.capacity) {
+                    return false;
+                }
+                StatementCache.this.evictions.increment();
+                Entry entry = eldest.getValue();
+                // A statement still in use is closed by its borrower instead
+                entry.evicted = true;
+                if (entry.owner == null) {
+                    entry.closePhysical();
+                } else {
+                    trackUncached(entry);
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a statement for the given SQL, reusing the cached one when it is not already in use. Closing the
+     * returned statement clears its parameters and hands it back to the cache.
+     * @param physical The physical connection the statement belongs to.
+     * @param owner The connection handle returned by the statement's getConnection().
+     * @param sql The SQL text to prepare.
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS.
+     * @return A logical prepared statement.
+     * @throws SQLException if the statement could not be prepared.
+     */
+    public PreparedStatement prepare(Connection physical, Connection owner, String sql, int autoGeneratedKeys)
+            throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        Entry entry = capacity > 0 ? entries.get(key) : null;
+        if (entry != null && entry.owner == null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            PreparedStatement statement = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS
+                    ? physical.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                    : physical.prepareStatement(sql);
+            Entry fresh = new Entry(statement, queryMetrics != null ? queryMetrics.shapeOf(sql) : null);
+            if (entry == null && capacity > 0) {
+                entries.put(key, fresh);
+            } else {
+                // The cached statement is busy (or caching is disabled), so this one is closed after use
+                fresh.evicted = true;
+                trackUncached(fresh);
+            }
+            entry = fresh;
+        }
+
+        LogicalStatement logical = new LogicalStatement(entry, owner, queryMetrics);
+        entry.owner = logical;
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, logical);
+    }
+
+    private void trackUncached(Entry entry) {
+        if (uncached.size() >= UNCACHED_PRUNE_SIZE) {
+            uncached.removeIf(Entry::isClosed);
+        }
+        uncached.add(entry);
+    }
+
+    /**
+     * Detaches any statements the borrower forgot to close, so they cannot be used once the connection is lent to
+     * someone else, and closes the forgotten ones the cache does not hold.
+     */
+    public void release() {
+        for (Entry entry : uncached) {
+            entry.owner = null;
+            entry.closePhysical();
+        }
+        uncached.clear();
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.owner != null) {
+                entry.owner = null;
+                try {
+                    entry.statement.clearParameters();
+                } catch (SQLException e) {
+                    iterator.remove();
+                    entry.closePhysical();
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes every cached statement, and any uncached one still open. Called before the physical connection is
+     * closed.
+     */
+    public void closeAll() {
+        for (Entry entry : uncached) {
+            entry.closePhysical();
+        }
+        uncached.clear();
+        for (Entry entry : entries.values()) {
+            entry.closePhysical();
+        }
+        entries.clear();
+    }
+
+    /**
+     * @return The number of statements currently cached.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Key {
+        final String sql;
+        final int autoGeneratedKeys;
+        final int hash;
+
+        Key(String sql, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+            this.hash = sql.hashCode() * 31 + autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return autoGeneratedKeys == key.autoGeneratedKeys && sql.equals(key.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        final PreparedStatement statement;
+        final QueryMetrics.Shape shape;
+        LogicalStatement owner;
+        boolean evicted;
+        boolean closed;
+        /**
+         * Bind parameters by index, kept for the slow query log; null until the first one is bound.
+         */
+        Object[] parameters;
+        int parameterCount;
+        int batchSize;
+
+        Entry(PreparedStatement statement, QueryMetrics.Shape shape) {
+            this.statement = statement;
+            this.shape = shape;
+        }
+
+        void bind(int index, Object value) {
+            if (parameters == null || index >= parameters.length) {
+                parameters = Arrays.copyOf(parameters == null ? new Object[0] : parameters, Math.max(8, index * 2));
+            }
+            parameters[index] = value;
+            parameterCount = Math.max(parameterCount, index);
+        }
+
+        void clearBindings() {
+            if (parameters != null) {
+                Arrays.fill(parameters, 0, Math.min(parameterCount + 1, parameters.length), null);
+            }
+            parameterCount = 0;
+            batchSize = 0;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        void closePhysical() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                log.warn("Failed to close a prepared statement", e);
+            }
+        }
+    }
+
+    /**
+     * The view of a cached statement given to a single caller. Closing it returns the statement to the cache, or
+     * closes it for real if it was evicted while in use.
+     */
+    private static final class LogicalStatement implements InvocationHandler {
+        private final Entry entry;
+        private final Connection owner;
+        private final QueryMetrics queryMetrics;
+        /**
+         * The execution whose result set is still being read: its time so far and rows read.
+         */
+        private boolean pending;
+        private long pendingNanos;
+        private long pendingRows;
+
+        LogicalStatement(Entry entry, Connection owner, QueryMetrics queryMetrics) {
+            this.entry = entry;
+            this.owner = owner;
+            this.queryMetrics = entry.shape != null ? queryMetrics : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            boolean open = entry.owner == this;
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (open) {
+                        finishPending();
+                        entry.owner = null;
+                        entry.clearBindings();
+                        if (entry.evicted) {
+                            entry.closePhysical();
+                        } else {
+                            entry.statement.clearParameters();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return !open || entry.statement.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + entry.statement + "]";
+                default:
+                    break;
+            }
+            if (!open) {
+                throw new SQLException("Statement is closed");
+            }
+            if (queryMetrics != null) {
+                if (name.startsWith("execute")) {
+                    return execute(proxy, method, args);
+                }
+                finishPending();
+                if (name.equals("clearParameters")) {
+                    entry.clearBindings();
+                } else if (name.equals("addBatch")) {
+                    entry.batchSize++;
+                } else if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+                        && queryMetrics.isCapturingParameters()) {
+                    entry.bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                }
+            }
+            try {
+                return method.invoke(entry.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * Runs an execute method and records it. A result set is wrapped so the time spent reading it and the
+         * rows read are added before the execution is recorded.
+         */
+        private Object execute(Object proxy, Method method, Object[] args) throws Throwable {
+            finishPending();
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = method.invoke(entry.statement, args);
+            } catch (InvocationTargetException e) {
+                record(System.nanoTime() - start, 0, true);
+                throw e.getCause();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            if (result instanceof ResultSet) {
+                pending = true;
+                pendingNanos = elapsed;
+                pendingRows = 0;
+                return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+                        new TimedResultSet((ResultSet) result, (Statement) proxy));
+            }
+            long rows = 0;
+            if (result instanceof Number) {
+                rows = Math.max(0, ((Number) result).longValue());
+            } else if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    rows += Math.max(0, count);
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    rows += Math.max(0, count);
+                }
+            }
+            record(elapsed, rows, false);
+            if (method.getName().endsWith("Batch")) {
+                entry.batchSize = 0;
+            }
+            return result;
+        }
+
+        /**
+         * Records the execution whose result set was being read, if any.
+         */
+        private void finishPending() {
+            if (pending) {
+                pending = false;
+                record(pendingNanos, pendingRows, false);
+            }
+        }
+
+        private void record(long nanos, long rows, boolean failed) {
+            queryMetrics.record(entry.shape, nanos, rows, failed, entry.parameters, entry.parameterCount,
+                    entry.batchSize);
+        }
+
+        /**
+         * A result set that adds the time spent in next() and the rows it returns to the pending execution, and
+         * records the execution once the last row has been read or the result set is closed.
+         */
+        private final class TimedResultSet implements InvocationHandler {
+            private final ResultSet resultSet;
+            private final Statement statement;
+
+            TimedResultSet(ResultSet resultSet, Statement statement) {
+                this.resultSet = resultSet;
+                this.statement = statement;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "next": {
+                        long start = System.nanoTime();
+                        boolean hasRow;
+                        try {
+                            hasRow = resultSet.next();
+                        } finally {
+                            pendingNanos += System.nanoTime() - start;
+                        }
+                        if (hasRow) {
+                            pendingRows++;
+                        } else {
+                            finishPending();
+                        }
+                        return hasRow;
+                    }
+                    case "close":
+                        finishPending();
+                        resultSet.close();
+                        return null;
+                    case "getStatement":
+                        return statement;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        break;
+                }
+                try {
+                    return method.invoke(resultSet, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package Util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The TimelineIndex class maps each account_id to the ids of the messages it posted, ordered by time_posted_epoch and
+ * then message_id, so a timeline can be resolved to message ids without scanning the message table.
+ *
+ * Account ids are dense auto-increment integers, so timelines live in an array indexed by account_id rather than a
+ * hash map, and each timeline stores its entries in parallel primitive arrays. That keeps the footprint at roughly
+ * twelve bytes per message plus one small object per account that has posted.
+ */
+public class TimelineIndex {
+    private static final int INITIAL_ACCOUNT_CAPACITY = 1024;
+    private static final int[] NO_IDS = new int[0];
+
+    /**
+     * Timelines by account_id. Replaced by a larger copy when an account_id beyond its end posts.
+     */
+    private volatile AtomicReferenceArray<Timeline> timelines = new AtomicReferenceArray<>(INITIAL_ACCOUNT_CAPACITY);
+
+    /**
+     * Records a message on its poster's timeline.
+     * @param postedBy The account_id of the poster.
+     * @param timePostedEpoch The time_posted_epoch of the message.
+     * @param messageId The message_id of the message.
+     * @return True/False whether the message was added, rather than already on the timeline.
+     */
+    public boolean add(int postedBy, long timePostedEpoch, int messageId) {
+        if (postedBy < 0) {
+            return false;
+        }
+        return timelineFor(postedBy).add(timePostedEpoch, messageId);
+    }
+
+    /**
+     * Removes a message from its poster's timeline.
+     * @param postedBy The account_id of the poster.
+     * @param timePostedEpoch The time_posted_epoch of the message.
+     * @param messageId The message_id of the message.
+     */
+    public void remove(int postedBy, long timePostedEpoch, int messageId) {
+        Timeline timeline = find(postedBy);
+        if (timeline != null) {
+            timeline.remove(timePostedEpoch, messageId);
+        }
+    }
+
+    /**
+     * Removes a message whose time_posted_epoch is not known, such as one found missing from the message table, by
+     * scanning its poster's timeline.
+     * @param postedBy The account_id of the poster.
+     * @param messageId The message_id of the message.
+     * @return True/False whether the message was on the timeline.
+     */
+    public boolean remove(int postedBy, int messageId) {
+        Timeline timeline = find(postedBy);
+        return timeline != null && timeline.remove(messageId);
+    }
+
+    /**
+     * @param postedBy The account_id of the poster.
+     * @return The ids of every message on the account's timeline, oldest first.
+     */
+    public int[] messageIds(int postedBy) {
+        Timeline timeline = find(postedBy);
+        return timeline == null ? NO_IDS : timeline.after(Long.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param postedBy The account_id of the poster.
+     * @param afterTime The time_posted_epoch of the last message on the previous page, or Long.MIN_VALUE.
+     * @param afterId The message_id of the last message on the previous page, or Integer.MIN_VALUE.
+     * @param limit The maximum number of ids to return.
+     * @return The ids of up to limit messages that come after the given position, oldest first.
+     */
+    public int[] messageIdsAfter(int postedBy, long afterTime, int afterId, int limit) {
+        Timeline timeline = find(postedBy);
+        return timeline == null ? NO_IDS : timeline.after(afterTime, afterId, limit);
+    }
+
+    /**
+     * @param postedBy The account_id of the poster.
+     * @return The number of messages on the account's timeline.
+     */
+    public int size(int postedBy) {
+        Timeline timeline = find(postedBy);
+        return timeline == null ? 0 : timeline.size();
+    }
+
+    private Timeline find(int postedBy) {
+        AtomicReferenceArray<Timeline> current = timelines;
+        return postedBy >= 0 && postedBy < current.length() ? current.get(postedBy) : null;
+    }
+
+    private Timeline timelineFor(int postedBy) {
+        Timeline timeline = find(postedBy);
+        if (timeline != null) {
+            return timeline;
+        }
+        synchronized (this) {
+            AtomicReferenceArray<Timeline> current = timelines;
+            if (postedBy >= current.length()) {
+                int capacity = current.length();
+                while (capacity <= postedBy) {
+                    capacity = capacity > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE - 8 : capacity * 2;
+                }
+                AtomicReferenceArray<Timeline> grown = new AtomicReferenceArray<>(capacity);
+                for (int i = 0; i < current.length(); i++) {
+                    grown.set(i, current.get(i));
+                }
+                timelines = grown;
+                current = grown;
+            }
+            timeline = current.get(postedBy);
+            if (timeline == null) {
+                timeline = new Timeline();
+                current.set(postedBy, timeline);
+            }
+            return timeline;
+        }
+    }
+
+    /**
+     * The messages of one account, kept sorted by (time, id) in parallel growable arrays.
+     */
+    private static final class Timeline {
+        private long[] times = new long[4];
+        private int[] ids = new int[4];
+        private int size;
+
+        synchronized boolean add(long time, int id) {
+            // Messages usually arrive in time order, so appending is the common case
+            int position = size > 0 && compare(times[size - 1], ids[size - 1], time, id) >= 0
+                    ? insertionPoint(time, id) : size;
+            if (position < size && times[position] == time && ids[position] == id) {
+                return false;
+            }
+            if (size == ids.length) {
+                int capacity = size + (size >> 1) + 1;
+                times = Arrays.copyOf(times, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+            }
+            System.arraycopy(times, position, times, position + 1, size - position);
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            times[position] = time;
+            ids[position] = id;
+            size++;
+            return true;
+        }
+
+        synchronized void remove(long time, int id) {
+            int position = insertionPoint(time, id);
+            if (position < size && times[position] == time && ids[position] == id) {
+                System.arraycopy(times, position + 1, times, position, size - position - 1);
+                System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+                size--;
+            }
+        }
+
+        synchronized boolean remove(int id) {
+            for (int position = 0; position < size; position++) {
+                if (ids[position] == id) {
+                    System.arraycopy(times, position + 1, times, position, size - position - 1);
+                    System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized int[] after(long time, int id, int limit) {
+            int start = insertionPoint(time, id);
+            if (start < size && times[start] == time && ids[start] == id) {
+                start++;
+            }
+            int end = (int) Math.min((long) start + limit, size);
+            return start >= end ? NO_IDS : Arrays.copyOfRange(ids, start, end);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        /**
+         * @return The first position whose entry is not less than (time, id).
+         */
+        private int insertionPoint(long time, int id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(times[mid], ids[mid], time, id) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static int compare(long timeA, int idA, long timeB, int idB) {
+            int byTime = Long.compare(timeA, timeB);
+            return byTime != 0 ? byTime : Integer.compare(idA, idB);
+        }
+    }
+}
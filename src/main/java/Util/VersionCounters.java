@@ -0,0 +1,62 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The VersionCounters class keeps a version number for every int key, such as a message_id, that is incremented each
+ * time the data behind the key changes, so a client can find out whether its copy is current without reading the
+ * data again. Keys share a fixed array of counters by their low bits, so memory use does not grow with the number of
+ * keys; a change to one key also moves the version of the keys sharing its counter, which only costs those keys a
+ * needless refresh. Versions never go back, so a key's version cannot repeat while the data differs.
+ *
+ * Counters start again from zero when the process restarts, so each version is reported together with an epoch
+ * chosen at startup.
+ */
+public class VersionCounters {
+    private final AtomicLongArray counters;
+    private final int mask;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    /**
+     * @param size The number of counters, rounded up to a power of two.
+     */
+    public VersionCounters(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.counters = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Moves the key to a new version. Call it after the change can be read, so a version read before reading the
+     * data never describes newer data than it does.
+     * @param key The key whose data changed.
+     */
+    public void increment(int key) {
+        counters.incrementAndGet(key & mask);
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return The current version of the key, unique within the process's epoch.
+     */
+    public long get(int key) {
+        return counters.get(key & mask);
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return The epoch and the current version of the key, e.g. "lq3x9k.17", which differs whenever the key's data
+     * may have changed, also across restarts.
+     */
+    public String tag(int key) {
+        return epoch + '.' + get(key);
+    }
+
+    @Override
+    public String toString() {
+        return "VersionCounters{" +
+                "size=" + counters.length() +
+                ", epoch='" + epoch + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,4 @@
+-- Timelines: messages of one poster in (time_posted_epoch, message_id) order
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch, message_id);
+-- Feed pages: all messages in (time_posted_epoch, message_id) order
+create index if not exists message_time_idx on message (time_posted_epoch, message_id);
@@ -0,0 +1,26 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.InMemoryAccountRepository;
+import Model.Account;
+import Service.AccountService;
+
+public class AccountServiceTest {
+    /**
+     * Looking up an account_id before the account exists, then registering it
+     *
+     * Expected Result:
+     *  The cached absence is replaced by the registration, so the new account is found at once
+     */
+    @Test
+    public void registrationReplacesCachedAbsence() {
+        AccountService accountService = new AccountService(new InMemoryAccountRepository());
+        Assert.assertNull(accountService.getAccountByID(1));
+        Assert.assertTrue(accountService.getAccountCache().ifCached(1, account -> Assert.assertNull(account)));
+
+        Assert.assertTrue(accountService.createAccount(new Account("newuser", "password")).isValid());
+        Account found = accountService.getAccountByID(1);
+        Assert.assertNotNull(found);
+        Assert.assertEquals("newuser", found.getUsername());
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.AdaptiveLimit;
+
+public class AdaptiveLimitTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /**
+     * Filling the limit and releasing every slot with the same latency, over and over
+     *
+     * Expected Result:
+     *  The limit grows while latency stays flat, but never beyond maxLimit
+     */
+    @Test
+    public void steadyLatencyGrowsLimit() {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 1, 50);
+
+        fillAndRelease(limit, FAST, 5);
+        int grown = limit.getLimit();
+        Assert.assertTrue("Limit " + grown, grown > 10);
+
+        fillAndRelease(limit, FAST, 200);
+        Assert.assertEquals(50, limit.getLimit());
+    }
+
+    /**
+     * Establishing a latency at a full limit, then releasing requests that take twenty times as long, then requests
+     * whose latency keeps doubling
+     *
+     * Expected Result:
+     *  The limit shrinks after the step, and keeps shrinking down to minLimit, but not below, while latency rises
+     */
+    @Test
+    public void risingLatencyShrinksLimit() {
+        AdaptiveLimit limit = new AdaptiveLimit(40, 5, 40);
+        fillAndRelease(limit, FAST, 20);
+        Assert.assertEquals(40, limit.getLimit());
+
+        fillAndRelease(limit, SLOW, 1);
+        int shrunk = limit.getLimit();
+        Assert.assertTrue("Limit " + shrunk, shrunk < 40);
+
+        for (int i = 0; i < 30; i++) {
+            fillAndRelease(limit, SLOW << i, 1);
+        }
+        Assert.assertEquals(5, limit.getLimit());
+    }
+
+    /**
+     * Releasing requests that ended in a server error while only one slot is in use
+     *
+     * Expected Result:
+     *  Each one shrinks the limit by a tenth straight away, down to minLimit
+     */
+    @Test
+    public void serverErrorBacksOff() {
+        AdaptiveLimit limit = new AdaptiveLimit(20, 2, 100);
+
+        Assert.assertTrue(limit.tryAcquire());
+        limit.release(FAST, true);
+        Assert.assertEquals(18, limit.getLimit());
+        Assert.assertEquals(0, limit.getInFlight());
+
+        for (int i = 0; i < 50; i++) {
+            Assert.assertTrue(limit.tryAcquire());
+            limit.release(FAST, true);
+        }
+        Assert.assertEquals(2, limit.getLimit());
+    }
+
+    /**
+     * Releasing fast and slow requests while fewer than half of the slots are in use
+     *
+     * Expected Result:
+     *  The limit does not move without evidence of load
+     */
+    @Test
+    public void lightLoadKeepsLimit() {
+        AdaptiveLimit limit = new AdaptiveLimit(20, 1, 100);
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(limit.tryAcquire());
+            limit.release(i % 2 == 0 ? FAST : SLOW, false);
+        }
+
+        Assert.assertEquals(20, limit.getLimit());
+    }
+
+    /**
+     * Acquiring slots up to the limit, one more, then cancelling one
+     *
+     * Expected Result:
+     *  The acquisition over the limit fails, and cancelling frees a slot without changing the limit
+     */
+    @Test
+    public void tryAcquireStopsAtLimit() {
+        AdaptiveLimit limit = new AdaptiveLimit(3, 1, 10);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(limit.tryAcquire());
+        }
+        Assert.assertFalse(limit.tryAcquire());
+
+        limit.cancel();
+        Assert.assertEquals(2, limit.getInFlight());
+        Assert.assertEquals(3, limit.getLimit());
+        Assert.assertTrue(limit.tryAcquire());
+    }
+
+    /**
+     * Takes every slot the limit has, then releases them all with the given latency, the given number of times.
+     */
+    private static void fillAndRelease(AdaptiveLimit limit, long latencyNanos, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int taken = 0;
+            while (limit.tryAcquire()) {
+                taken++;
+            }
+            for (int i = 0; i < taken; i++) {
+                limit.release(latencyNanos, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.AdmissionController;
+import Util.AdmissionController.Budget;
+import Util.AdmissionController.Route;
+
+public class AdmissionControllerTest {
+    AdmissionController admission;
+
+    /**
+     * Before every test, create a controller whose routes start at a limit of 10, with room for two reads and one
+     * write at once.
+     */
+    @Before
+    public void setUp() {
+        admission = new AdmissionController(10, 1, 2, 1, 3);
+    }
+
+    /**
+     * Admitting requests to two GET routes and two POST routes until both budgets are used up
+     *
+     * Expected Result:
+     *  Reads are refused once the read budget is full, while writes are still admitted from their own budget until
+     *  it is full too
+     */
+    @Test
+    public void readAndWriteBudgetsAreSeparate() {
+        Route messages = admission.register("GET", "/messages");
+        Route message = admission.register("GET", "/messages/{message_id}");
+        Route create = admission.register("POST", "/messages");
+        Route register = admission.register("POST", "/register");
+        Assert.assertEquals(Budget.READ, messages.getBudget());
+        Assert.assertEquals(Budget.WRITE, create.getBudget());
+
+        Assert.assertTrue(messages.tryAdmit());
+        Assert.assertTrue(message.tryAdmit());
+        Assert.assertFalse(messages.tryAdmit());
+        Assert.assertTrue(create.tryAdmit());
+        Assert.assertFalse(register.tryAdmit());
+
+        Assert.assertEquals(2, admission.getBudgetInFlight(Budget.READ));
+        Assert.assertEquals(1, admission.getBudgetInFlight(Budget.WRITE));
+        Assert.assertEquals(1, messages.getRejectedByBudgetCount());
+        Assert.assertEquals(1, register.getRejectedByBudgetCount());
+    }
+
+    /**
+     * Refusing a request because its budget is used up by another route, then finishing that other route's requests
+     *
+     * Expected Result:
+     *  The refused request gives its route slot back, so the route admits again once the budget frees up
+     */
+    @Test
+    public void budgetRejectionReleasesRouteSlot() {
+        Route messages = admission.register("GET", "/messages");
+        Route message = admission.register("GET", "/messages/{message_id}");
+        long admittedAt = System.nanoTime();
+        Assert.assertTrue(messages.tryAdmit());
+        Assert.assertTrue(messages.tryAdmit());
+
+        Assert.assertFalse(message.tryAdmit());
+        Assert.assertEquals(0, message.getLimit().getInFlight());
+        Assert.assertEquals(0, message.getRejectedByLimitCount());
+
+        messages.release(admittedAt, 200);
+        Assert.assertTrue(message.tryAdmit());
+        Assert.assertEquals(1, message.getLimit().getInFlight());
+        Assert.assertEquals(1, message.getAdmittedCount());
+    }
+
+    /**
+     * Admitting requests to a route whose limit is smaller than its budget
+     *
+     * Expected Result:
+     *  The request over the route's limit is refused without taking a budget slot
+     */
+    @Test
+    public void routeLimitRejectionKeepsBudget() {
+        admission = new AdmissionController(1, 1, 5, 5, 3);
+        Route messages = admission.register("GET", "/messages");
+
+        Assert.assertTrue(messages.tryAdmit());
+        Assert.assertFalse(messages.tryAdmit());
+
+        Assert.assertEquals(1, messages.getRejectedByLimitCount());
+        Assert.assertEquals(0, messages.getRejectedByBudgetCount());
+        Assert.assertEquals(1, admission.getBudgetInFlight(Budget.READ));
+    }
+
+    /**
+     * Releasing admitted requests that finished with 500 and with 200, on a route whose limit of 10 is within its
+     * budget
+     *
+     * Expected Result:
+     *  Every slot is freed; the server error shrinks the route's limit and the success on a lightly used route does
+     *  not change it
+     */
+    @Test
+    public void serverErrorShrinksRouteLimit() {
+        admission = new AdmissionController(10, 1, 20, 20, 3);
+        Route messages = admission.register("GET", "/messages");
+        long admittedAt = System.nanoTime();
+
+        Assert.assertTrue(messages.tryAdmit());
+        messages.release(admittedAt, 500);
+        Assert.assertEquals(9, messages.getLimit().getLimit());
+
+        Assert.assertTrue(messages.tryAdmit());
+        messages.release(admittedAt, 200);
+        Assert.assertEquals(9, messages.getLimit().getLimit());
+        Assert.assertEquals(0, messages.getLimit().getInFlight());
+        Assert.assertEquals(0, admission.getBudgetInFlight(Budget.READ));
+    }
+}
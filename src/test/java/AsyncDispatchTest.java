@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.DatabaseExecutor;
+import io.javalin.Javalin;
+
+public class AsyncDispatchTest {
+    DatabaseExecutor executor;
+    HttpClient webClient;
+    Javalin app;
+    String baseUrl;
+    CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Before every test, reset the database and start the app with an async executor of one thread that lets one
+     * request wait, and without admission control, so the tests can fill the executor themselves.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        executor = new DatabaseExecutor(DatabaseExecutor.Mode.ASYNC, 1, 1);
+        app = new SocialMediaController(executor, null).startAPI();
+        webClient = HttpClient.newHttpClient();
+        baseUrl = TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET /messages with an async executor
+     *
+     * Expected Response:
+     *  Status Code: 200, with the handler run on the executor
+     */
+    @Test
+    public void getAllMessagesRunsOnExecutor() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages", null);
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().contains("\"message_id\":1"));
+        awaitTrue(() -> executor.getCompletedCount() == 1);
+    }
+
+    /**
+     * Sending an http request to GET /messages while the executor's thread is busy and its queue is full
+     *
+     * Expected Response:
+     *  Status Code: 503 with a Retry-After header, without waiting for the executor; once the executor drains, the
+     *  same request succeeds
+     */
+    @Test
+    public void getAllMessagesQueueFullIsShed() throws Exception {
+        fillExecutor();
+
+        HttpResponse<String> response = get("/messages", null);
+
+        Assert.assertEquals(503, response.statusCode());
+        Assert.assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+        Assert.assertEquals(1, executor.getRejectionCount());
+
+        release.countDown();
+        awaitTrue(() -> executor.getQueueDepth() == 0 && executor.getActiveCount() == 0);
+        Assert.assertEquals(200, get("/messages", null).statusCode());
+    }
+
+    /**
+     * Sending an http request to GET /messages/1, filling the executor, then requesting the message again, plainly
+     * and with If-None-Match set to its ETag
+     *
+     * Expected Response:
+     *  Status Code: 200 with the cached message and 304, both answered on the request thread without the executor
+     */
+    @Test
+    public void getCachedMessageSkipsExecutor() throws Exception {
+        HttpResponse<String> first = get("/messages/1", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElse(null);
+        fillExecutor();
+        long completed = executor.getCompletedCount();
+
+        HttpResponse<String> cached = get("/messages/1", null);
+        HttpResponse<String> current = get("/messages/1", etag);
+
+        Assert.assertEquals(200, cached.statusCode());
+        Assert.assertEquals(first.body(), cached.body());
+        Assert.assertEquals(etag, cached.headers().firstValue("ETag").orElse(null));
+        Assert.assertEquals(304, current.statusCode());
+        Assert.assertEquals(0, executor.getRejectionCount());
+        Assert.assertEquals(completed, executor.getCompletedCount());
+    }
+
+    /**
+     * Waits for earlier requests to leave the executor, then occupies its one thread and its one queue slot with
+     * tasks that wait for release.
+     */
+    private void fillExecutor() throws InterruptedException {
+        awaitTrue(() -> executor.getQueueDepth() == 0 && executor.getActiveCount() == 0);
+        executor.submit(() -> release.await(10, TimeUnit.SECONDS));
+        awaitTrue(() -> executor.getActiveCount() == 1);
+        executor.submit(() -> release.await(10, TimeUnit.SECONDS));
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create(baseUrl + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Timed out waiting for the executor", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
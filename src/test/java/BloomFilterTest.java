@@ -0,0 +1,108 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.InMemoryAccountRepository;
+import Model.Account;
+import Service.AccountService;
+import Util.BloomFilter;
+
+public class BloomFilterTest {
+    /**
+     * Adding 10000 usernames to a filter sized for them
+     *
+     * Expected Result:
+     *  mightContain answers true for every username that was added
+     */
+    @Test
+    public void noFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("user" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue("user" + i, filter.mightContain("user" + i));
+        }
+        Assert.assertEquals(10000, filter.getInsertionCount());
+    }
+
+    /**
+     * Filling a filter sized for 10000 usernames at 1% and probing 100000 usernames that were never added
+     *
+     * Expected Result:
+     *  Roughly 1% of the probes are false positives, and the estimate agrees with the measurement
+     */
+    @Test
+    public void falsePositiveRateNearTarget() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("user" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("absent" + i)) {
+                falsePositives++;
+            }
+        }
+        double measured = falsePositives / 100000.0;
+        Assert.assertTrue("measured " + measured, measured > 0.005 && measured < 0.02);
+        Assert.assertEquals(0.01, filter.getEstimatedFalsePositiveRate(), 0.005);
+    }
+
+    /**
+     * Invalid sizing
+     *
+     * Expected Result:
+     *  IllegalArgumentException for no expected strings or a rate outside (0, 1)
+     */
+    @Test
+    public void rejectsInvalidSizing() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 0));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 1));
+    }
+
+    /**
+     * Starting the account service with no accounts, and with more accounts than the minimum capacity
+     *
+     * Expected Result:
+     *  The username filter is sized for max(1024, 2 x accounts) and holds every existing username
+     */
+    @Test
+    public void usernameFilterSizingFloor() {
+        Assert.assertEquals(1024, new AccountService(new InMemoryAccountRepository())
+                .getUsernameFilter().getExpectedInsertions());
+
+        InMemoryAccountRepository repository = new InMemoryAccountRepository();
+        for (int i = 0; i < 3000; i++) {
+            repository.insert(new Account("user" + i, "password"));
+        }
+        BloomFilter filter = new AccountService(repository).getUsernameFilter();
+        Assert.assertEquals(6000, filter.getExpectedInsertions());
+        Assert.assertEquals(3000, filter.getInsertionCount());
+    }
+
+    /**
+     * Registering one more account than the username filter was sized for
+     *
+     * Expected Result:
+     *  The service reloads a filter sized for twice the accounts, and it still knows every username
+     */
+    @Test
+    public void usernameFilterReloadsOverCapacity() {
+        AccountService accountService = new AccountService(new InMemoryAccountRepository());
+        BloomFilter initial = accountService.getUsernameFilter();
+        for (int i = 0; i < 1024; i++) {
+            Assert.assertTrue(accountService.createAccount(new Account("user" + i, "password")).isValid());
+        }
+        Assert.assertSame(initial, accountService.getUsernameFilter());
+
+        Assert.assertTrue(accountService.createAccount(new Account("user1024", "password")).isValid());
+        BloomFilter reloaded = accountService.getUsernameFilter();
+        Assert.assertNotSame(initial, reloaded);
+        Assert.assertEquals(2050, reloaded.getExpectedInsertions());
+        Assert.assertEquals(1025, reloaded.getInsertionCount());
+        for (int i = 0; i <= 1024; i++) {
+            Assert.assertTrue("user" + i, reloaded.mightContain("user" + i));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalRetrieveTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    String baseUrl;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        baseUrl = TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET /messages/1, then again with If-None-Match set to the ETag it returned
+     *
+     * Expected Response:
+     *  Status Code: 304 with the same ETag and an empty body
+     */
+    @Test
+    public void getMessageNotModified() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages/1", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElse(null);
+        Assert.assertNotNull(etag);
+
+        HttpResponse<String> second = get("/messages/1", etag);
+        Assert.assertEquals(304, second.statusCode());
+        Assert.assertEquals(etag, second.headers().firstValue("ETag").orElse(null));
+        Assert.assertEquals("", second.body());
+
+        HttpResponse<String> weak = get("/messages/1", "\"other\", W/" + etag);
+        Assert.assertEquals(304, weak.statusCode());
+    }
+
+    /**
+     * Sending http requests to GET /messages/1, GET /messages/100, GET /accounts/1/messages and
+     * GET /accounts/100/messages with If-None-Match: *, twice each so the second message reads come from the cache
+     *
+     * Expected Response:
+     *  Status Code: 304 for the message and account that exist; 200 with the usual empty body and empty list for
+     *  the ones that do not
+     */
+    @Test
+    public void getWildcardMatchesOnlyExistingResources() throws IOException, InterruptedException {
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(304, get("/messages/1", "*").statusCode());
+
+            HttpResponse<String> missing = get("/messages/100", "*");
+            Assert.assertEquals(200, missing.statusCode());
+            Assert.assertEquals("", missing.body());
+        }
+
+        Assert.assertEquals(304, get("/accounts/1/messages", "*").statusCode());
+        HttpResponse<String> missingAccount = get("/accounts/100/messages", "*");
+        Assert.assertEquals(200, missingAccount.statusCode());
+        Assert.assertEquals("[]", missingAccount.body());
+    }
+
+    /**
+     * Sending an http request to PATCH /messages/1, then GET /messages/1 with the ETag from before the update
+     *
+     * Expected Response:
+     *  Status Code: 200 with the updated message and a new ETag
+     */
+    @Test
+    public void getMessageModifiedByUpdate() throws IOException, InterruptedException {
+        String etag = get("/messages/1", null).headers().firstValue("ETag").orElseThrow();
+
+        HttpRequest updateRequest = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(updateRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> response = get("/messages/1", etag);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertNotEquals(etag, response.headers().firstValue("ETag").orElse(null));
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to GET /accounts/1/messages with its ETag, then again after POST /messages and
+     * DELETE /messages/1 by the same account
+     *
+     * Expected Response:
+     *  Status Code: 304 while the account's messages are unchanged, 200 with the current messages after each change
+     */
+    @Test
+    public void getAccountMessagesModifiedByCreateAndDelete() throws IOException, InterruptedException {
+        String etag = get("/accounts/1/messages", null).headers().firstValue("ETag").orElseThrow();
+        Assert.assertEquals(304, get("/accounts/1/messages", etag).statusCode());
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, "
+                        + "\"message_text\": \"hello message\", \"time_posted_epoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> afterCreate = get("/accounts/1/messages", etag);
+        Assert.assertEquals(200, afterCreate.statusCode());
+        List<Message> messages = objectMapper.readValue(afterCreate.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, messages.size());
+        String createdEtag = afterCreate.headers().firstValue("ETag").orElseThrow();
+        Assert.assertNotEquals(etag, createdEtag);
+        Assert.assertEquals(304, get("/accounts/1/messages", createdEtag).statusCode());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> afterDelete = get("/accounts/1/messages", createdEtag);
+        Assert.assertEquals(200, afterDelete.statusCode());
+        messages = objectMapper.readValue(afterDelete.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(1, messages.size());
+    }
+
+    /**
+     * Sending an http request to GET /accounts/1/messages?limit=1 with the ETag of the account's messages, then
+     * GET /metrics
+     *
+     * Expected Response:
+     *  Status Code: 304, and no SQL statement recorded for the route
+     */
+    @Test
+    public void getAccountMessagesNotModifiedRunsNoQuery() throws IOException, InterruptedException {
+        String etag = get("/accounts/1/messages?limit=1", null).headers().firstValue("ETag").orElseThrow();
+        String before = statementsLine();
+
+        Assert.assertEquals(304, get("/accounts/1/messages?limit=1", etag).statusCode());
+        Assert.assertEquals(before, statementsLine());
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create(baseUrl + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String statementsLine() throws IOException, InterruptedException {
+        return get("/metrics", null).body().lines()
+                .filter(line -> line.startsWith("socialmedia_http_request_db_statements_total{method=\"GET\","
+                        + "path=\"/accounts/{account_id}/messages\"}"))
+                .findFirst().orElseThrow();
+    }
+}
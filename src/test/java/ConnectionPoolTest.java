@@ -0,0 +1,164 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    /**
+     * Physical connections opened by the pool under test, in order.
+     */
+    List<Connection> opened = new CopyOnWriteArrayList<>();
+    ConnectionPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Borrowing from a pool of one connection while it is lent out
+     *
+     * Expected Result:
+     *  SQLException after the acquire timeout, counted as a timeout; the connection can be borrowed once returned
+     */
+    @Test
+    public void getConnectionTimesOutWhenExhausted() throws SQLException {
+        pool = newPool(1, 100, 0);
+        Connection first = pool.getConnection();
+
+        long start = System.nanoTime();
+        try {
+            pool.getConnection();
+            Assert.fail("Expected the second borrow to time out");
+        } catch (SQLException e) {
+            Assert.assertTrue((System.nanoTime() - start) / 1000000 >= 100);
+        }
+        Assert.assertEquals(1, pool.getTimeoutCount());
+
+        first.close();
+        try (Connection second = pool.getConnection()) {
+            Assert.assertEquals(1, query(second));
+        }
+        Assert.assertEquals(1, opened.size());
+    }
+
+    /**
+     * Returning a connection, breaking its physical connection, then borrowing again after the validation interval
+     *
+     * Expected Result:
+     *  The broken connection is discarded and a working one is opened in its place
+     */
+    @Test
+    public void getConnectionValidatesIdleConnections() throws Exception {
+        pool = newPool(2, 1000, 0);
+        pool.getConnection().close();
+        opened.get(0).close();
+
+        Thread.sleep(1100);
+        try (Connection connection = pool.getConnection()) {
+            Assert.assertEquals(1, query(connection));
+        }
+        Assert.assertEquals(2, opened.size());
+        Assert.assertEquals(1, pool.getTotalCount());
+    }
+
+    /**
+     * Borrowing a connection and holding it past the leak detection threshold
+     *
+     * Expected Result:
+     *  The connection is counted as a leak once, and returning it afterwards still works
+     */
+    @Test
+    public void housekeepingCountsLeaks() throws Exception {
+        pool = newPool(2, 1000, 50);
+        Connection leaked = pool.getConnection();
+        pool.getConnection().close();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getLeakCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(1200);
+        Assert.assertEquals(1, pool.getLeakCount());
+
+        leaked.close();
+        Assert.assertEquals(0, pool.getActiveCount());
+    }
+
+    /**
+     * Closing a handle twice, using it after close, and closing the pool
+     *
+     * Expected Result:
+     *  The connection is returned once, a closed handle refuses work, and a closed pool refuses to lend
+     */
+    @Test
+    public void closeReturnsOnceAndClosesPool() throws SQLException {
+        pool = newPool(2, 1000, 0);
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.close();
+        Assert.assertEquals(1, pool.getIdleCount());
+        Assert.assertTrue(connection.isClosed());
+        try {
+            connection.createStatement();
+            Assert.fail("Expected a closed handle to refuse work");
+        } catch (SQLException expected) {
+        }
+
+        Connection borrowed = pool.getConnection();
+        pool.close();
+        borrowed.close();
+        Assert.assertEquals(0, pool.getTotalCount());
+        Assert.assertTrue(opened.get(0).isClosed());
+        try {
+            pool.getConnection();
+            Assert.fail("Expected a closed pool to refuse to lend");
+        } catch (SQLException expected) {
+        }
+    }
+
+    private ConnectionPool newPool(int maxSize, long acquireTimeoutMillis, long leakDetectionThresholdMillis) {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:pool-test-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        h2.setPassword("sa");
+        // Record every physical connection the pool opens, so tests can inspect or break them
+        DataSource dataSource = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[] { DataSource.class }, (proxy, method, args) -> {
+                    try {
+                        Object result = method.invoke(h2, args);
+                        if (result instanceof Connection) {
+                            opened.add((Connection) result);
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        return new ConnectionPool(dataSource, 0, maxSize, acquireTimeoutMillis, 600000,
+                leakDetectionThresholdMillis, 8, null);
+    }
+
+    private static int query(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT 1")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.DatabaseExecutor;
+
+public class DatabaseExecutorTest {
+    DatabaseExecutor executor;
+    CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    /**
+     * Submitting a task to a blocking executor
+     *
+     * Expected Result:
+     *  The task has run on the calling thread by the time submit returns
+     */
+    @Test
+    public void blockingRunsOnCallingThread() throws Exception {
+        executor = new DatabaseExecutor(DatabaseExecutor.Mode.BLOCKING, 2, 10);
+
+        Future<String> thread = executor.submit(() -> Thread.currentThread().getName());
+
+        Assert.assertTrue(executor.isInline());
+        Assert.assertTrue(thread.isDone());
+        Assert.assertEquals(Thread.currentThread().getName(), thread.get());
+    }
+
+    /**
+     * Submitting a task to an async executor
+     *
+     * Expected Result:
+     *  The task runs on one of the executor's own threads and is counted as completed
+     */
+    @Test
+    public void asyncRunsOnExecutorThreads() throws Exception {
+        executor = new DatabaseExecutor(DatabaseExecutor.Mode.ASYNC, 2, 10);
+
+        String thread = executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+
+        Assert.assertFalse(executor.isInline());
+        Assert.assertTrue(thread, thread.startsWith("db-executor-"));
+        awaitTrue(() -> executor.getCompletedCount() == 1);
+        Assert.assertEquals(1, executor.getQueueWait().getCount());
+    }
+
+    /**
+     * Submitting three tasks to an async executor with one thread and room for one waiting task, while the first
+     * blocks
+     *
+     * Expected Result:
+     *  The third is rejected straight away and counted; the other two finish once the first is released
+     */
+    @Test
+    public void asyncRejectsWhenQueueFull() throws Exception {
+        executor = new DatabaseExecutor(DatabaseExecutor.Mode.ASYNC, 1, 1);
+        Future<Boolean> running = executor.submit(() -> release.await(5, TimeUnit.SECONDS));
+        awaitTrue(() -> executor.getActiveCount() == 1);
+        Future<Boolean> queued = executor.submit(() -> release.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, executor.getQueueDepth());
+
+        try {
+            executor.submit(() -> true);
+            Assert.fail("Expected the full queue to reject the task");
+        } catch (RejectedExecutionException expected) {
+        }
+        Assert.assertEquals(1, executor.getRejectionCount());
+        Assert.assertEquals(1, executor.getQueueDepth());
+
+        release.countDown();
+        Assert.assertTrue(running.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Creating a virtual executor, which needs the virtual threads of Java 21
+     *
+     * Expected Result:
+     *  Before Java 21 it falls back to async and runs tasks on its own threads; from Java 21 it stays virtual. In
+     *  both cases submitted tasks run
+     */
+    @Test
+    public void virtualFallsBackToAsyncBeforeJava21() throws Exception {
+        executor = new DatabaseExecutor(DatabaseExecutor.Mode.VIRTUAL, 2, 10);
+
+        String thread = executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+
+        if (Runtime.version().feature() < 21) {
+            Assert.assertEquals(DatabaseExecutor.Mode.ASYNC, executor.getMode());
+            Assert.assertTrue(thread, thread.startsWith("db-executor-"));
+        } else {
+            Assert.assertEquals(DatabaseExecutor.Mode.VIRTUAL, executor.getMode());
+        }
+        Assert.assertFalse(executor.isInline());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Timed out waiting for the executor", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.DatasetGenerator;
+
+public class DatasetGeneratorTest {
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Generating 50 accounts and 2000 messages on top of the test script's single account and message
+     *
+     * Expected Result:
+     *  Exactly that many rows are added, messages are posted by the new accounts in time order, and no text is
+     *  longer than 254 characters
+     */
+    @Test
+    public void generateAddsRequestedCounts() throws SQLException {
+        new DatasetGenerator(7, 1.1).generate(50, 2000);
+
+        List<String> accounts = rows("SELECT account_id, username, password FROM account ORDER BY account_id");
+        Assert.assertEquals(51, accounts.size());
+        Assert.assertEquals("2|user2|password2", accounts.get(1));
+
+        List<String> messages = rows("SELECT message_id, posted_by, message_text, time_posted_epoch FROM message"
+                + " WHERE message_id > 1 ORDER BY message_id");
+        Assert.assertEquals(2000, messages.size());
+        long previous = Long.MIN_VALUE;
+        for (String message : messages) {
+            String[] columns = message.split("\\|");
+            int postedBy = Integer.parseInt(columns[1]);
+            Assert.assertTrue(message, postedBy >= 2 && postedBy <= 51);
+            Assert.assertTrue(message, columns[2].length() <= 254);
+            long time = Long.parseLong(columns[3]);
+            Assert.assertTrue(message, time >= previous);
+            previous = time;
+        }
+    }
+
+    /**
+     * Generating the same dataset twice from a freshly reset database, then once more with another seed
+     *
+     * Expected Result:
+     *  The same seed produces identical rows; another seed produces different messages
+     */
+    @Test
+    public void sameSeedSameRows() throws SQLException {
+        new DatasetGenerator(7, 1.1).generate(20, 500);
+        List<String> first = rows("SELECT * FROM message ORDER BY message_id");
+
+        ConnectionUtil.resetTestDatabase();
+        new DatasetGenerator(7, 1.1).generate(20, 500);
+        Assert.assertEquals(first, rows("SELECT * FROM message ORDER BY message_id"));
+
+        ConnectionUtil.resetTestDatabase();
+        new DatasetGenerator(8, 1.1).generate(20, 500);
+        Assert.assertNotEquals(first, rows("SELECT * FROM message ORDER BY message_id"));
+    }
+
+    /**
+     * @return Each row of the query with its columns joined by |.
+     */
+    private static List<String> rows(String sql) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery()) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= columns; i++) {
+                    if (i > 1) {
+                        row.append('|');
+                    }
+                    row.append(rs.getString(i));
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+}
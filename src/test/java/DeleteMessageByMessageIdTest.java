@@ -22,6 +22,7 @@ public class DeleteMessageByMessageIdTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    String baseUrl;
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
@@ -35,8 +36,7 @@ public class DeleteMessageByMessageIdTest {
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        baseUrl = TestServer.start(app);
     }
 
     @After
@@ -46,7 +46,7 @@ public class DeleteMessageByMessageIdTest {
 
 
     /**
-     * Sending an http request to DELETE localhost:8080/messages/1 (message exists)
+     * Sending an http request to DELETE /messages/1 (message exists)
      * 
      * Expected Response:
      *  Status Code: 200
@@ -55,7 +55,7 @@ public class DeleteMessageByMessageIdTest {
     @Test
     public void deleteMessageGivenMessageIdMessageFound() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/1"))
+                .uri(URI.create(baseUrl + "/messages/1"))
                 .DELETE()
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
@@ -69,7 +69,7 @@ public class DeleteMessageByMessageIdTest {
     }
 
     /**
-     * Sending an http request to DELETE localhost:8080/messages/100 (message does NOT exists)
+     * Sending an http request to DELETE /messages/100 (message does NOT exists)
      * 
      * Expected Response:
      *  Status Code: 200
@@ -78,7 +78,7 @@ public class DeleteMessageByMessageIdTest {
     @Test
     public void deleteMessageGivenMessageIdMessageNotFound() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/100"))
+                .uri(URI.create(baseUrl + "/messages/100"))
                 .DELETE()
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
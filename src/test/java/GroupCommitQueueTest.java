@@ -0,0 +1,258 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.GroupCommitQueue;
+
+public class GroupCommitQueueTest {
+    /**
+     * Sizes of the batches handed to the batch writer, in order.
+     */
+    List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    /**
+     * Items stored one at a time by the single writer, in order.
+     */
+    List<Integer> singles = Collections.synchronizedList(new ArrayList<>());
+    GroupCommitQueue<Integer, Integer> queue;
+
+    @After
+    public void tearDown() {
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    /**
+     * 16 threads each submitting 100 items while every batch write takes a millisecond
+     *
+     * Expected Result:
+     *  Every future completes with its own result, no batch exceeds the maximum size, and items share batches
+     */
+    @Test
+    public void concurrentSubmitsShareBatches() throws Exception {
+        queue = newQueue(items -> {
+            sleep(1);
+            return doubled(items);
+        }, 10000, 50, 1000);
+        ExecutorService submitters = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                int thread = t;
+                done.add(submitters.submit(() -> {
+                    List<CompletableFuture<Integer>> futures = new ArrayList<>();
+                    for (int i = 0; i < 100; i++) {
+                        futures.add(queue.submit(thread * 100 + i));
+                    }
+                    for (int i = 0; i < 100; i++) {
+                        Assert.assertEquals(2 * (thread * 100 + i), (int) futures.get(i).join());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            submitters.shutdownNow();
+        }
+        Assert.assertEquals(1600, queue.getItemCount());
+        Assert.assertTrue(queue.getMaxBatchSize() <= 50);
+        Assert.assertTrue("batches " + queue.getBatchCount(), queue.getBatchCount() < 1600);
+        Assert.assertTrue(queue.getAverageBatchSize() > 1);
+        Assert.assertEquals(0, queue.getFallbackCount());
+        Assert.assertTrue(singles.isEmpty());
+    }
+
+    /**
+     * Submitting one item, then a second one well within the linger time
+     *
+     * Expected Result:
+     *  The writer holds the first item back until the second arrives, and both are stored in one batch
+     */
+    @Test
+    public void lingerCollectsLateItems() throws Exception {
+        queue = newQueue(this::doubled, 100, 10, TimeUnit.SECONDS.toMicros(2));
+        CompletableFuture<Integer> first = queue.submit(1);
+        sleep(100);
+        Assert.assertFalse(first.isDone());
+        CompletableFuture<Integer> second = queue.submit(2);
+
+        Assert.assertEquals(2, (int) first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(4, (int) second.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(List.of(2), batchSizes);
+    }
+
+    /**
+     * Submitting a single item with a short linger time and nothing else arriving
+     *
+     * Expected Result:
+     *  The writer gives up waiting once the linger time has passed and stores the item on its own
+     */
+    @Test
+    public void lingerTimesOut() throws Exception {
+        queue = newQueue(this::doubled, 100, 10, TimeUnit.MILLISECONDS.toMicros(50));
+        long startedAt = System.nanoTime();
+        Assert.assertEquals(6, (int) queue.submit(3).get(5, TimeUnit.SECONDS));
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        Assert.assertTrue("waited " + waitedMillis, waitedMillis >= 40 && waitedMillis < 2000);
+        Assert.assertEquals(List.of(1), batchSizes);
+    }
+
+    /**
+     * A batch writer that fails, and a single writer that fails for one item
+     *
+     * Expected Result:
+     *  Every item is retried alone; the bad item's future fails and the others still succeed
+     */
+    @Test
+    public void failedBatchFallsBackToSingleWrites() throws Exception {
+        queue = new GroupCommitQueue<>("group-commit-test", items -> {
+            batchSizes.add(items.size());
+            throw new IllegalStateException("batch failed");
+        }, item -> {
+            if (item == 2) {
+                throw new IllegalArgumentException("bad item");
+            }
+            singles.add(item);
+            return item * 2;
+        }, 100, 10, TimeUnit.MILLISECONDS.toMicros(200), 1000);
+        CompletableFuture<Integer> first = queue.submit(1);
+        CompletableFuture<Integer> bad = queue.submit(2);
+        CompletableFuture<Integer> third = queue.submit(3);
+
+        Assert.assertEquals(2, (int) first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(6, (int) third.get(5, TimeUnit.SECONDS));
+        try {
+            bad.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected the bad item to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        Assert.assertEquals(List.of(3), batchSizes);
+        Assert.assertEquals(List.of(1, 3), singles);
+        Assert.assertEquals(1, queue.getFallbackCount());
+    }
+
+    /**
+     * A batch writer returning null, as MessageDAO.insertAll does when its transaction is rolled back
+     *
+     * Expected Result:
+     *  The items are retried alone with the single writer
+     */
+    @Test
+    public void nullBatchResultFallsBackToSingleWrites() throws Exception {
+        queue = newQueue(items -> null, 100, 10, 0);
+
+        Assert.assertEquals(10, (int) queue.submit(5).get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(List.of(5), singles);
+        Assert.assertEquals(1, queue.getFallbackCount());
+    }
+
+    /**
+     * Closing the queue while the writer is busy and more items are waiting behind it
+     *
+     * Expected Result:
+     *  close() returns only after every queued item is stored, and later submits are refused
+     */
+    @Test
+    public void closeDrainsPendingWrites() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        queue = newQueue(items -> {
+            writing.countDown();
+            sleep(100);
+            return doubled(items);
+        }, 100, 5, 0);
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        futures.add(queue.submit(0));
+        Assert.assertTrue(writing.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 20; i++) {
+            futures.add(queue.submit(i));
+        }
+
+        queue.close();
+        for (int i = 0; i < 20; i++) {
+            Assert.assertTrue(futures.get(i).isDone());
+            Assert.assertEquals(2 * i, (int) futures.get(i).get());
+        }
+        Assert.assertEquals(20, queue.getItemCount());
+        Assert.assertEquals(0, queue.getQueueDepth());
+        Assert.assertThrows(RejectedExecutionException.class, () -> queue.submit(20));
+    }
+
+    /**
+     * Filling a queue of capacity 2 while the writer is stuck on the first batch
+     *
+     * Expected Result:
+     *  The submit that finds the queue still full after the enqueue timeout is rejected and counted
+     */
+    @Test
+    public void fullQueueRejectsAfterTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        queue = new GroupCommitQueue<>("group-commit-test", items -> {
+            writing.countDown();
+            await(release);
+            return doubled(items);
+        }, item -> item * 2, 2, 1, 0, 50);
+        CompletableFuture<Integer> first = queue.submit(1);
+        Assert.assertTrue(writing.await(5, TimeUnit.SECONDS));
+        queue.submit(2);
+        queue.submit(3);
+
+        Assert.assertThrows(RejectedExecutionException.class, () -> queue.submit(4));
+        Assert.assertEquals(1, queue.getRejectionCount());
+        release.countDown();
+        Assert.assertEquals(2, (int) first.get(5, TimeUnit.SECONDS));
+    }
+
+    private GroupCommitQueue<Integer, Integer> newQueue(Function<List<Integer>, List<Integer>> batchWriter,
+            int queueCapacity, int maxBatchSize, long maxLingerMicros) {
+        return new GroupCommitQueue<>("group-commit-test", items -> {
+            batchSizes.add(items.size());
+            return batchWriter.apply(items);
+        }, item -> {
+            singles.add(item);
+            return item * 2;
+        }, queueCapacity, maxBatchSize, maxLingerMicros, 1000);
+    }
+
+    private List<Integer> doubled(List<Integer> items) {
+        List<Integer> results = new ArrayList<>(items.size());
+        for (int item : items) {
+            results.add(item * 2);
+        }
+        return results;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
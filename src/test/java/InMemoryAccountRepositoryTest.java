@@ -0,0 +1,100 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.AccountRepository;
+import DAO.InMemoryAccountRepository;
+import DAO.StorageEngine;
+import Model.Account;
+import Util.ConnectionUtil;
+
+public class InMemoryAccountRepositoryTest {
+    /**
+     * Sixteen threads registering the same username at once, repeated 100 times with fresh usernames
+     *
+     * Expected Result:
+     *  Exactly one registration of each username wins; the others get account_id 0 and store nothing
+     */
+    @Test
+    public void concurrentRegistrationsOfOneUsernameStoreOne() throws Exception {
+        InMemoryAccountRepository repository = new InMemoryAccountRepository();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            for (int round = 0; round < 100; round++) {
+                String username = "user" + round;
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Account>> attempts = new ArrayList<>();
+                for (int t = 0; t < 16; t++) {
+                    String password = "password" + t;
+                    attempts.add(executor.submit(() -> {
+                        start.await();
+                        return repository.insert(new Account(username, password));
+                    }));
+                }
+                start.countDown();
+
+                Account winner = null;
+                for (Future<Account> attempt : attempts) {
+                    Account account = attempt.get(10, TimeUnit.SECONDS);
+                    if (account.getAccount_id() != 0) {
+                        Assert.assertNull("Two registrations of " + username + " won", winner);
+                        winner = account;
+                    }
+                }
+                Assert.assertNotNull(winner);
+                Assert.assertEquals(winner, repository.getAccountByID(winner.getAccount_id()));
+                Assert.assertEquals(winner, repository.validateLogin(new Account(username, winner.getPassword())));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(100, repository.countAccounts());
+    }
+
+    /**
+     * Registering two usernames, then one of them again
+     *
+     * Expected Result:
+     *  Ids are allocated from 1, the duplicate is refused, and lookups and logins see only the stored accounts
+     */
+    @Test
+    public void insertAllocatesIdsAndRefusesDuplicates() {
+        InMemoryAccountRepository repository = new InMemoryAccountRepository();
+        Account first = repository.insert(new Account("first", "password1"));
+        Account second = repository.insert(new Account("second", "password2"));
+        Account duplicate = repository.insert(new Account("first", "other"));
+
+        Assert.assertEquals(1, first.getAccount_id());
+        Assert.assertEquals(2, second.getAccount_id());
+        Assert.assertEquals(0, duplicate.getAccount_id());
+        Assert.assertEquals(2, repository.countAccounts());
+        Assert.assertTrue(repository.checkUsernameExists("first"));
+        Assert.assertFalse(repository.checkUsernameExists("third"));
+        Assert.assertNull(repository.validateLogin(new Account("first", "other")));
+        Assert.assertEquals(second, repository.getAccountByID(2));
+        Assert.assertNull(repository.getAccountByID(3));
+    }
+
+    /**
+     * A repository from the memory engine, which copies the test database's account 1, then registering
+     *
+     * Expected Result:
+     *  The copied username stays taken, and the next account is numbered after the copied one
+     */
+    @Test
+    public void copyFromDatabaseContinuesIds() {
+        ConnectionUtil.resetTestDatabase();
+        AccountRepository repository = StorageEngine.MEMORY.newAccountRepository();
+
+        Assert.assertTrue(repository.checkUsernameExists("testuser1"));
+        Assert.assertEquals(2, repository.insert(new Account("newuser", "password")).getAccount_id());
+        Assert.assertEquals(0, repository.insert(new Account("testuser1", "password")).getAccount_id());
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.InMemoryMessageRepository;
+import DAO.MessageRepository;
+import DAO.StorageEngine;
+import Model.Message;
+import Model.MessageCursor;
+import Util.ConnectionUtil;
+
+public class InMemoryMessageRepositoryTest {
+    /**
+     * Eight threads inserting 500 messages each, one at a time and in batches of ten
+     *
+     * Expected Result:
+     *  Every message gets its own message_id, batches get contiguous ones, and the ids run from 1 without gaps
+     */
+    @Test
+    public void concurrentInsertsGetUniqueIds() throws Exception {
+        InMemoryMessageRepository repository = new InMemoryMessageRepository();
+        List<Integer> ids = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                boolean batched = t % 2 == 0;
+                done.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        if (batched) {
+                            List<Message> batch = new ArrayList<>();
+                            for (int j = 0; j < 10; j++) {
+                                batch.add(new Message(1, "batched", 1669947792L));
+                            }
+                            List<Message> inserted = repository.insertAll(batch);
+                            for (int j = 0; j < inserted.size(); j++) {
+                                Assert.assertEquals(inserted.get(0).getMessage_id() + j,
+                                        inserted.get(j).getMessage_id());
+                                ids.add(inserted.get(j).getMessage_id());
+                            }
+                        } else {
+                            for (int j = 0; j < 10; j++) {
+                                ids.add(repository.insert(new Message(1, "single", 1669947792L)).getMessage_id());
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Collections.sort(ids);
+        Assert.assertEquals(4000, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Assert.assertEquals(i + 1, (int) ids.get(i));
+        }
+        Assert.assertEquals(4000, repository.getAllMessages().size());
+    }
+
+    /**
+     * A repository from the memory engine, which copies the test database's message 1, then inserting
+     *
+     * Expected Result:
+     *  The copied message keeps its id and the next insert is numbered after it
+     */
+    @Test
+    public void copyFromDatabaseContinuesIds() {
+        ConnectionUtil.resetTestDatabase();
+        MessageRepository repository = StorageEngine.MEMORY.newMessageRepository();
+
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), repository.getMessageByID(1));
+        Assert.assertEquals(2, repository.insert(new Message(1, "second", 1669947793L)).getMessage_id());
+    }
+
+    /**
+     * Inserting messages out of time order, then updating one and deleting another
+     *
+     * Expected Result:
+     *  Listings and pages are ordered by time_posted_epoch then message_id, reflect the update and leave out the
+     *  deleted message
+     */
+    @Test
+    public void listingsFollowTimeOrderAndWrites() {
+        InMemoryMessageRepository repository = new InMemoryMessageRepository();
+        repository.insert(new Message(1, "third", 30));
+        repository.insert(new Message(1, "first", 10));
+        repository.insert(new Message(2, "other account", 20));
+        repository.insert(new Message(1, "second", 10));
+
+        Assert.assertEquals("changed", repository.updateText(2, "changed").getMessage_text());
+        Assert.assertNull(repository.updateText(99, "missing"));
+        Assert.assertEquals("third", repository.delete(1).getMessage_text());
+        Assert.assertNull(repository.delete(1));
+
+        List<Message> timeline = repository.getAllMessagesByAccountID(1);
+        Assert.assertEquals(List.of(new Message(2, 1, "changed", 10), new Message(4, 1, "second", 10)), timeline);
+
+        List<Message> firstPage = repository.getMessagesPage(null, 2);
+        Assert.assertEquals(List.of(2, 4), List.of(firstPage.get(0).getMessage_id(),
+                firstPage.get(1).getMessage_id()));
+        Message last = firstPage.get(1);
+        List<Message> secondPage = repository.getMessagesPage(
+                new MessageCursor(last.getTime_posted_epoch(), last.getMessage_id()), 2);
+        Assert.assertEquals(List.of(new Message(3, 2, "other account", 20)), secondPage);
+    }
+}
@@ -0,0 +1,159 @@
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.LatencyHistogram;
+
+public class LatencyHistogramTest {
+    /**
+     * The largest relative amount a reported value may exceed the true one by: one bucket out of the 64 that split
+     * each power of two.
+     */
+    private static final double BUCKET_ERROR = 1.0 / 64;
+
+    LatencyHistogram histogram;
+
+    @Before
+    public void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    /**
+     * Reading a histogram nothing was recorded in
+     *
+     * Expected Result:
+     *  Every quantile, the count, the sum and the maximum are 0
+     */
+    @Test
+    public void emptyHistogramReportsZero() {
+        Assert.assertEquals(0, histogram.getValueAtQuantile(0.5));
+        Assert.assertEquals(0, histogram.getValueAtQuantile(1.0));
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getSumNanos());
+        Assert.assertEquals(0, histogram.getMaxNanos());
+    }
+
+    /**
+     * Recording the durations 1 to 100ns once each, all of which have a bucket of their own
+     *
+     * Expected Result:
+     *  Quantiles are exact, and the count, sum and maximum match the durations
+     */
+    @Test
+    public void smallValuesAreExact() {
+        for (int i = 100; i >= 1; i--) {
+            histogram.record(i);
+        }
+
+        Assert.assertEquals(1, histogram.getValueAtQuantile(0.0));
+        Assert.assertEquals(1, histogram.getValueAtQuantile(0.01));
+        Assert.assertEquals(50, histogram.getValueAtQuantile(0.5));
+        Assert.assertEquals(90, histogram.getValueAtQuantile(0.9));
+        Assert.assertEquals(99, histogram.getValueAtQuantile(0.99));
+        Assert.assertEquals(100, histogram.getValueAtQuantile(1.0));
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(5050, histogram.getSumNanos());
+        Assert.assertEquals(100, histogram.getMaxNanos());
+    }
+
+    /**
+     * Recording the durations 1ns to 1ms once each, a uniform distribution spanning 14 powers of two
+     *
+     * Expected Result:
+     *  Each quantile is reported at or above its true value, and less than one bucket above it
+     */
+    @Test
+    public void uniformDistributionIsWithinOneBucket() {
+        int n = 1000000;
+        for (int i = 1; i <= n; i++) {
+            histogram.record(i);
+        }
+
+        for (double quantile : new double[] { 0.1, 0.5, 0.75, 0.9, 0.99, 0.999, 0.9999 }) {
+            assertWithinOneBucket((long) Math.ceil(quantile * n), histogram.getValueAtQuantile(quantile));
+        }
+        Assert.assertEquals(n, histogram.getValueAtQuantile(1.0));
+        Assert.assertEquals((long) n * (n + 1) / 2, histogram.getSumNanos());
+    }
+
+    /**
+     * Recording 990 requests of 1us and 10 of 1ms, a fast path with a slow tail
+     *
+     * Expected Result:
+     *  The median and p99 fall in the 1us bucket, whose highest value is 1007ns; p99.5 and above report the tail's
+     *  maximum, capped at the 1ms actually recorded
+     */
+    @Test
+    public void bimodalDistributionSeparatesTail() {
+        for (int i = 0; i < 990; i++) {
+            histogram.record(1000);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1000000);
+        }
+
+        Assert.assertEquals(1007, histogram.getValueAtQuantile(0.5));
+        Assert.assertEquals(1007, histogram.getValueAtQuantile(0.99));
+        Assert.assertEquals(1000000, histogram.getValueAtQuantile(0.995));
+        Assert.assertEquals(1000000, histogram.getValueAtQuantile(0.999));
+    }
+
+    /**
+     * Recording values around every power of two up to 2^39, plus random ones, each next to a far larger value so
+     * the lower one is reported as its bucket's highest value
+     *
+     * Expected Result:
+     *  The bucket's highest value is at or above the value and less than one bucket above it, and recording that
+     *  highest value lands in the same bucket
+     */
+    @Test
+    public void bucketBoundsHoldAcrossMagnitudes() {
+        Random random = new Random(42);
+        for (int magnitude = 0; magnitude < 40; magnitude++) {
+            long power = 1L << magnitude;
+            assertBucketBounds(power - 1);
+            assertBucketBounds(power);
+            assertBucketBounds(power + 1);
+            assertBucketBounds(power + random.nextInt((int) Math.min(power, Integer.MAX_VALUE)));
+        }
+    }
+
+    /**
+     * Recording a negative duration and one beyond the 2^40ns the histogram tracks
+     *
+     * Expected Result:
+     *  The negative one counts as 0; the long one keeps its exact maximum but is reported at the last bucket's top
+     */
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        histogram.record(-5);
+        Assert.assertEquals(0, histogram.getValueAtQuantile(1.0));
+        Assert.assertEquals(0, histogram.getSumNanos());
+
+        histogram.record(1L << 41);
+        Assert.assertEquals(2, histogram.getCount());
+        Assert.assertEquals(1L << 41, histogram.getMaxNanos());
+        Assert.assertEquals((1L << 40) - 1, histogram.getValueAtQuantile(1.0));
+    }
+
+    private static void assertBucketBounds(long value) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(value);
+        histogram.record(1L << 40);
+        long highest = histogram.getValueAtQuantile(0.5);
+        assertWithinOneBucket(value, highest);
+
+        LatencyHistogram top = new LatencyHistogram();
+        top.record(highest);
+        top.record(1L << 40);
+        Assert.assertEquals("Bucket of " + value, highest, top.getValueAtQuantile(0.5));
+    }
+
+    private static void assertWithinOneBucket(long expected, long reported) {
+        Assert.assertTrue(reported + " is below " + expected, reported >= expected);
+        Assert.assertTrue(reported + " is more than a bucket above " + expected,
+                expected < 128 ? reported == expected : reported < expected * (1 + BUCKET_ERROR));
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.AdmissionController;
+import Util.AdmissionController.Budget;
+import Util.AdmissionController.Route;
+import Util.ConnectionUtil;
+import Util.DatabaseExecutor;
+import io.javalin.Javalin;
+
+public class LoadSheddingTest {
+    AdmissionController admission;
+    HttpClient webClient;
+    Javalin app;
+    String baseUrl;
+
+    /**
+     * Before every test, reset the database and start the app with an admission controller that admits one read and
+     * one write at a time and asks shed clients to retry after 7 seconds.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        admission = new AdmissionController(20, 4, 1, 1, 7);
+        app = new SocialMediaController(new DatabaseExecutor(DatabaseExecutor.Mode.BLOCKING, 16, 1000), admission)
+                .startAPI();
+        webClient = HttpClient.newHttpClient();
+        baseUrl = TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET /messages while another read holds the whole read budget, and to
+     * POST /login meanwhile
+     *
+     * Expected Response:
+     *  Status Code: 503 with Retry-After: 7 for the read, whose route slot is given back; the login is still admitted
+     *  from the write budget; once the other read finishes, GET /messages succeeds
+     */
+    @Test
+    public void readOverBudgetIsShed() throws IOException, InterruptedException {
+        Route hold = admission.register("GET", "/hold");
+        long admittedAt = System.nanoTime();
+        Assert.assertTrue(hold.tryAdmit());
+
+        HttpResponse<String> shed = send(HttpRequest.newBuilder().uri(URI.create(baseUrl + "/messages")).build());
+        HttpResponse<String> login = send(HttpRequest.newBuilder().uri(URI.create(baseUrl + "/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser1\",\"password\":\"password\"}"))
+                .header("Content-Type", "application/json").build());
+
+        Assert.assertEquals(503, shed.statusCode());
+        Assert.assertEquals("7", shed.headers().firstValue("Retry-After").orElse(null));
+        Assert.assertEquals(200, login.statusCode());
+        Route messages = route("GET", "/messages");
+        Assert.assertEquals(1, messages.getRejectedByBudgetCount());
+        Assert.assertEquals(0, messages.getLimit().getInFlight());
+
+        hold.release(admittedAt, 200);
+        Assert.assertEquals(200, send(HttpRequest.newBuilder().uri(URI.create(baseUrl + "/messages")).build())
+                .statusCode());
+        Assert.assertEquals(0, admission.getBudgetInFlight(Budget.READ));
+    }
+
+    private Route route(String method, String path) {
+        for (Route route : admission.getRoutes()) {
+            if (route.getMethod().equals(method) && route.getPath().equals(path)) {
+                return route;
+            }
+        }
+        throw new AssertionError("No route " + method + " " + path);
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.LogMessageRepository;
+import Model.Message;
+
+public class LogMessageRepositoryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    LogMessageRepository log;
+
+    @After
+    public void tearDown() {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    /**
+     * Inserting, updating and batch inserting messages, then closing and opening the log again
+     *
+     * Expected Result:
+     *  Every message is replayed with its latest text, and new messages are numbered after the replayed ones
+     */
+    @Test
+    public void reopenReplaysMessages() throws IOException {
+        log = open(1 << 16);
+        log.insert(new Message(1, "first", 100));
+        log.insert(new Message(2, "second", 200));
+        log.updateText(1, "first, edited");
+        Assert.assertNotNull(log.insertAll(List.of(new Message(1, "third", 300), new Message(2, "fourth", 400))));
+        List<Message> before = log.getAllMessages();
+
+        reopen(1 << 16);
+
+        Assert.assertEquals(before, log.getAllMessages());
+        Assert.assertEquals(new Message(1, 1, "first, edited", 100), log.getMessageByID(1));
+        Assert.assertEquals(5, log.insert(new Message(1, "fifth", 500)).getMessage_id());
+        Assert.assertEquals(List.of(1, 3, 5), ids(log.getAllMessagesByAccountID(1)));
+    }
+
+    /**
+     * Corrupting the last record written, as a crash in the middle of the write would, then opening the log again
+     *
+     * Expected Result:
+     *  The torn record is discarded and cleared, and messages written afterwards survive the next reopen
+     */
+    @Test
+    public void reopenDiscardsTornLastRecord() throws IOException {
+        log = open(1 << 16);
+        log.insert(new Message(1, "kept", 100));
+        log.insert(new Message(1, "torn", 200));
+        log.close();
+        // The second record ends with its text; overwriting its last byte breaks the record's checksum
+        int end = 8 + 2 * (8 + 21 + 4);
+        try (FileChannel channel = FileChannel.open(segmentFile(1), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 'X' }), end - 1);
+        }
+
+        log = open(1 << 16);
+        Assert.assertEquals(1, log.getRecoveredRecordCount());
+        Assert.assertNull(log.getMessageByID(2));
+        Assert.assertEquals(2, log.insert(new Message(1, "after", 300)).getMessage_id());
+
+        reopen(1 << 16);
+        Assert.assertEquals(List.of(new Message(1, 1, "kept", 100), new Message(2, 1, "after", 300)),
+                log.getAllMessages());
+    }
+
+    /**
+     * Deleting a message whose put record is in an older segment than the tombstone, then opening the log again
+     *
+     * Expected Result:
+     *  The message stays deleted, and the other messages are still there
+     */
+    @Test
+    public void reopenReplaysTombstones() throws IOException {
+        log = open(256);
+        for (int i = 1; i <= 10; i++) {
+            log.insert(new Message(1, "message " + i, i));
+        }
+        Assert.assertTrue(log.getSegmentCount() > 1);
+        Assert.assertNotNull(log.delete(1));
+
+        reopen(256);
+
+        Assert.assertNull(log.getMessageByID(1));
+        Assert.assertEquals(9, log.getMessageCount());
+        Assert.assertEquals(11, log.insert(new Message(1, "message 11", 11)).getMessage_id());
+    }
+
+    /**
+     * Deleting most messages of the oldest segments and compacting, then opening the log again
+     *
+     * Expected Result:
+     *  Mostly dead segments are removed, the live messages keep their latest text and the deleted ones stay deleted
+     */
+    @Test
+    public void compactRemovesDeadSegments() throws IOException {
+        log = open(256);
+        for (int i = 1; i <= 20; i++) {
+            log.insert(new Message(1 + i % 2, "message " + i, i));
+        }
+        for (int i = 1; i <= 10; i++) {
+            log.delete(i);
+        }
+        log.updateText(11, "message 11, edited");
+        List<Message> before = log.getAllMessages();
+
+        log.compact();
+
+        Assert.assertTrue(log.getCompactedSegmentCount() > 0);
+        Assert.assertFalse(Files.exists(segmentFile(1)));
+        Assert.assertEquals(before, log.getAllMessages());
+
+        reopen(256);
+        Assert.assertEquals(before, log.getAllMessages());
+        Assert.assertNull(log.getMessageByID(1));
+        Assert.assertEquals("message 11, edited", log.getMessageByID(11).getMessage_text());
+    }
+
+    /**
+     * Inserting a batch that fits in a segment, then one that does not
+     *
+     * Expected Result:
+     *  The first batch is stored whole; the second is refused without storing or numbering any of its messages
+     */
+    @Test
+    public void insertAllStoresWholeBatchOrNothing() throws IOException {
+        log = open(256);
+        Assert.assertEquals(2, log.insertAll(List.of(new Message(1, "a", 1), new Message(1, "b", 2))).size());
+
+        List<Message> tooLarge = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tooLarge.add(new Message(1, "message " + i, i));
+        }
+        Assert.assertNull(log.insertAll(tooLarge));
+        Assert.assertEquals(2, log.getMessageCount());
+        Assert.assertEquals(3, log.insert(new Message(1, "c", 3)).getMessage_id());
+
+        reopen(256);
+        Assert.assertEquals(List.of(1, 2, 3), ids(log.getAllMessages()));
+    }
+
+    /**
+     * Clearing a log that holds messages, then opening it again
+     *
+     * Expected Result:
+     *  The log is empty and numbers messages from 1 again, also after the reopen
+     */
+    @Test
+    public void clearStartsOver() throws IOException {
+        log = open(256);
+        for (int i = 1; i <= 10; i++) {
+            log.insert(new Message(1, "message " + i, i));
+        }
+
+        log.clear();
+        Assert.assertEquals(0, log.getMessageCount());
+        Assert.assertTrue(log.getAllMessagesByAccountID(1).isEmpty());
+        Assert.assertEquals(1, log.insert(new Message(1, "new", 1)).getMessage_id());
+
+        reopen(256);
+        Assert.assertEquals(List.of(new Message(1, 1, "new", 1)), log.getAllMessages());
+    }
+
+    private LogMessageRepository open(int segmentBytes) throws IOException {
+        return new LogMessageRepository(folder.getRoot().toPath(), segmentBytes, false, 0, 0.5);
+    }
+
+    private void reopen(int segmentBytes) throws IOException {
+        log.close();
+        log = open(segmentBytes);
+    }
+
+    private Path segmentFile(int id) {
+        return folder.getRoot().toPath().resolve(String.format("segment-%010d.log", id));
+    }
+
+    private static List<Integer> ids(List<Message> messages) {
+        List<Integer> ids = new ArrayList<>();
+        for (Message msg : messages) {
+            ids.add(msg.getMessage_id());
+        }
+        return ids;
+    }
+}
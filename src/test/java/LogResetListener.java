@@ -0,0 +1,44 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+
+import DAO.LogMessageRepository;
+import DAO.MessageDAO;
+import DAO.StorageEngine;
+import Util.ConnectionUtil;
+
+/**
+ * Registered with surefire for every test. When the suite runs on the log engine, which keeps one message log per
+ * process and never reads the message table again, this resets the test database before each test and replaces the
+ * contents of the log with its messages, so each test starts from the script's data whichever engine it runs on.
+ * testStarted runs before the test's @Before methods, so the services they build already see the fresh log.
+ */
+public class LogResetListener extends RunListener {
+    @Override
+    public void testStarted(Description description) {
+        if (StorageEngine.configured() != StorageEngine.LOG) {
+            return;
+        }
+        ConnectionUtil.resetTestDatabase();
+        copyDatabaseToLog();
+    }
+
+    /**
+     * Replaces the contents of the message log with the message table, when running on the log engine. Tests that
+     * add rows with SQL before building the server call this afterwards so the log engine sees them too.
+     */
+    public static void copyDatabaseToLog() {
+        if (StorageEngine.configured() != StorageEngine.LOG) {
+            return;
+        }
+        LogMessageRepository log = (LogMessageRepository) StorageEngine.LOG.newMessageRepository();
+        try {
+            log.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clear the message log", e);
+        }
+        new MessageDAO().forEachMessage(log::restore);
+    }
+}
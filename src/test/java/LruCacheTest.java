@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.LruCache;
+
+public class LruCacheTest {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    AtomicInteger loads = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Eight threads missing the same key while the first load is still running
+     *
+     * Expected Result:
+     *  The loader runs once, the other seven wait for its result, and all get the same value
+     */
+    @Test
+    public void concurrentMissesAreCoalesced() throws Exception {
+        LruCache<Integer, String> cache = new LruCache<>(10, 60000, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> cache.getOrLoad(1, key -> {
+                loads.incrementAndGet();
+                await(release);
+                return "one";
+            })));
+        }
+        awaitTrue(() -> loads.get() == 1 && cache.getCoalescedCount() == 7);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            Assert.assertEquals("one", result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(7, cache.getCoalescedCount());
+        Assert.assertEquals("one", cache.getIfPresent(1));
+    }
+
+    /**
+     * A loader that throws while another caller is waiting for it
+     *
+     * Expected Result:
+     *  Both callers see the exception and nothing is cached, so the next lookup loads again
+     */
+    @Test
+    public void failedLoadIsNotCached() throws Exception {
+        LruCache<Integer, String> cache = new LruCache<>(10, 60000, 60000);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = executor.submit(() -> cache.getOrLoad(1, key -> {
+            loads.incrementAndGet();
+            await(release);
+            throw new IllegalStateException("database down");
+        }));
+        awaitTrue(() -> loads.get() == 1);
+        Future<String> second = executor.submit(() -> cache.getOrLoad(1, key -> "unused"));
+        awaitTrue(() -> cache.getCoalescedCount() == 1);
+        release.countDown();
+
+        for (Future<String> result : List.of(first, second)) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                Assert.fail("Expected the load to fail");
+            } catch (java.util.concurrent.ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        Assert.assertEquals("two", cache.getOrLoad(1, key -> "two"));
+    }
+
+    /**
+     * Invalidating a key while a load that read the old value is still running
+     *
+     * Expected Result:
+     *  The caller of that load gets the old value, but it is not cached, so the next lookup loads again
+     */
+    @Test
+    public void invalidateDuringLoadWins() throws Exception {
+        LruCache<Integer, String> cache = new LruCache<>(10, 60000, 0);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> stale = executor.submit(() -> cache.getOrLoad(1, key -> {
+            loading.countDown();
+            await(release);
+            return "before update";
+        }));
+        Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        cache.invalidate(1);
+        release.countDown();
+
+        Assert.assertEquals("before update", stale.get(5, TimeUnit.SECONDS));
+        Assert.assertNull(cache.getIfPresent(1));
+        Assert.assertEquals("after update", cache.getOrLoad(1, key -> "after update"));
+    }
+
+    /**
+     * Putting a value while a load of the same key is still running
+     *
+     * Expected Result:
+     *  The put value stays cached and the finishing load does not overwrite it
+     */
+    @Test
+    public void putDuringLoadWins() throws Exception {
+        LruCache<Integer, String> cache = new LruCache<>(10, 60000, 0);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> stale = executor.submit(() -> cache.getOrLoad(1, key -> {
+            loading.countDown();
+            await(release);
+            return "loaded";
+        }));
+        Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        cache.put(1, "written");
+        release.countDown();
+
+        Assert.assertEquals("loaded", stale.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("written", cache.getIfPresent(1));
+    }
+
+    /**
+     * Looking up a key that does not exist, before and after the negative time to live
+     *
+     * Expected Result:
+     *  The absence is answered from the cache until it expires, then the loader runs again
+     */
+    @Test
+    public void negativeEntriesExpire() throws Exception {
+        LruCache<Integer, String> cache = new LruCache<>(10, 60000, 50);
+        Assert.assertNull(cache.getOrLoad(1, this::countedAbsent));
+        Assert.assertNull(cache.getOrLoad(1, this::countedAbsent));
+        Assert.assertEquals(1, loads.get());
+        Assert.assertTrue(cache.ifCached(1, value -> Assert.assertNull(value)));
+
+        Thread.sleep(100);
+        Assert.assertFalse(cache.ifCached(1, value -> Assert.fail()));
+        Assert.assertNull(cache.getOrLoad(1, this::countedAbsent));
+        Assert.assertEquals(2, loads.get());
+    }
+
+    /**
+     * A cache with negative caching off
+     *
+     * Expected Result:
+     *  Every lookup of a missing key calls the loader
+     */
+    @Test
+    public void absencesNotCachedWhenDisabled() {
+        LruCache<Integer, String> cache = new LruCache<>(10, 60000, 0);
+        cache.getOrLoad(1, this::countedAbsent);
+        cache.getOrLoad(1, this::countedAbsent);
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * Filling a cache of three, touching the oldest key, then adding a fourth
+     *
+     * Expected Result:
+     *  The least recently used key is evicted, not the oldest inserted one
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        LruCache<Integer, String> cache = new LruCache<>(3, 60000, 0);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        Assert.assertEquals("one", cache.getIfPresent(1));
+        cache.put(4, "four");
+
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertNull(cache.getIfPresent(2));
+        Assert.assertEquals("one", cache.getIfPresent(1));
+        Assert.assertEquals("three", cache.getIfPresent(3));
+        Assert.assertEquals("four", cache.getIfPresent(4));
+    }
+
+    /**
+     * Invalidating one key and clearing the cache
+     *
+     * Expected Result:
+     *  Only the invalidated key is reloaded, and after clear every key is
+     */
+    @Test
+    public void invalidateAndClear() {
+        LruCache<Integer, String> cache = new LruCache<>(10, 60000, 0);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.invalidate(1);
+
+        Assert.assertNull(cache.getIfPresent(1));
+        Assert.assertEquals("two", cache.getIfPresent(2));
+        Assert.assertEquals("reloaded", cache.getOrLoad(1, key -> "reloaded"));
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNull(cache.getIfPresent(2));
+    }
+
+    private String countedAbsent(Integer key) {
+        loads.incrementAndGet();
+        return null;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Timed out waiting", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
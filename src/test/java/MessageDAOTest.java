@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class MessageDAOTest {
+    MessageDAO messageDAO;
+
+    /**
+     * Before every test, reset the database, which leaves one message posted by account 1.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO();
+    }
+
+    /**
+     * Streaming the messages of an account that has more than two chunks of them, inserted out of time order and
+     * mixed with another account's messages
+     *
+     * Expected Result:
+     *  Every message of the account arrives once, ordered by time_posted_epoch and message_id, and no pooled
+     *  connection is held while the consumer runs
+     */
+    @Test
+    public void forEachMessageByAccountIDStreamsInChunks() {
+        int other = new AccountDAO().insert(new Account("otheruser", "password")).getAccount_id();
+        List<Message> msgs = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            msgs.add(new Message(1, "message " + i, 1669947792L + (i * 7) % 600));
+            msgs.add(new Message(other, "other " + i, 1669947792L + i));
+        }
+        Assert.assertNotNull(messageDAO.insertAll(msgs));
+
+        List<Message> streamed = new ArrayList<>();
+        messageDAO.forEachMessageByAccountID(1, msg -> {
+            Assert.assertEquals(0, ConnectionUtil.getPool().getActiveCount());
+            streamed.add(msg);
+        });
+
+        Assert.assertEquals(601, streamed.size());
+        for (int i = 1; i < streamed.size(); i++) {
+            Message previous = streamed.get(i - 1);
+            Message current = streamed.get(i);
+            Assert.assertEquals(1, current.getPosted_by());
+            Assert.assertTrue(previous.getTime_posted_epoch() < current.getTime_posted_epoch()
+                    || previous.getTime_posted_epoch() == current.getTime_posted_epoch()
+                    && previous.getMessage_id() < current.getMessage_id());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Model.ValidationResult;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+public class MessageServiceTest {
+    MessageService messageService;
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageService = new MessageService(new MessageDAO());
+    }
+
+    @After
+    public void tearDown() {
+        messageService.close();
+    }
+
+    /**
+     * Creating a message for an account that was deleted after it was looked up, so the insert fails on the
+     * foreign key and MessageDAO.insert hands back the message without an id
+     *
+     * Expected Result:
+     *  MESSAGE_NOT_STORED rather than a created message with message_id 0
+     */
+    @Test
+    public void createMessageReportsFailedInsert() {
+        ValidationResult<Message> result = messageService.createMessage(
+                new Message(99, "orphan message", 1669947792L), new Account(99, "deleted", "password"));
+
+        Assert.assertFalse(result.isValid());
+        Assert.assertEquals(ValidationResult.Failure.MESSAGE_NOT_STORED, result.getFailure());
+        Assert.assertNull(messageService.getMessageByID(0));
+    }
+
+    /**
+     * Reading a message into the cache, then updating and deleting it
+     *
+     * Expected Result:
+     *  Each read after a write sees the write rather than the cached copy
+     */
+    @Test
+    public void writesInvalidateCachedMessage() {
+        Message created = messageService.createMessage(new Message(1, "original text", 1669947792L),
+                new Account(1, "testuser1", "password")).getValue();
+        Assert.assertEquals("original text", messageService.getMessageByID(created.getMessage_id()).getMessage_text());
+        Assert.assertTrue(messageService.getCachedMessage(created.getMessage_id(), message -> { }));
+
+        Assert.assertTrue(messageService.updateMessageByID(created.getMessage_id(),
+                new Message(1, "updated text", 0)).isValid());
+        Assert.assertEquals("updated text", messageService.getMessageByID(created.getMessage_id()).getMessage_text());
+
+        Assert.assertNotNull(messageService.deleteMessageByID(created.getMessage_id()));
+        Assert.assertNull(messageService.getMessageByID(created.getMessage_id()));
+    }
+}
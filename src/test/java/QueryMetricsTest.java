@@ -0,0 +1,156 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+import Util.QueryMetrics;
+
+public class QueryMetricsTest {
+    QueryMetrics queryMetrics;
+    ConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        // A threshold of 0 writes every statement to the slow query log
+        queryMetrics = new QueryMetrics(0, List.of("Password"));
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:query-metrics-test-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        h2.setPassword("sa");
+        pool = new ConnectionPool(h2, 0, 2, 1000, 600000, 0, 8, queryMetrics);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * An INSERT listing the password column, and a SELECT comparing with it
+     *
+     * Expected Result:
+     *  Only the placeholders bound to the password column are redacted
+     */
+    @Test
+    public void passwordParametersAreRedacted() {
+        QueryMetrics.Shape insert = queryMetrics.shapeOf(
+                "INSERT INTO account (username, password) VALUES (?, ?)");
+        Assert.assertFalse(insert.isRedacted(1));
+        Assert.assertTrue(insert.isRedacted(2));
+
+        QueryMetrics.Shape login = queryMetrics.shapeOf(
+                "SELECT * FROM account WHERE username = ? AND account.\"PASSWORD\" = ?");
+        Assert.assertFalse(login.isRedacted(1));
+        Assert.assertTrue(login.isRedacted(2));
+
+        QueryMetrics.Shape message = queryMetrics.shapeOf(
+                "SELECT * FROM message WHERE posted_by = ? AND message_text LIKE ?");
+        Assert.assertFalse(message.isRedacted(1));
+        Assert.assertFalse(message.isRedacted(2));
+    }
+
+    /**
+     * A statement mentioning the password column with a placeholder that is not matched to any column
+     *
+     * Expected Result:
+     *  The unmatched placeholder is redacted, since it might hold the password
+     */
+    @Test
+    public void unmatchedParametersNextToPasswordAreRedacted() {
+        QueryMetrics.Shape shape = queryMetrics.shapeOf(
+                "SELECT account_id FROM account WHERE password IS NOT NULL AND COALESCE(username, ?) = 'x'");
+        Assert.assertTrue(shape.isRedacted(1));
+    }
+
+    /**
+     * Statements that differ only in their literals and whitespace
+     *
+     * Expected Result:
+     *  They share one shape whose SQL has each literal replaced by ?
+     */
+    @Test
+    public void literalsShareShape() {
+        QueryMetrics.Shape first = queryMetrics.shapeOf("SELECT * FROM message WHERE message_id = 1");
+        QueryMetrics.Shape second = queryMetrics.shapeOf("SELECT *  FROM message\n WHERE message_id = 42");
+        Assert.assertSame(first, second);
+        Assert.assertEquals("SELECT * FROM message WHERE message_id = ?", first.getSql());
+
+        QueryMetrics.Shape text = queryMetrics.shapeOf(
+                "SELECT * FROM message WHERE message_text = 'it''s' AND time_posted_epoch > -1.5");
+        Assert.assertSame(text, queryMetrics.shapeOf(
+                "SELECT * FROM message WHERE message_text = 'other' AND time_posted_epoch > 7"));
+        Assert.assertEquals("SELECT * FROM message WHERE message_text = ? AND time_posted_epoch > ?", text.getSql());
+
+        // Digits inside identifiers are not literals
+        Assert.assertEquals("SELECT t1.col2 FROM t1", queryMetrics.shapeOf("SELECT t1.col2 FROM t1").getSql());
+    }
+
+    /**
+     * Running an INSERT and a login SELECT through the pool with the slow query log on
+     *
+     * Expected Response:
+     *  The logged parameters show the username and other values in clear and the password as <redacted>
+     */
+    @Test
+    public void slowQueryLogRedactsPassword() throws SQLException {
+        try (Connection connection = pool.getConnection();
+                Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE account (account_id INT AUTO_INCREMENT PRIMARY KEY, "
+                    + "username VARCHAR(255), password VARCHAR(255))");
+        }
+
+        String logged = captureStandardError(() -> {
+            try (Connection connection = pool.getConnection()) {
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "INSERT INTO account (username, password) VALUES (?, ?)")) {
+                    ps.setString(1, "alice");
+                    ps.setString(2, "hunter2");
+                    ps.executeUpdate();
+                }
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "SELECT * FROM account WHERE username = ? AND password = ? AND account_id > ?")) {
+                    ps.setString(1, "alice");
+                    ps.setString(2, "hunter2");
+                    ps.setInt(3, 0);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        Assert.assertTrue(rs.next());
+                    }
+                }
+            }
+        });
+
+        Assert.assertFalse(logged, logged.contains("hunter2"));
+        Assert.assertTrue(logged, logged.contains("params=['alice', <redacted>]"));
+        Assert.assertTrue(logged, logged.contains("params=['alice', <redacted>, 0]"));
+        Assert.assertTrue(queryMetrics.getSlowQueryCount() >= 2);
+    }
+
+    private static String captureStandardError(SqlAction action) throws SQLException {
+        // slf4j-simple looks up System.err on every write, so swapping it captures the slow query log
+        PrintStream original = System.err;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            action.run();
+        } finally {
+            System.setErr(original);
+        }
+        return captured.toString(StandardCharsets.UTF_8);
+    }
+
+    private interface SqlAction {
+        void run() throws SQLException;
+    }
+}
@@ -11,6 +11,7 @@ import java.util.List;
 
 import org.junit.After;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -18,6 +19,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import Controller.SocialMediaController;
+import DAO.StorageEngine;
 import Model.Message;
 import Util.ConnectionUtil;
 import io.javalin.Javalin;
@@ -27,6 +29,7 @@ public class RetrieveAllMessagesTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    String baseUrl;
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
@@ -40,8 +43,7 @@ public class RetrieveAllMessagesTest {
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        baseUrl = TestServer.start(app);
     }
 
     @After
@@ -50,7 +52,7 @@ public class RetrieveAllMessagesTest {
     }
 
 /**
-     * Sending an http request to GET localhost:8080/messages 
+     * Sending an http request to GET /messages 
      * 
      * Expected Response:
      *  Status Code: 200
@@ -59,7 +61,7 @@ public class RetrieveAllMessagesTest {
     @Test
     public void getAllMessagesMessagesAvailable() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create(baseUrl + "/messages"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -74,7 +76,7 @@ public class RetrieveAllMessagesTest {
 
 
     /**
-     * Sending an http request to GET localhost:8080/messages with no mesages in db
+     * Sending an http request to GET /messages with no mesages in db
      * 
      * Expected Response:
      *  Status Code: 200
@@ -82,11 +84,13 @@ public class RetrieveAllMessagesTest {
      */
     @Test
     public void getAllMessagesNoMessages() throws IOException, InterruptedException {
+        // The message is deleted with SQL behind the server's back, which the memory and log engines never see
+        Assume.assumeTrue(StorageEngine.configured() == StorageEngine.JDBC);
         
         removeInitialMessage();
 
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create(baseUrl + "/messages"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -98,11 +102,47 @@ public class RetrieveAllMessagesTest {
     }
 
 
+    /**
+     * Sending an http request to POST /messages/batch with 600 messages, then GET /messages, which reads the
+     * messages in chunks of 256
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON represenation of all 601 messages in message_id order
+     */
+    @Test
+    public void getAllMessagesStreamsMoreThanOneChunk() throws IOException, InterruptedException {
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 600; i++) {
+            batch.append(i == 0 ? "" : ",").append("{\"posted_by\":1, \"message_text\": \"message ").append(i)
+                    .append("\", \"time_posted_epoch\": 1669947793}");
+        }
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.append("]").toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(601, messages.size());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), messages.get(0));
+        for (int i = 1; i < messages.size(); i++) {
+            Assert.assertTrue(messages.get(i - 1).getMessage_id() < messages.get(i).getMessage_id());
+            Assert.assertEquals("message " + (i - 1), messages.get(i).getMessage_text());
+        }
+    }
+
 
     private void removeInitialMessage(){
-        try {
-                Connection conn = ConnectionUtil.getConnection();
-                PreparedStatement ps = conn.prepareStatement("delete from message where message_id = ?");
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement("delete from message where message_id = ?")) {
                 ps.setInt(1, 1);
                 ps.executeUpdate();
         } catch (SQLException e) {
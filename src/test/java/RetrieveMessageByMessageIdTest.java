@@ -21,6 +21,7 @@ public class RetrieveMessageByMessageIdTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    String baseUrl;
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
@@ -34,8 +35,7 @@ public class RetrieveMessageByMessageIdTest {
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        baseUrl = TestServer.start(app);
     }
 
     @After
@@ -45,7 +45,7 @@ public class RetrieveMessageByMessageIdTest {
 
 
     /**
-     * Sending an http request to GET localhost:8080/messages/1 
+     * Sending an http request to GET /messages/1 
      * 
      * Expected Response:
      *  Status Code: 200
@@ -54,7 +54,7 @@ public class RetrieveMessageByMessageIdTest {
     @Test
     public void getMessageGivenMessageIdMessageFound() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/1"))
+                .uri(URI.create(baseUrl + "/messages/1"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -68,7 +68,7 @@ public class RetrieveMessageByMessageIdTest {
 
 
     /**
-     * Sending an http request to GET localhost:8080/messages/100 (message id 100 does not exist)
+     * Sending an http request to GET /messages/100 (message id 100 does not exist)
      * 
      * Expected Response:
      *  Status Code: 200
@@ -77,7 +77,7 @@ public class RetrieveMessageByMessageIdTest {
     @Test
     public void getMessageGivenMessageIdMessageNotFound() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/100"))
+                .uri(URI.create(baseUrl + "/messages/100"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    String baseUrl;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        baseUrl = TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to POST /login with an unknown account and GET /messages,
+     * then GET /metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text with one latency summary per route and status served
+     */
+    @Test
+    public void getMetricsReportsRouteLatency() throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"nobody\",\"password\":\"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(401, webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest listRequest = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages"))
+                .build();
+        Assert.assertEquals(200, webClient.send(listRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        String body = response.body();
+        Assert.assertTrue(body.contains("# TYPE socialmedia_http_request_duration_seconds summary"));
+        Assert.assertTrue(body.contains(
+                "socialmedia_http_request_duration_seconds_count{method=\"POST\",path=\"/login\",status=\"401\"} 1"));
+        Assert.assertTrue(body.contains(
+                "socialmedia_http_request_duration_seconds_count{method=\"GET\",path=\"/messages\",status=\"200\"} 1"));
+        Assert.assertTrue(body.contains(
+                "socialmedia_http_request_duration_seconds{method=\"GET\",path=\"/messages\",status=\"200\",quantile=\"0.99\"}"));
+        Assert.assertTrue(body.contains("socialmedia_http_requests_in_flight{method=\"GET\",path=\"/messages\"} 0"));
+        Assert.assertTrue(body.contains("socialmedia_cache_hits_total{cache=\"message\"}"));
+    }
+}
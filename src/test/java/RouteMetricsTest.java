@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.LatencyHistogram;
+import Util.QueryMetrics;
+import Util.RouteMetrics;
+
+public class RouteMetricsTest {
+    RouteMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new RouteMetrics("GET", "/messages/{message_id}");
+    }
+
+    /**
+     * Finishing 100 requests with 200 that started 1 to 100ms ago, and 10 with 404 that started 500ms ago
+     *
+     * Expected Result:
+     *  Each status has its own histogram whose quantiles are at least the requests' known ages, and no request is
+     *  left in flight
+     */
+    @Test
+    public void finishedRecordsLatencyPerStatus() {
+        long now = System.nanoTime();
+        for (int i = 1; i <= 100; i++) {
+            metrics.started();
+            metrics.finished(now - TimeUnit.MILLISECONDS.toNanos(i), 200);
+        }
+        for (int i = 0; i < 10; i++) {
+            metrics.started();
+            metrics.finished(now - TimeUnit.MILLISECONDS.toNanos(500), 404);
+        }
+
+        LatencyHistogram ok = histogram(200);
+        Assert.assertEquals(100, ok.getCount());
+        assertAtLeastMillis(50, ok.getValueAtQuantile(0.5));
+        assertAtLeastMillis(99, ok.getValueAtQuantile(0.99));
+        Assert.assertTrue(ok.getValueAtQuantile(0.5) < ok.getValueAtQuantile(0.99));
+        Assert.assertTrue(ok.getValueAtQuantile(0.99) < TimeUnit.MILLISECONDS.toNanos(500));
+        LatencyHistogram notFound = histogram(404);
+        Assert.assertEquals(10, notFound.getCount());
+        assertAtLeastMillis(500, notFound.getValueAtQuantile(0.5));
+        Assert.assertEquals(0, metrics.getInFlight());
+    }
+
+    /**
+     * Starting two requests, finishing one, and finishing requests with statuses outside 100-599 or that threw
+     *
+     * Expected Result:
+     *  One request stays in flight, out of range statuses are recorded as 500, statuses are visited in order and
+     *  exceptions are counted
+     */
+    @Test
+    public void inFlightAndStatusesAreTracked() {
+        long startedAt = metrics.started();
+        metrics.started();
+        Assert.assertEquals(2, metrics.getInFlight());
+        metrics.finished(startedAt, 304);
+        Assert.assertEquals(1, metrics.getInFlight());
+
+        metrics.started();
+        metrics.finished(startedAt, 42);
+        metrics.started();
+        metrics.finished(startedAt, 700);
+        metrics.failed();
+
+        List<Integer> statuses = new ArrayList<>();
+        metrics.forEachStatus((histogram, status) -> statuses.add(status));
+        Assert.assertEquals(List.of(304, 500), statuses);
+        Assert.assertEquals(2, histogram(500).getCount());
+        Assert.assertEquals(1, metrics.getExceptionCount());
+        Assert.assertEquals(1, metrics.getInFlight());
+    }
+
+    /**
+     * Recording the database totals of a request that ran nothing
+     *
+     * Expected Result:
+     *  One database time of 0 is recorded, with no statements, rows or connection wait
+     */
+    @Test
+    public void recordDatabaseAddsTotals() {
+        metrics.recordDatabase(QueryMetrics.startRequest());
+
+        Assert.assertEquals(1, metrics.getDatabaseTime().getCount());
+        Assert.assertEquals(0, metrics.getDatabaseTime().getMaxNanos());
+        Assert.assertEquals(0, metrics.getStatementCount());
+        Assert.assertEquals(0, metrics.getRowCount());
+        Assert.assertEquals(0, metrics.getAcquireNanos());
+    }
+
+    private LatencyHistogram histogram(int status) {
+        LatencyHistogram[] found = new LatencyHistogram[1];
+        metrics.forEachStatus((histogram, recorded) -> {
+            if (recorded == status) {
+                found[0] = histogram;
+            }
+        });
+        Assert.assertNotNull("No histogram for " + status, found[0]);
+        return found[0];
+    }
+
+    private static void assertAtLeastMillis(long millis, long nanos) {
+        Assert.assertTrue(nanos + "ns is below " + millis + "ms", nanos >= TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
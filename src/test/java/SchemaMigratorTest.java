@@ -0,0 +1,100 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+
+public class SchemaMigratorTest {
+
+    /**
+     * Before every test, reset the database, which also applies every migration.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * After every test, apply the migrations from scratch, so a tampered schema_history does not reach other tests.
+     */
+    @After
+    public void tearDown() {
+        SchemaMigrator.reapply();
+    }
+
+    /**
+     * Running the migrations again on an up to date database
+     *
+     * Expected Result:
+     *  schema_history and the indexes on message are unchanged
+     */
+    @Test
+    public void migrateTwiceIsNoOp() throws SQLException {
+        List<String> history = query("SELECT version, checksum, installed_on FROM schema_history ORDER BY version");
+        List<String> indexes = query("SELECT index_name FROM information_schema.indexes "
+                + "WHERE table_name = 'MESSAGE' ORDER BY index_name");
+        Assert.assertEquals(2, history.size());
+
+        SchemaMigrator.migrate();
+
+        Assert.assertEquals(history,
+                query("SELECT version, checksum, installed_on FROM schema_history ORDER BY version"));
+        Assert.assertEquals(indexes, query("SELECT index_name FROM information_schema.indexes "
+                + "WHERE table_name = 'MESSAGE' ORDER BY index_name"));
+    }
+
+    /**
+     * Running the migrations when the checksum recorded for an applied one no longer matches its script, as after
+     * the script was edited
+     *
+     * Expected Result:
+     *  IllegalStateException naming the edited migration, and schema_history is unchanged
+     */
+    @Test
+    public void migrateRejectsEditedMigration() throws SQLException {
+        execute("UPDATE schema_history SET checksum = checksum + 1 WHERE version = 2");
+        List<String> history = query("SELECT version, checksum, installed_on FROM schema_history ORDER BY version");
+
+        try {
+            SchemaMigrator.migrate();
+            Assert.fail("Expected the edited migration to be rejected");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains("V2__add_message_indexes.sql"));
+        }
+        Assert.assertEquals(history,
+                query("SELECT version, checksum, installed_on FROM schema_history ORDER BY version"));
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+                Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    private static List<String> query(String sql) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Connection connection = ConnectionUtil.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery(sql)) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= columns; i++) {
+                    row.append(rs.getString(i)).append('|');
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,162 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.StatementCache;
+
+public class StatementCacheTest {
+    Connection h2;
+    /**
+     * The physical connection given to the cache, which records every statement it prepares.
+     */
+    Connection physical;
+    List<PreparedStatement> prepared = new ArrayList<>();
+    LongAdder hits = new LongAdder();
+    LongAdder misses = new LongAdder();
+    LongAdder evictions = new LongAdder();
+
+    @Before
+    public void setUp() throws SQLException {
+        h2 = DriverManager.getConnection("jdbc:h2:mem:statement-cache-test", "sa", "sa");
+        physical = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                    try {
+                        Object result = method.invoke(h2, args);
+                        if (result instanceof PreparedStatement) {
+                            prepared.add((PreparedStatement) result);
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        h2.close();
+    }
+
+    /**
+     * Preparing and closing the same SQL twice
+     *
+     * Expected Result:
+     *  One miss, then one hit reusing the same physical statement
+     */
+    @Test
+    public void prepareReusesClosedStatement() throws SQLException {
+        StatementCache cache = newCache(4);
+        prepare(cache, "SELECT 1").close();
+        prepare(cache, "SELECT 1").close();
+
+        Assert.assertEquals(1, misses.sum());
+        Assert.assertEquals(1, hits.sum());
+        Assert.assertEquals(1, prepared.size());
+        Assert.assertEquals(1, cache.size());
+        Assert.assertFalse(prepared.get(0).isClosed());
+    }
+
+    /**
+     * Filling a cache of two, using the first statement again, then preparing a third
+     *
+     * Expected Result:
+     *  The least recently used statement is evicted and closed; the recently used one stays cached
+     */
+    @Test
+    public void prepareEvictsLeastRecentlyUsed() throws SQLException {
+        StatementCache cache = newCache(2);
+        prepare(cache, "SELECT 1").close();
+        prepare(cache, "SELECT 2").close();
+        prepare(cache, "SELECT 1").close();
+        prepare(cache, "SELECT 3").close();
+
+        Assert.assertEquals(1, evictions.sum());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertFalse(prepared.get(0).isClosed());
+        Assert.assertTrue(prepared.get(1).isClosed());
+
+        prepare(cache, "SELECT 2").close();
+        Assert.assertEquals(4, misses.sum());
+    }
+
+    /**
+     * Preparing a SQL string while its cached statement is still open, then closing both
+     *
+     * Expected Result:
+     *  The second caller gets a statement of its own, closed for real when it is closed; the cached one stays open
+     */
+    @Test
+    public void prepareWhileBusyUsesFreshStatement() throws SQLException {
+        StatementCache cache = newCache(4);
+        PreparedStatement first = prepare(cache, "SELECT 1");
+        PreparedStatement second = prepare(cache, "SELECT 1");
+
+        Assert.assertEquals(2, misses.sum());
+        Assert.assertEquals(2, prepared.size());
+        second.close();
+        Assert.assertTrue(prepared.get(1).isClosed());
+        first.close();
+        Assert.assertFalse(prepared.get(0).isClosed());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    /**
+     * Returning the connection while a cached statement and a fresh one are still open
+     *
+     * Expected Result:
+     *  Both handles are detached; the fresh statement is closed, the cached one is kept for the next borrower
+     */
+    @Test
+    public void releaseClosesForgottenFreshStatements() throws SQLException {
+        StatementCache cache = newCache(4);
+        PreparedStatement cached = prepare(cache, "SELECT 1");
+        PreparedStatement fresh = prepare(cache, "SELECT 1");
+
+        cache.release();
+        Assert.assertTrue(cached.isClosed());
+        Assert.assertTrue(fresh.isClosed());
+        Assert.assertFalse(prepared.get(0).isClosed());
+        Assert.assertTrue(prepared.get(1).isClosed());
+
+        prepare(cache, "SELECT 1").close();
+        Assert.assertEquals(1, hits.sum());
+    }
+
+    /**
+     * Preparing statements with caching disabled and never closing them
+     *
+     * Expected Result:
+     *  Nothing is cached, and release closes every statement
+     */
+    @Test
+    public void releaseClosesStatementsWhenCachingDisabled() throws SQLException {
+        StatementCache cache = newCache(0);
+        prepare(cache, "SELECT 1");
+        prepare(cache, "SELECT 2");
+
+        Assert.assertEquals(0, cache.size());
+        cache.release();
+        Assert.assertTrue(prepared.get(0).isClosed());
+        Assert.assertTrue(prepared.get(1).isClosed());
+    }
+
+    private StatementCache newCache(int capacity) {
+        return new StatementCache(capacity, hits, misses, evictions, null);
+    }
+
+    private PreparedStatement prepare(StatementCache cache, String sql) throws SQLException {
+        return cache.prepare(physical, physical, sql, Statement.NO_GENERATED_KEYS);
+    }
+}
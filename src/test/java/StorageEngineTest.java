@@ -0,0 +1,72 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.StorageEngine;
+
+public class StorageEngineTest {
+    /**
+     * The socialmedia.storage property the suite was started with, put back after each test.
+     */
+    String configured;
+
+    @Before
+    public void setUp() {
+        configured = System.getProperty(StorageEngine.PROPERTY);
+    }
+
+    @After
+    public void tearDown() {
+        if (configured == null) {
+            System.clearProperty(StorageEngine.PROPERTY);
+        } else {
+            System.setProperty(StorageEngine.PROPERTY, configured);
+        }
+    }
+
+    /**
+     * No socialmedia.storage property
+     *
+     * Expected Result:
+     *  The jdbc engine
+     */
+    @Test
+    public void configuredDefaultsToJdbc() {
+        System.clearProperty(StorageEngine.PROPERTY);
+        Assert.assertEquals(StorageEngine.JDBC, StorageEngine.configured());
+    }
+
+    /**
+     * Engine names in mixed case and with surrounding spaces
+     *
+     * Expected Result:
+     *  The named engine, whatever the case and spacing
+     */
+    @Test
+    public void configuredIgnoresCaseAndSpaces() {
+        System.setProperty(StorageEngine.PROPERTY, "Memory");
+        Assert.assertEquals(StorageEngine.MEMORY, StorageEngine.configured());
+        System.setProperty(StorageEngine.PROPERTY, " LOG ");
+        Assert.assertEquals(StorageEngine.LOG, StorageEngine.configured());
+        System.setProperty(StorageEngine.PROPERTY, "jdbc");
+        Assert.assertEquals(StorageEngine.JDBC, StorageEngine.configured());
+    }
+
+    /**
+     * An engine name that does not exist
+     *
+     * Expected Result:
+     *  IllegalArgumentException naming the property and the unknown engine
+     */
+    @Test
+    public void configuredRejectsUnknownEngine() {
+        System.setProperty(StorageEngine.PROPERTY, "cassandra");
+        try {
+            StorageEngine.configured();
+            Assert.fail("Expected the unknown engine to be refused");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Unknown storage engine 'cassandra' in socialmedia.storage", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import io.javalin.Javalin;
+
+/**
+ * Starts the API for an integration test on an ephemeral port, so test classes in concurrently running forks never
+ * compete for a fixed port, and waits until the server accepts connections instead of sleeping for a fixed time.
+ */
+public final class TestServer {
+    private static final long READY_TIMEOUT_MILLIS = 5000;
+
+    private TestServer() {
+    }
+
+    /**
+     * Starts the app on a free port and waits until it accepts connections.
+     * @param app The app returned by SocialMediaController.startAPI.
+     * @return The base url of the running server, e.g. http://localhost:41234, without a trailing slash.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws IllegalStateException if the server does not accept connections within 5 seconds.
+     */
+    public static String start(Javalin app) throws InterruptedException {
+        app.start(0);
+        int port = app.port();
+        long deadline = System.currentTimeMillis() + READY_TIMEOUT_MILLIS;
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("localhost", port), 100);
+                return "http://localhost:" + port;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Server on port " + port + " did not become ready", e);
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.TimelineIndex;
+
+public class TimelineIndexTest {
+    TimelineIndex index;
+
+    @Before
+    public void setUp() {
+        index = new TimelineIndex();
+    }
+
+    /**
+     * Adding messages to a timeline out of time order, including two with the same time
+     *
+     * Expected Result:
+     *  The ids come back ordered by time and then message_id
+     */
+    @Test
+    public void addKeepsTimeOrder() {
+        Assert.assertTrue(index.add(1, 300, 1));
+        Assert.assertTrue(index.add(1, 100, 2));
+        Assert.assertTrue(index.add(1, 200, 4));
+        Assert.assertTrue(index.add(1, 200, 3));
+        Assert.assertTrue(index.add(1, 400, 5));
+
+        Assert.assertArrayEquals(new int[] { 2, 3, 4, 1, 5 }, index.messageIds(1));
+        Assert.assertEquals(5, index.size(1));
+    }
+
+    /**
+     * Adding the same message twice, and messages from several accounts, including one beyond the initial capacity
+     *
+     * Expected Result:
+     *  The second add reports nothing added, and each account only sees its own messages
+     */
+    @Test
+    public void addKeepsAccountsApart() {
+        Assert.assertTrue(index.add(1, 100, 1));
+        Assert.assertFalse(index.add(1, 100, 1));
+        Assert.assertTrue(index.add(2, 50, 2));
+        Assert.assertTrue(index.add(5000, 10, 3));
+
+        Assert.assertArrayEquals(new int[] { 1 }, index.messageIds(1));
+        Assert.assertArrayEquals(new int[] { 2 }, index.messageIds(2));
+        Assert.assertArrayEquals(new int[] { 3 }, index.messageIds(5000));
+        Assert.assertArrayEquals(new int[0], index.messageIds(3));
+        Assert.assertArrayEquals(new int[0], index.messageIds(-1));
+    }
+
+    /**
+     * Removing messages by their key, by their id alone, and removing ones that are not on the timeline
+     *
+     * Expected Result:
+     *  Only the removed messages disappear, and removing an unknown message changes nothing
+     */
+    @Test
+    public void removeDropsOnlyThatMessage() {
+        index.add(1, 100, 1);
+        index.add(1, 200, 2);
+        index.add(1, 300, 3);
+
+        index.remove(1, 200, 2);
+        index.remove(1, 999, 3);
+        Assert.assertArrayEquals(new int[] { 1, 3 }, index.messageIds(1));
+
+        Assert.assertTrue(index.remove(1, 3));
+        Assert.assertFalse(index.remove(1, 3));
+        Assert.assertFalse(index.remove(2, 1));
+        Assert.assertArrayEquals(new int[] { 1 }, index.messageIds(1));
+        Assert.assertEquals(1, index.size(1));
+    }
+
+    /**
+     * Paging through a timeline with messageIdsAfter, starting from a position that is not on it
+     *
+     * Expected Result:
+     *  Each page continues strictly after the given position and holds at most limit ids
+     */
+    @Test
+    public void messageIdsAfterPagesInOrder() {
+        for (int id = 1; id <= 5; id++) {
+            index.add(1, id * 100L, id);
+        }
+
+        Assert.assertArrayEquals(new int[] { 1, 2 }, index.messageIdsAfter(1, Long.MIN_VALUE, Integer.MIN_VALUE, 2));
+        Assert.assertArrayEquals(new int[] { 3, 4 }, index.messageIdsAfter(1, 200, 2, 2));
+        Assert.assertArrayEquals(new int[] { 5 }, index.messageIdsAfter(1, 400, 4, 2));
+        Assert.assertArrayEquals(new int[] { 3, 4, 5 }, index.messageIdsAfter(1, 250, 0, 10));
+        Assert.assertArrayEquals(new int[0], index.messageIdsAfter(1, 500, 5, 2));
+    }
+}
@@ -0,0 +1,139 @@
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import DAO.MessageKeyConsumer;
+import DAO.MessageRepository;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+public class TimelineRefreshTest {
+    MessageService messageService;
+
+    /**
+     * Before every test, reset the database and build a MessageService over it, whose timeline index then holds the
+     * one message of account 1.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageService = new MessageService(new MessageDAO());
+    }
+
+    @After
+    public void tearDown() {
+        messageService.close();
+    }
+
+    /**
+     * Inserting a message for account 1 behind the service's back, then refreshing the timeline index
+     *
+     * Expected Result:
+     *  The message only appears after the refresh, in time order, and the timeline's version changes
+     */
+    @Test
+    public void refreshTimelineIndexAddsMessagesFromOtherWriters() throws SQLException {
+        execute("INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (1, 'other writer', 1)");
+        Assert.assertEquals(1, messageService.getAllMessagesByAccountID(1).size());
+        String version = messageService.getTimelineVersion(1);
+
+        messageService.refreshTimelineIndex();
+        List<Message> messages = messageService.getAllMessagesByAccountID(1);
+
+        Assert.assertEquals(2, messages.size());
+        Assert.assertEquals("other writer", messages.get(0).getMessage_text());
+        Assert.assertEquals(1, messages.get(1).getMessage_id());
+        Assert.assertNotEquals(version, messageService.getTimelineVersion(1));
+
+        version = messageService.getTimelineVersion(1);
+        messageService.refreshTimelineIndex();
+        Assert.assertEquals(version, messageService.getTimelineVersion(1));
+    }
+
+    /**
+     * Inserting a message for account 1 behind the back of a service refreshing every 50 ms
+     *
+     * Expected Result:
+     *  Without any call from the test, the index catches up: the message is listed and the timeline's version changes
+     */
+    @Test
+    public void scheduledRefreshCatchesUpWithOtherWriters() throws SQLException, InterruptedException {
+        messageService.close();
+        System.setProperty("socialmedia.timeline.refreshMillis", "50");
+        try {
+            messageService = new MessageService(new MessageDAO());
+        } finally {
+            System.clearProperty("socialmedia.timeline.refreshMillis");
+        }
+        String version = messageService.getTimelineVersion(1);
+
+        execute("INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (1, 'other writer', 1)");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (messageService.getAllMessagesByAccountID(1).size() < 2) {
+            Assert.assertTrue("Timed out waiting for the refresh", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("other writer", messageService.getAllMessagesByAccountID(1).get(0).getMessage_text());
+        Assert.assertNotEquals(version, messageService.getTimelineVersion(1));
+    }
+
+    /**
+     * Deleting account 1's message behind the service's back, then reading the account's messages
+     *
+     * Expected Result:
+     *  The deleted message is left out, dropped from the index, and the timeline's version changes
+     */
+    @Test
+    public void getAllMessagesByAccountIDDropsMessagesDeletedByOtherWriters() throws SQLException {
+        execute("DELETE FROM message WHERE message_id = 1");
+        String version = messageService.getTimelineVersion(1);
+
+        Assert.assertTrue(messageService.getAllMessagesByAccountID(1).isEmpty());
+        Assert.assertNotEquals(version, messageService.getTimelineVersion(1));
+        Assert.assertTrue(messageService.getMessagesPageByAccountID(1, null, 10).isEmpty());
+    }
+
+    /**
+     * Reading the messages of an account when the repository fails to read them
+     *
+     * Expected Result:
+     *  RuntimeException, rather than a list silently missing the messages
+     */
+    @Test
+    public void getAllMessagesByAccountIDFailsWhenReadFails() {
+        messageService.close();
+        MessageRepository failing = (MessageRepository) Proxy.newProxyInstance(
+                MessageRepository.class.getClassLoader(), new Class<?>[] { MessageRepository.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("forEachMessageKey")) {
+                        ((MessageKeyConsumer) args[0]).accept(1, 1669947792, 1);
+                        return null;
+                    }
+                    throw new RuntimeException("Failed to read messages by message_id");
+                });
+        messageService = new MessageService(failing);
+
+        try {
+            messageService.getAllMessagesByAccountID(1);
+            Assert.fail("Expected the failed read to be reported");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.executeUpdate();
+        }
+    }
+}
@@ -22,6 +22,7 @@ public class UserLoginTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    String baseUrl;
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
@@ -35,8 +36,7 @@ public class UserLoginTest {
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        baseUrl = TestServer.start(app);
     }
 
     @After
@@ -45,7 +45,7 @@ public class UserLoginTest {
     }
 
     /**
-     * Sending an http request to POST localhost:8080/login with valid username and password
+     * Sending an http request to POST /login with valid username and password
      * 
      * Expected Response:
      *  Status Code: 200
@@ -54,7 +54,7 @@ public class UserLoginTest {
     @Test
     public void loginSuccessful() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/login"))
+                .uri(URI.create(baseUrl + "/login"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"testuser1\", " +
                         "\"password\": \"password\" }"))
@@ -72,7 +72,7 @@ public class UserLoginTest {
     }
 
     /**
-     * Sending an http request to POST localhost:8080/login with invalid username
+     * Sending an http request to POST /login with invalid username
      * 
      * Expected Response:
      *  Status Code: 401
@@ -81,7 +81,7 @@ public class UserLoginTest {
     @Test
     public void loginInvalidUsername() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/login"))
+                .uri(URI.create(baseUrl + "/login"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"testuser404\", " +
                         "\"password\": \"password\" }"))
@@ -97,7 +97,7 @@ public class UserLoginTest {
     
 
     /**
-     * Sending an http request to POST localhost:8080/login with invalid password
+     * Sending an http request to POST /login with invalid password
      * 
      * Expected Response:
      *  Status Code: 401
@@ -106,7 +106,7 @@ public class UserLoginTest {
     @Test
     public void loginInvalidPassword() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/login"))
+                .uri(URI.create(baseUrl + "/login"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"testuser1\", " +
                         "\"password\": \"pass123\" }"))